@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the inputs packed in a zip, tar or gzip-compressed tar archive in one sequential pass, without extracting them.
+ * An archive input is either the archive itself, which selects its .wav entries, or every entry when raw audio is
+ * read, or the archive followed by !/ and a glob for the entry names, e.g. bundle.zip!/calls/*.wav.
+ *
+ * Each selected entry is read into memory as it is reached and returned as a job named archive!/entry, so only the
+ * entries handed out and not yet translated are held at a time.
+ */
+public class STArchiveReader implements Closeable {
+    public static final String SEPARATOR = "!/";
+
+    private static final int BLOCK = 512;
+
+    private final File archive;
+    private final PathMatcher matcher;
+    private final boolean allEntries;
+    private final InputStream in;
+    private final ZipInputStream zip;
+
+    /**
+     * @param input      the archive, optionally followed by !/ and a glob for the entry names
+     * @param allEntries select every entry of a whole archive rather than only its .wav entries
+     * @throws IOException if the archive cannot be opened
+     */
+    public STArchiveReader(String input, boolean allEntries) throws IOException {
+        int separator = input.indexOf(SEPARATOR);
+        this.archive = archiveOf(input);
+        String pattern = separator < 0 ? "" : input.substring(separator + SEPARATOR.length());
+        this.matcher = pattern.isEmpty() ? null : FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        this.allEntries = allEntries;
+
+        // the format is told by the first bytes rather than the extension
+        InputStream raw = new BufferedInputStream(new FileInputStream(archive), 1 << 16);
+        try {
+            raw.mark(2);
+            int first = raw.read();
+            int second = raw.read();
+            raw.reset();
+            if (first == 'P' && second == 'K') {
+                zip = new ZipInputStream(raw);
+                in = zip;
+            } else if (first == 0x1f && second == 0x8b) {
+                zip = null;
+                in = new BufferedInputStream(new GZIPInputStream(raw, 1 << 16), 1 << 16);
+            } else {
+                zip = null;
+                in = raw;
+            }
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param input an input file argument
+     * @return true if the argument names an archive, or entries of one, rather than an audio file
+     */
+    public static boolean isArchive(String input) {
+        if (input.contains(SEPARATOR)) return true;
+        String name = input.toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tgz") || name.endsWith(".tar.gz");
+    }
+
+    /**
+     * @param input an archive input
+     * @return the archive file the input refers to
+     */
+    public static File archiveOf(String input) {
+        int separator = input.indexOf(SEPARATOR);
+        return new File(separator < 0 ? input : input.substring(0, separator));
+    }
+
+    public File getArchive() {
+        return archive;
+    }
+
+    /**
+     * Reads on to the next selected entry.
+     *
+     * @return the entry as a job holding its content, or null after the last entry
+     * @throws IOException if the archive cannot be read or is malformed
+     */
+    public STJob next() throws IOException {
+        return zip != null ? nextZip() : nextTar();
+    }
+
+    private STJob nextZip() throws IOException {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory() || !selects(entry.getName())) continue;
+            byte[] content = entry.getSize() >= 0 ? IOUtils.toByteArray(zip, checkedSize(entry.getName(), entry.getSize()))
+                    : IOUtils.toByteArray(zip);
+            return job(entry.getName(), content);
+        }
+        return null;
+    }
+
+    // ustar, with the GNU long name and pax path extensions
+    private STJob nextTar() throws IOException {
+        byte[] header = new byte[BLOCK];
+        String longName = null;
+        while (true) {
+            int read = IOUtils.read(in, header);
+            if (read == 0 || isZero(header)) return null;
+            if (read < BLOCK) throw new EOFException(archive.getPath());
+            long size = size(header);
+            byte type = header[156];
+            long padding = (BLOCK - size % BLOCK) % BLOCK;
+            if (type == 'L' || type == 'x') {
+                byte[] data = IOUtils.toByteArray(in, checkedSize("", size));
+                IOUtils.skipFully(in, padding);
+                String name = type == 'L' ? relative(string(data, 0, data.length)) : paxPath(data);
+                if (name != null) longName = name;
+                continue;
+            }
+            String name = longName != null ? longName : name(header);
+            longName = null;
+            if ((type == '0' || type == 0) && selects(name)) {
+                byte[] content = IOUtils.toByteArray(in, checkedSize(name, size));
+                IOUtils.skipFully(in, padding);
+                return job(name, content);
+            }
+            IOUtils.skipFully(in, size + padding);
+        }
+    }
+
+    private boolean selects(String name) {
+        if (matcher == null) return allEntries || FilenameUtils.isExtension(name.toLowerCase(Locale.ROOT), "wav");
+        try {
+            return matcher.matches(Paths.get(name));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    private STJob job(String name, byte[] content) {
+        return new STJob(new File(archive.getPath() + SEPARATOR + name), null, content);
+    }
+
+    private int checkedSize(String name, long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) throw new IOException(archive.getPath() + SEPARATOR + name + ": " + size);
+        return (int) size;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+
+    private static String name(byte[] header) {
+        String name = string(header, 0, 100);
+        // ustar splits long paths into a prefix and a name
+        if (string(header, 257, 5).equals("ustar")) {
+            String prefix = string(header, 345, 155);
+            if (!prefix.isEmpty()) name = prefix + "/" + name;
+        }
+        return relative(name);
+    }
+
+    private static long size(byte[] header) throws IOException {
+        // sizes beyond the octal field are stored as a big-endian binary number flagged by the high bit
+        if ((header[124] & 0x80) != 0) {
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = string(header, 124, 12).trim();
+        try {
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException(octal, e);
+        }
+    }
+
+    private static String paxPath(byte[] data) {
+        // records of the form "<length> <key>=<value>\n"
+        String records = new String(data, StandardCharsets.UTF_8);
+        String path = null;
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space >= 0 && record.startsWith("path=", space + 1)) {
+                path = record.substring(space + 1 + "path=".length());
+            }
+        }
+        return path == null ? null : relative(path);
+    }
+
+    private static String relative(String name) {
+        return name.startsWith("./") ? name.substring(2) : name;
+    }
+
+    private static String string(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) end++;
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Describes little-endian PCM audio, either parsed from a WAV header or declared for headerless raw input.
+ */
+public class STAudioFormat {
+
+    public enum Encoding {
+        PCM_SIGNED("s"),
+        PCM_UNSIGNED("u"),
+        PCM_FLOAT("f");
+
+        private final String prefix;
+
+        Encoding(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    private final Encoding encoding;
+    private final int sampleRate;
+    private final int channels;
+    private final int bitsPerSample;
+
+    public STAudioFormat(Encoding encoding, int sampleRate, int channels, int bitsPerSample) {
+        this.encoding = encoding;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitsPerSample = bitsPerSample;
+    }
+
+    /**
+     * The format the service expects when no other target is configured: 16kHz, 16-bit, mono.
+     *
+     * @param sampleRate    target sample rate
+     * @param bitsPerSample target bit depth, 8-bit is written unsigned as WAV requires
+     * @return mono integer PCM format
+     */
+    public static STAudioFormat pcm(int sampleRate, int bitsPerSample) {
+        return new STAudioFormat(bitsPerSample == 8 ? Encoding.PCM_UNSIGNED : Encoding.PCM_SIGNED, sampleRate, 1, bitsPerSample);
+    }
+
+    /**
+     * Parses a raw format declaration of the form encoding,rate,channels, e.g. s16le,16000,1 or f32le,44100,2.
+     * Supported encodings are u8, s16le, s24le, s32le, f32le and f64le.
+     *
+     * @param declaration the format declaration
+     * @return the parsed format
+     * @throws IllegalArgumentException if the declaration cannot be parsed
+     */
+    public static STAudioFormat parse(String declaration) {
+        String[] parts = StringUtils.split(StringUtils.deleteWhitespace(declaration), ",");
+        if (parts == null || parts.length != 3) {
+            throw new IllegalArgumentException(declaration);
+        }
+        String sample = parts[0].toLowerCase();
+        if (sample.length() > 2 && sample.endsWith("le")) {
+            sample = sample.substring(0, sample.length() - 2);
+        }
+        Encoding encoding = null;
+        for (Encoding e : Encoding.values()) {
+            if (sample.startsWith(e.getPrefix())) {
+                encoding = e;
+            }
+        }
+        try {
+            if (encoding == null) throw new IllegalArgumentException(declaration);
+            int bits = Integer.parseInt(sample.substring(1));
+            STAudioFormat format = new STAudioFormat(encoding, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), bits);
+            if (!format.isSupported()) throw new IllegalArgumentException(declaration);
+            return format;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(declaration, e);
+        }
+    }
+
+    public boolean isSupported() {
+        if (sampleRate <= 0 || channels <= 0) return false;
+        switch (encoding) {
+            case PCM_UNSIGNED:
+                return bitsPerSample == 8;
+            case PCM_SIGNED:
+                return bitsPerSample == 16 || bitsPerSample == 24 || bitsPerSample == 32;
+            case PCM_FLOAT:
+                return bitsPerSample == 32 || bitsPerSample == 64;
+            default:
+                return false;
+        }
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public int getBytesPerSample() {
+        return bitsPerSample / 8;
+    }
+
+    public int getFrameSize() {
+        return getBytesPerSample() * channels;
+    }
+
+    public int getBytesPerSecond() {
+        return getFrameSize() * sampleRate;
+    }
+
+    /**
+     * @param seconds duration of the silence, rounded down to whole frames but at least one frame
+     * @return digital silence in this format
+     */
+    public byte[] silence(double seconds) {
+        byte[] silence = new byte[Math.max(1, (int) (sampleRate * seconds)) * getFrameSize()];
+        if (encoding == Encoding.PCM_UNSIGNED) {
+            // the midpoint 1 << (bits - 1) in little endian, only the most significant byte is not zero
+            for (int i = getBytesPerSample() - 1; i < silence.length; i += getBytesPerSample()) {
+                silence[i] = (byte) 0x80;
+            }
+        }
+        return silence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof STAudioFormat)) return false;
+        STAudioFormat f = (STAudioFormat) o;
+        return encoding == f.encoding && sampleRate == f.sampleRate && channels == f.channels && bitsPerSample == f.bitsPerSample;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((encoding.hashCode() * 31 + sampleRate) * 31 + channels) * 31 + bitsPerSample;
+    }
+
+    @Override
+    public String toString() {
+        return encoding.getPrefix() + bitsPerSample + (bitsPerSample > 8 ? "le" : "") + "," + sampleRate + "," + channels;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * Converts arbitrary PCM input to mono integer PCM at a target rate and bit depth: samples are decoded to float,
+ * downmixed by averaging all channels, resampled with the STResampler polyphase filter and re-quantized with clipping.
+ *
+ * A 44.1kHz 16-bit stereo file shrinks to roughly a fifth of its size at the default 16kHz 16-bit mono target.
+ */
+public class STAudioNormalizer implements STAudioStage {
+    private final STAudioFormat input;
+    private final STAudioFormat output;
+    private final STResampler resampler;
+
+    private float[] mono = new float[0];
+
+    public STAudioNormalizer(STAudioFormat input, STAudioFormat output) {
+        this.input = input;
+        this.output = output;
+        STResampler r = new STResampler(input.getSampleRate(), output.getSampleRate());
+        this.resampler = r.isIdentity() ? null : r;
+    }
+
+    /**
+     * @param format format of the input
+     * @param target requested output format
+     * @return true if the input has to be converted at all
+     */
+    public static boolean isRequired(STAudioFormat format, STAudioFormat target) {
+        return !format.equals(target);
+    }
+
+    @Override
+    public STAudioFormat getOutputFormat() {
+        return output;
+    }
+
+    @Override
+    public long getOutputLength(long inputLength) {
+        long frames = inputLength / input.getFrameSize();
+        long rate = input.getSampleRate();
+        long outputFrames = (frames * output.getSampleRate() + rate - 1) / rate;
+        return outputFrames * output.getFrameSize();
+    }
+
+    @Override
+    public byte[] process(byte[] chunk, int length) {
+        int frames = length / input.getFrameSize();
+        if (mono.length < frames) mono = new float[frames];
+        decode(chunk, frames);
+        if (resampler == null) return encode(mono, frames);
+        float[] resampled = resampler.process(mono, frames);
+        return encode(resampled, resampled.length);
+    }
+
+    @Override
+    public byte[] flush() {
+        if (resampler == null) return new byte[0];
+        float[] rest = resampler.flush();
+        return encode(rest, rest.length);
+    }
+
+    private void decode(byte[] chunk, int frames) {
+        int bytes = input.getBytesPerSample();
+        int channels = input.getChannels();
+        int position = 0;
+        for (int f = 0; f < frames; f++) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += sample(input, chunk, position);
+                position += bytes;
+            }
+            mono[f] = (float) (sum / channels);
+        }
+    }
+
+    /**
+     * @param format format of the sample data
+     * @param b      sample data
+     * @param p      offset of the sample within b
+     * @return the sample scaled to [-1, 1]
+     */
+    static double sample(STAudioFormat format, byte[] b, int p) {
+        int bytes = format.getBytesPerSample();
+        switch (format.getEncoding()) {
+            case PCM_UNSIGNED:
+                return ((b[p] & 0xFF) - 128) / 128.0;
+            case PCM_FLOAT:
+                if (bytes == 4) {
+                    return Float.intBitsToFloat((b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | b[p + 3] << 24);
+                }
+                long bits = 0;
+                for (int i = 7; i >= 0; i--) bits = bits << 8 | (b[p + i] & 0xFF);
+                return Double.longBitsToDouble(bits);
+            default:
+                switch (bytes) {
+                    case 2:
+                        return (short) ((b[p] & 0xFF) | b[p + 1] << 8) / 32768.0;
+                    case 3:
+                        return ((b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | b[p + 2] << 16) / 8388608.0;
+                    default:
+                        return ((b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | b[p + 3] << 24) / 2147483648.0;
+                }
+        }
+    }
+
+    private byte[] encode(float[] samples, int count) {
+        int bytes = output.getBytesPerSample();
+        byte[] out = new byte[count * bytes];
+        int p = 0;
+        for (int i = 0; i < count; i++) {
+            double s = Math.max(-1.0, Math.min(1.0, samples[i]));
+            switch (bytes) {
+                case 1:
+                    out[p++] = (byte) (Math.round(s * 127.0) + 128);
+                    break;
+                case 2: {
+                    long v = Math.round(s * 32767.0);
+                    out[p++] = (byte) v;
+                    out[p++] = (byte) (v >> 8);
+                    break;
+                }
+                case 3: {
+                    long v = Math.round(s * 8388607.0);
+                    out[p++] = (byte) v;
+                    out[p++] = (byte) (v >> 8);
+                    out[p++] = (byte) (v >> 16);
+                    break;
+                }
+                default: {
+                    long v = Math.round(s * 2147483647.0);
+                    out[p++] = (byte) v;
+                    out[p++] = (byte) (v >> 8);
+                    out[p++] = (byte) (v >> 16);
+                    out[p++] = (byte) (v >> 24);
+                }
+            }
+        }
+        return out;
+    }
+}
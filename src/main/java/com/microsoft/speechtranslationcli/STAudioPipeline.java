@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the audio of one input file in 0.25s chunks and runs each chunk through the configured STAudioStage list.
+ * Only one chunk is held in memory at a time. The first chunk returned carries the WAV header of the uploaded stream.
+ */
+public class STAudioPipeline implements Closeable {
+    public static final double CHUNK_SECONDS = 0.25;
+
+    private final InputStream inputStream;
+    private final STAudioFormat sourceFormat;
+    private final long dataLength;
+    private final List<STAudioStage> stages = new ArrayList<>();
+    private STOffsetMap offsetMap = null;
+
+    private final int chunkBytes;
+    private final int numberOfChunks;
+    private int chunkIndex = 0;
+    private long bytesRead = 0;
+
+    private STAudioPipeline(InputStream inputStream, STAudioFormat sourceFormat, long dataLength) {
+        this.inputStream = inputStream;
+        this.sourceFormat = sourceFormat;
+        this.dataLength = dataLength;
+        this.chunkBytes = Math.max(1, (int) (sourceFormat.getSampleRate() * CHUNK_SECONDS)) * sourceFormat.getFrameSize();
+        this.numberOfChunks = (int) Math.max(1, (dataLength + chunkBytes - 1) / chunkBytes);
+    }
+
+    /**
+     * Opens a file as configured: a WAV file unless a raw input format is set, normalized if enabled or required.
+     *
+     * @param file the input file
+     * @return a pipeline positioned at the first sample
+     * @throws IOException if the file cannot be read or its header cannot be parsed
+     */
+    public static STAudioPipeline open(File file) throws IOException {
+        return open(new STJob(file));
+    }
+
+    /**
+     * Opens the audio of a job, which for a segment is only the segment's range of the file.
+     *
+     * @param job the job to read
+     * @return a pipeline positioned at the first sample of the job
+     * @throws IOException if the file cannot be read or its header cannot be parsed
+     */
+    public static STAudioPipeline open(STJob job) throws IOException {
+        return open(job, job.openStream());
+    }
+
+    /**
+     * @param job the job to read
+     * @param raw stream positioned at the start of the job's file, closed with the pipeline
+     * @return a pipeline positioned at the first sample of the job
+     * @throws IOException if the file cannot be read or its header cannot be parsed
+     */
+    public static STAudioPipeline open(STJob job, InputStream raw) throws IOException {
+        InputStream in = new BufferedInputStream(raw);
+        try {
+            return open(in, job.getSize(), job.getOffset(), job.getLength(), job.getHeader());
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param in          stream positioned at the start of the input
+     * @param length      total length of the input in bytes
+     * @param rangeOffset first sample byte to read, relative to the start of the sample data
+     * @param rangeLength number of sample bytes to read, -1 for all
+     * @return a pipeline positioned at the first sample of the range
+     * @throws IOException if the WAV header cannot be parsed
+     */
+    public static STAudioPipeline open(InputStream in, long length, long rangeOffset, long rangeLength) throws IOException {
+        return open(in, length, rangeOffset, rangeLength, null);
+    }
+
+    /**
+     * @param in          stream positioned at the start of the input
+     * @param length      total length of the input in bytes
+     * @param rangeOffset first sample byte to read, relative to the start of the sample data
+     * @param rangeLength number of sample bytes to read, -1 for all
+     * @param probed      the already parsed WAV header of the input, null to parse it from the stream
+     * @return a pipeline positioned at the first sample of the range
+     * @throws IOException if the WAV header cannot be parsed
+     */
+    public static STAudioPipeline open(InputStream in, long length, long rangeOffset, long rangeLength, STWaveHeader probed) throws IOException {
+        STConfiguration configInstance = STConfiguration.getInstance();
+        String rawFormat = configInstance.getString(STConfigurationDefault.AUDIO_RAW_FORMAT);
+        boolean normalize = configInstance.getBoolean(STConfigurationDefault.AUDIO_NORMALIZE);
+        STAudioFormat format;
+        long dataLength;
+        if (rawFormat.isEmpty()) {
+            STWaveHeader header = probed;
+            if (header != null) {
+                IOUtils.skipFully(in, header.getDataOffset());
+            } else {
+                header = STWaveHeader.read(in, length);
+            }
+            format = header.getFormat();
+            dataLength = header.getDataLength();
+        } else {
+            format = STAudioFormat.parse(rawFormat);
+            dataLength = length;
+            normalize = true;
+        }
+        if (rangeOffset > 0) {
+            IOUtils.skipFully(in, rangeOffset);
+        }
+        dataLength = Math.max(0, dataLength - rangeOffset);
+        if (rangeLength >= 0) {
+            dataLength = Math.min(dataLength, rangeLength);
+        }
+        STAudioPipeline pipeline = new STAudioPipeline(in, format, dataLength);
+        if (normalize) {
+            STAudioFormat target = STAudioFormat.pcm(configInstance.getInt(STConfigurationDefault.AUDIO_SAMPLE_RATE),
+                    configInstance.getInt(STConfigurationDefault.AUDIO_BITS));
+            if (STAudioNormalizer.isRequired(pipeline.getSourceFormat(), target)) {
+                pipeline.addStage(new STAudioNormalizer(pipeline.getSourceFormat(), target));
+            }
+        }
+        if (configInstance.getBoolean(STConfigurationDefault.AUDIO_TRIM_SILENCE)) {
+            STSilenceCompactor compactor = new STSilenceCompactor(pipeline.getOutputFormat(),
+                    configInstance.getDouble(STConfigurationDefault.AUDIO_MAX_SILENCE),
+                    configInstance.getDouble(STConfigurationDefault.AUDIO_VAD_THRESHOLD));
+            pipeline.addStage(compactor);
+            pipeline.offsetMap = compactor.getOffsetMap();
+        }
+        return pipeline;
+    }
+
+    public void addStage(STAudioStage stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * @return the cuts made by silence trimming, or null if the timeline of the upload matches the input
+     */
+    public STOffsetMap getOffsetMap() {
+        return offsetMap;
+    }
+
+    public STAudioFormat getSourceFormat() {
+        return sourceFormat;
+    }
+
+    public STAudioFormat getOutputFormat() {
+        return stages.isEmpty() ? sourceFormat : stages.get(stages.size() - 1).getOutputFormat();
+    }
+
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public double getDurationSeconds() {
+        return dataLength / (double) sourceFormat.getBytesPerSecond();
+    }
+
+    public int getNumberOfChunks() {
+        return numberOfChunks;
+    }
+
+    /**
+     * @return the WAV header describing the stream the stages produce
+     */
+    public byte[] getHeader() {
+        long length = dataLength;
+        for (STAudioStage stage : stages) {
+            if (length < 0) break;
+            length = stage.getOutputLength(length);
+        }
+        return STWaveHeader.build(getOutputFormat(), Math.max(0, length));
+    }
+
+    /**
+     * @return the bytes to upload for the next chunk, the first one prefixed with the header, or null after the last
+     * @throws IOException if reading the input fails
+     */
+    public byte[] nextChunk() throws IOException {
+        if (chunkIndex >= numberOfChunks) return null;
+        boolean first = chunkIndex == 0;
+        boolean last = chunkIndex == numberOfChunks - 1;
+
+        byte[] out = nextRawChunk();
+        for (STAudioStage stage : stages) {
+            out = stage.process(out, out.length);
+            if (last) out = concat(out, stage.flush());
+        }
+        return first ? concat(getHeader(), out) : out;
+    }
+
+    /**
+     * @return the next 0.25s of source samples without running the stages, or null after the last chunk
+     * @throws IOException if reading the input fails
+     */
+    public byte[] nextRawChunk() throws IOException {
+        if (chunkIndex >= numberOfChunks) return null;
+        chunkIndex++;
+
+        byte[] buffer = new byte[chunkBytes];
+        int length = 0;
+        long remaining = dataLength - bytesRead;
+        int wanted = (int) Math.min(chunkBytes, Math.max(0, remaining));
+        while (length < wanted) {
+            int r = inputStream.read(buffer, length, wanted - length);
+            if (r < 0) break;
+            length += r;
+        }
+        bytesRead += length;
+        length -= length % sourceFormat.getFrameSize();
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        if (b.length == 0) return a;
+        byte[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * A streaming transformation applied to the audio of a file on its way to the socket. Stages see the sample data
+ * chunk by chunk, never the whole file, and may change its format.
+ */
+public interface STAudioStage {
+
+    /**
+     * @return format of the bytes returned by process() and flush()
+     */
+    STAudioFormat getOutputFormat();
+
+    /**
+     * @param chunk  sample bytes in the input format of this stage, always a whole number of frames
+     * @param length number of valid bytes in chunk
+     * @return transformed bytes, possibly empty
+     */
+    byte[] process(byte[] chunk, int length);
+
+    /**
+     * Called once after the last chunk.
+     *
+     * @return any bytes the stage still holds back
+     */
+    byte[] flush();
+
+    /**
+     * @param inputLength number of input bytes the stage will see
+     * @return number of bytes the stage will produce, or -1 if that depends on the content
+     */
+    default long getOutputLength(long inputLength) {
+        return -1;
+    }
+}
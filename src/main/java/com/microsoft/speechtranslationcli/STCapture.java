@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the wire-level exchange of every session into a compact capture file, for STReplayServer to play back.
+ *
+ * The file starts with the magic "STCAP1", followed by records of: type byte, session id (int), offset in microseconds
+ * since the session started uploading (long), payload length (int), payload. The payload of a SESSION record is the
+ * request URI with the subscription key redacted, of a CHUNK record the chunk size (int), of TEXT and BINARY records
+ * the message, of a CLOSE record the status code (int).
+ */
+public class STCapture implements Closeable {
+    public static final byte SESSION = 'S';
+    public static final byte CHUNK = 'C';
+    public static final byte TEXT = 'T';
+    public static final byte BINARY = 'B';
+    public static final byte CLOSE = 'E';
+
+    private static final byte[] MAGIC = "STCAP1".getBytes(StandardCharsets.US_ASCII);
+
+    private final DataOutputStream out;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    /**
+     * One recorded event.
+     */
+    public static class Record {
+        private final byte type;
+        private final long offsetMicros;
+        private final byte[] payload;
+
+        Record(byte type, long offsetMicros, byte[] payload) {
+            this.type = type;
+            this.offsetMicros = offsetMicros;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public long getOffsetMicros() {
+            return offsetMicros;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * The handle a socket records its session with.
+     */
+    public class SessionRecorder {
+        private final int id;
+        private final long started = System.nanoTime();
+
+        SessionRecorder(int id) {
+            this.id = id;
+        }
+
+        public void chunk(int bytes) {
+            write(id, CHUNK, offset(), new byte[]{(byte) (bytes >>> 24), (byte) (bytes >>> 16), (byte) (bytes >>> 8), (byte) bytes});
+        }
+
+        public void text(String message) {
+            write(id, TEXT, offset(), message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void binary(byte[] message) {
+            write(id, BINARY, offset(), message);
+        }
+
+        public void close(int statusCode) {
+            write(id, CLOSE, offset(), new byte[]{(byte) (statusCode >>> 24), (byte) (statusCode >>> 16), (byte) (statusCode >>> 8), (byte) statusCode});
+        }
+
+        private long offset() {
+            return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * @param file the capture file, overwritten
+     * @throws IOException if the file cannot be created
+     */
+    public STCapture(File file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        out.write(MAGIC);
+    }
+
+    /**
+     * @param uri the request URI of the session
+     * @return the handle to record the session with
+     */
+    public SessionRecorder begin(String uri) {
+        SessionRecorder session = new SessionRecorder(sessions.incrementAndGet());
+        write(session.id, SESSION, 0, redact(uri).getBytes(StandardCharsets.UTF_8));
+        return session;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    static String redact(String uri) {
+        return uri.replaceAll("(?i)(subscription-key=)[^&]*", "$1REDACTED");
+    }
+
+    // a capture is a diagnostic aid, a failing write must not fail the run
+    private synchronized void write(int session, byte type, long offsetMicros, byte[] payload) {
+        try {
+            out.writeByte(type);
+            out.writeInt(session);
+            out.writeLong(offsetMicros);
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            // the stream reports the error again on close
+        }
+    }
+
+    /**
+     * @param file a capture file
+     * @return the records of every session in the order the sessions started, the SESSION record first
+     * @throws IOException if the file cannot be read or is no capture file
+     */
+    public static List<List<Record>> read(File file) throws IOException {
+        Map<Integer, List<Record>> sessions = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) throw new IOException("Not a capture file: " + file);
+            }
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int session = in.readInt();
+                long offset = in.readLong();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                sessions.computeIfAbsent(session, k -> new ArrayList<>()).add(new Record(type, offset, payload));
+            }
+        } catch (EOFException e) {
+            // a capture cut short by an error exit ends in a torn record
+        }
+        return new ArrayList<>(sessions.values());
+    }
+
+    static int readInt(byte[] payload) {
+        return ((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16) | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+    }
+}
@@ -27,8 +27,6 @@ import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
-import org.eclipse.jetty.websocket.client.WebSocketClient;
 import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
@@ -39,9 +37,19 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 // TODO: implement input validation for picocli options and parameters
 
@@ -110,15 +118,248 @@ public class STCli implements Runnable {
             description = "Cognitive Services Translator Speech API key", required = false)
     private String subscriptionKey;
 
-    @Parameters(arity = "1..*", paramLabel = "FILE", description = "WAV file(s) to translate.")
+    @Option(names = "--route",
+            description = "Subscription key and endpoint to spread sessions over, as comma-separated name=value pairs, " +
+                    "e.g. key=0123abcd,endpoint=wss://dev.microsofttranslator.com,weight=2,connections=4. Optional " +
+                    "per-route quotas are connections, connects and audioseconds. May be given multiple times, " +
+                    "sessions are balanced by weight and recent health of each route.", required = false)
+    private String[] routes;
+
+    @Option(names = "--prewarm",
+            description = "Number of upgraded connections kept open and idle ahead of time, so the next file " +
+                    "starts streaming audio without waiting for the handshake. The default is 1, 0 disables it.",
+            required = false)
+    private Integer prewarm;
+
+    @Option(names = "--normalize",
+            description = "Downmix, resample and re-quantize the audio to mono PCM at the target sample rate and " +
+                    "bit depth before uploading. Reduces upload bandwidth for high quality or multi-channel input.",
+            required = false)
+    private boolean normalize;
+
+    @Option(names = "--sample-rate",
+            description = "Target sample rate in Hz used with --normalize. The default is 16000.", required = false)
+    private Integer sampleRate;
+
+    @Option(names = "--bits",
+            description = "Target bit depth used with --normalize. Valid options are: 8, 16, 24, 32. The default is 16.",
+            required = false)
+    private Integer bits;
+
+    @Option(names = "--raw-format",
+            description = "Treat input files as headerless PCM in the given format encoding,rate,channels, e.g. " +
+                    "s16le,16000,1. Encodings are: u8, s16le, s24le, s32le, f32le, f64le. Implies --normalize.",
+            required = false)
+    private String rawFormat;
+
+    @Option(names = "--trim-silence",
+            description = "Shorten long pauses before uploading and skip files that contain no speech at all. " +
+                    "Time offsets in the results still refer to the original recording.", required = false)
+    private boolean trimSilence;
+
+    @Option(names = "--max-silence",
+            description = "Longest pause in seconds kept as is with --trim-silence. The default is 0.5.",
+            required = false)
+    private Double maxSilence;
+
+    @Option(names = {"-p", "--parallel"},
+            description = "Number of sessions translating at the same time. The default is 1.", required = false)
+    private Integer parallel;
+
+    @Option(names = "--adaptive",
+            description = "Tune the number of parallel sessions while running, starting from --parallel, to the " +
+                    "number that translates the most audio per second without sessions failing.", required = false)
+    private boolean adaptive;
+
+    @Option(names = "--parallel-min",
+            description = "Lowest number of parallel sessions with --adaptive. The default is 1.", required = false)
+    private Integer parallelMin;
+
+    @Option(names = "--parallel-max",
+            description = "Highest number of parallel sessions with --adaptive. The default is 16.", required = false)
+    private Integer parallelMax;
+
+    @Option(names = "--adaptive-window",
+            description = "Seconds of completed sessions each adjustment with --adaptive is based on. The default " +
+                    "is 10.", required = false)
+    private Double adaptiveWindow;
+
+    @Option(names = "--transport",
+            description = "Websocket client the sessions run on. Valid options are: jetty, nio. The default is jetty. " +
+                    "nio is a small built-in client on SocketChannel and SSLEngine.", required = false)
+    private String transport;
+
+    @Option(names = "--tls-session-cache",
+            description = "Number of TLS sessions kept for resumption by all connections of the process. " +
+                    "The default is 1024.", required = false)
+    private Integer tlsSessionCache;
+
+    @Option(names = "--tls-session-ttl",
+            description = "Seconds a cached TLS session can be resumed for. The default is 86400.", required = false)
+    private Integer tlsSessionTtl;
+
+    @Option(names = "--schedule",
+            description = "Order in which files are started. Valid options are: input, longest, shortest. The default " +
+                    "is input, the command line order. With parallel sessions, longest finishes a batch soonest and " +
+                    "shortest has single files done soonest on average.", required = false)
+    private String schedule;
+
+    @Option(names = "--shard",
+            description = "Translate only every n-th input file, starting with file i (counting from 0), given as i/n. " +
+                    "Lets n processes split a batch run with the same files statically.", required = false)
+    private String shard;
+
+    @Option(names = "--queue",
+            description = "Share the input files with other processes running the same command line with the same " +
+                    "directory, possibly on other hosts through a network file system. Every file is translated by the " +
+                    "first process to claim it, files of crashed processes are taken over, files already done are skipped. " +
+                    "Cannot be combined with --output-sink pack or --index, which are written by a single process.",
+            required = false)
+    private File queue;
+
+    @Option(names = "--queue-lease",
+            description = "Seconds after which a claim on a file of a process that stopped renewing it expires with " +
+                    "--queue. The default is 60.", required = false)
+    private Double queueLease;
+
+    @Option(names = "--watch",
+            description = "Keep running and translate every file that lands in the given directory, after the files " +
+                    "given on the command line. Files named .* or *.part or *.tmp are ignored, so recorders can " +
+                    "write under such a name and rename the file when done.", required = false)
+    private File watch;
+
+    @Option(names = "--watch-settle",
+            description = "Seconds the size of a new file in the watched directory must stay the same before it is " +
+                    "translated. The default is 0.5.", required = false)
+    private Double watchSettle;
+
+    @Option(names = "--watch-done",
+            description = "Move files from the watched directory to the given directory once they are translated. " +
+                    "By default they are left in place.", required = false)
+    private File watchDone;
+
+    @Option(names = "--max-connections",
+            description = "Connections to the service open at the same time at most, pre-warmed ones included. " +
+                    "The default is 0, unlimited.", required = false)
+    private Integer maxConnections;
+
+    @Option(names = "--max-connects",
+            description = "Connects per quota interval at most. The default is 0, unlimited.", required = false)
+    private Double maxConnects;
+
+    @Option(names = "--max-audio-seconds",
+            description = "Seconds of audio uploaded per quota interval at most, across all sessions. " +
+                    "The default is 0, unlimited.", required = false)
+    private Double maxAudioSeconds;
+
+    @Option(names = "--quota-interval",
+            description = "Length in seconds of the interval --max-connects and --max-audio-seconds refer to. " +
+                    "The default is 60.", required = false)
+    private Double quotaInterval;
+
+    @Option(names = "--memory-budget",
+            description = "Bytes of audio, response and result buffers held at the same time at most. Sessions " +
+                    "only start once their expected buffers fit. The default is 268435456.", required = false)
+    private Long memoryBudget;
+
+    @Option(names = "--prefetch",
+            description = "Number of upcoming input files whose first bytes are read in the background while the " +
+                    "current files upload. The default is 2, 0 disables it.", required = false)
+    private Integer prefetch;
+
+    @Option(names = "--prefetch-budget",
+            description = "Bytes held by read-ahead data at most. The default is 67108864.", required = false)
+    private Long prefetchBudget;
+
+    @Option(names = "--capture",
+            description = "Record every session, the audio chunk sizes sent and the responses received with their " +
+                    "timing, to the given file for replaying it later. Subscription keys are not recorded.",
+            required = false)
+    private File capture;
+
+    @Option(names = "--replay",
+            description = "Do not connect to the service but to a local endpoint playing back the sessions " +
+                    "recorded with --capture to the given file, for benchmarking without the network.",
+            required = false)
+    private File replay;
+
+    @Option(names = "--replay-speed",
+            description = "Factor the recorded response times are divided by with --replay. The default is 1, " +
+                    "the recorded pace.", required = false)
+    private Double replaySpeed;
+
+    @Option(names = "--hedge",
+            description = "Start a second session for a file whose session stays quiet after the upload for longer " +
+                    "than usual, and keep the results of whichever completes first. Only files and segments short enough " +
+                    "to be uploaded again before the first session times out are hedged.", required = false)
+    private boolean hedge;
+
+    @Option(names = "--hedge-budget",
+            description = "Fraction of the sessions that may be hedged with --hedge. The default is 0.05.",
+            required = false)
+    private Double hedgeBudget;
+
+    @Option(names = "--hedge-percentile",
+            description = "Percentile of the time sessions take to close after the upload beyond which a quiet " +
+                    "session is hedged with --hedge. The default is 95.", required = false)
+    private Double hedgePercentile;
+
+    @Option(names = "--segment",
+            description = "Split recordings longer than one and a half times the given number of seconds at pauses " +
+                    "and translate the segments in parallel. Results are stitched back together in order.",
+            required = false)
+    private Double segmentSeconds;
+
+    @Option(names = "--output-sink",
+            description = "Where results go. Valid options are: file, stdout, pack. The default is file. With stdout every " +
+                    "text message is printed as one line of JSON as soon as it arrives, the results of a file split with " +
+                    "--segment once all of its segments are done. With pack results are appended to a few large files " +
+                    "in the output directory, use \"speechtranslate extract\" to read them.",
+            required = false)
+    private String outputSink;
+
+    @Option(names = "--index",
+            description = "Add the recognized and translated text of every final result to a searchable index in the " +
+                    "given directory while results are written. Use \"speechtranslate search\" to query it.",
+            required = false)
+    private File index;
+
+    @Option(names = "--pack-size",
+            description = "With --output-sink pack, size in bytes after which a new pack file is started. " +
+                    "The default is 1073741824.", required = false)
+    private Long packSize;
+
+    @Option(names = "--pack-gzip",
+            description = "With --output-sink pack, compress every stored result.", required = false)
+    private boolean packGzip;
+
+    @Option(names = "--audio-fifo",
+            description = "With --output-sink stdout, write text-to-speech audio to this FIFO (or file) instead of " +
+                    "the output directory.", required = false)
+    private File audioFifo;
+
+    @Parameters(arity = "0..*", paramLabel = "FILE", description = "WAV file(s) to translate. Zip and tar archives " +
+            "are read without extracting them, archive!/glob selects entries, e.g. bundle.zip!/calls/*.wav. " +
+            "Optional with --watch.")
     private File[] inputFiles;
 
+    private STWaveHeader[] headers;
+
+    private final List<String> archives = new ArrayList<>();
+
     // TODO: add option to define output file suffix matching [^-_.A-Za-z0-9]
 
     public static void main(String[] args) {
         System.setProperty("org.eclipse.jetty.util.log.announce", "false"); // disable annoying Jetty logging printout to console
         classLogger.trace(stringsCli.getString("log4jMainTraceStart"));
-        CommandLine.run(new STCli(), System.out, args);
+        if (args.length > 0 && STPackExtract.NAME.equals(args[0])) {
+            // the extract command has none of the required translation options, so it is dispatched on its own
+            CommandLine.run(new STPackExtract(), System.out, Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length > 0 && STSearch.NAME.equals(args[0])) {
+            CommandLine.run(new STSearch(), System.out, Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            CommandLine.run(new STCli(), System.out, args);
+        }
         classLogger.trace(stringsCli.getString("log4jMainTraceEnd"));
     }
 
@@ -131,7 +372,7 @@ public class STCli implements Runnable {
         validateParameters();
         validateOptions();
         classLogger.trace(stringsCli.getString("log4jStcTraceConfigurationReady"));
-        communicateSequentially();
+        communicate();
     }
 
     private void validateOptions() {
@@ -144,6 +385,36 @@ public class STCli implements Runnable {
             STValidate.validateOutputDir(new File(configInstance.getConfiguration().getString(STConfigurationDefault.CLI_OUTPUT_DIR.getKey())));
             STValidate.validateProfanityAction(configInstance.getConfiguration().getString(STConfigurationDefault.API_PROFANITY_ACTION.getKey()));
             STValidate.validateProfanityMarker(configInstance.getConfiguration().getString(STConfigurationDefault.API_PROFANITY_MARKER.getKey()));
+            STValidate.validateRawFormat(configInstance.getString(STConfigurationDefault.AUDIO_RAW_FORMAT));
+            STValidate.validateOutputSink(configInstance.getString(STConfigurationDefault.CLI_OUTPUT_SINK));
+            STValidate.validateRoutes(configInstance.getString(STConfigurationDefault.API_ROUTES));
+            STValidate.validateParallel(configInstance.getInt(STConfigurationDefault.CLI_PARALLEL));
+            STValidate.validateAdaptive(configInstance.getInt(STConfigurationDefault.CLI_PARALLEL_MIN),
+                    configInstance.getInt(STConfigurationDefault.CLI_PARALLEL_MAX),
+                    configInstance.getDouble(STConfigurationDefault.CLI_ADAPTIVE_WINDOW));
+            STValidate.validateSchedule(configInstance.getString(STConfigurationDefault.CLI_SCHEDULE));
+            STValidate.validateTransport(configInstance.getString(STConfigurationDefault.CLI_TRANSPORT));
+            STValidate.validateTlsSessionCache(configInstance.getInt(STConfigurationDefault.WEBSOCKET_TLS_SESSION_CACHE),
+                    configInstance.getInt(STConfigurationDefault.WEBSOCKET_TLS_SESSION_TTL));
+            STValidate.validateShard(configInstance.getString(STConfigurationDefault.CLI_SHARD));
+            STValidate.validateQueueLease(configInstance.getDouble(STConfigurationDefault.CLI_QUEUE_LEASE));
+            STValidate.validateQueue(configInstance.getString(STConfigurationDefault.CLI_QUEUE),
+                    configInstance.getString(STConfigurationDefault.CLI_OUTPUT_SINK),
+                    configInstance.getString(STConfigurationDefault.CLI_INDEX));
+            STValidate.validateWatch(configInstance.getString(STConfigurationDefault.CLI_WATCH),
+                    configInstance.getDouble(STConfigurationDefault.CLI_WATCH_SETTLE),
+                    new File(configInstance.getConfiguration().getString(STConfigurationDefault.CLI_OUTPUT_DIR.getKey())),
+                    configInstance.getString(STConfigurationDefault.CLI_OUTPUT_SINK));
+            STValidate.validateQuotaInterval(configInstance.getDouble(STConfigurationDefault.QUOTA_INTERVAL));
+            STValidate.validateMemoryBudget(configInstance.getLong(STConfigurationDefault.CLI_MEMORY_BUDGET));
+            STValidate.validateSegmentSeconds(configInstance.getDouble(STConfigurationDefault.CLI_SEGMENT_SECONDS));
+            STValidate.validateMaxSilence(configInstance.getDouble(STConfigurationDefault.AUDIO_MAX_SILENCE));
+            STValidate.validateReplay(configInstance.getString(STConfigurationDefault.CLI_REPLAY),
+                    configInstance.getDouble(STConfigurationDefault.CLI_REPLAY_SPEED));
+            STValidate.validateHedge(configInstance.getDouble(STConfigurationDefault.CLI_HEDGE_BUDGET),
+                    configInstance.getDouble(STConfigurationDefault.CLI_HEDGE_PERCENTILE));
+            STValidate.validateTargetFormat(configInstance.getInt(STConfigurationDefault.AUDIO_SAMPLE_RATE),
+                    configInstance.getInt(STConfigurationDefault.AUDIO_BITS));
         } catch (STValidationException e) {
             classLogger.debug(stringsCli.getString("StvValidationDebugValidationException"));
             classLogger.debug(e.getMessage() + e.getOptionOrParameter(), e);
@@ -159,7 +430,23 @@ public class STCli implements Runnable {
     private void validateParameters() {
         try {
             //STValidate.validateFiles((File[]) this.configInstance.getConfiguration().getArray(File.class, STConfigurationOverlay.API_FILES.getKey()));
-            STValidate.validateFiles(inputFiles);
+            if (inputFiles == null) inputFiles = new File[0];
+            if (inputFiles.length == 0 && configInstance.getString(STConfigurationDefault.CLI_WATCH).isEmpty()) {
+                throw new STValidationException("", stringsCli.getString("StvValidationNoInput"), true);
+            }
+            // archive entries are validated as they are read
+            List<File> files = new ArrayList<>();
+            for (File input : inputFiles) {
+                if (STArchiveReader.isArchive(input.getPath())) {
+                    STValidate.validateArchive(STArchiveReader.archiveOf(input.getPath()));
+                    archives.add(input.getPath());
+                } else {
+                    files.add(input);
+                }
+            }
+            inputFiles = files.toArray(new File[0]);
+            headers = STValidate.validateFiles(inputFiles,
+                    configInstance.getString(STConfigurationDefault.AUDIO_RAW_FORMAT).isEmpty());
         } catch (STValidationException e) {
             classLogger.debug(stringsCli.getString("StvValidationDebugValidationException"));
             classLogger.debug(e.getMessage() + e.getOptionOrParameter(), e);
@@ -200,49 +487,402 @@ public class STCli implements Runnable {
         }
         if (!StringUtils.isBlank(postfix))
             configuration.setProperty(STConfigurationDefault.CLI_POSTFIX.getKey(), postfix);
+        if (routes != null && routes.length > 0)
+            configuration.setProperty(STConfigurationDefault.API_ROUTES.getKey(), String.join(";", routes));
+        if (prewarm != null) configuration.setProperty(STConfigurationDefault.CLI_PREWARM.getKey(), prewarm);
+        if (normalize) configuration.setProperty(STConfigurationDefault.AUDIO_NORMALIZE.getKey(), true);
+        if (sampleRate != null) configuration.setProperty(STConfigurationDefault.AUDIO_SAMPLE_RATE.getKey(), sampleRate);
+        if (bits != null) configuration.setProperty(STConfigurationDefault.AUDIO_BITS.getKey(), bits);
+        if (!StringUtils.isBlank(rawFormat))
+            configuration.setProperty(STConfigurationDefault.AUDIO_RAW_FORMAT.getKey(), rawFormat);
+        if (trimSilence) configuration.setProperty(STConfigurationDefault.AUDIO_TRIM_SILENCE.getKey(), true);
+        if (maxSilence != null) configuration.setProperty(STConfigurationDefault.AUDIO_MAX_SILENCE.getKey(), maxSilence);
+        if (!StringUtils.isBlank(outputSink))
+            configuration.setProperty(STConfigurationDefault.CLI_OUTPUT_SINK.getKey(), outputSink);
+        if (index != null) configuration.setProperty(STConfigurationDefault.CLI_INDEX.getKey(), index.getAbsolutePath());
+        if (packSize != null) configuration.setProperty(STConfigurationDefault.CLI_PACK_SIZE.getKey(), packSize);
+        if (packGzip) configuration.setProperty(STConfigurationDefault.CLI_PACK_GZIP.getKey(), true);
+        if (audioFifo != null)
+            configuration.setProperty(STConfigurationDefault.CLI_AUDIO_FIFO.getKey(), audioFifo.getAbsolutePath());
+        if (parallel != null) configuration.setProperty(STConfigurationDefault.CLI_PARALLEL.getKey(), parallel);
+        if (adaptive) configuration.setProperty(STConfigurationDefault.CLI_ADAPTIVE.getKey(), true);
+        if (parallelMin != null) configuration.setProperty(STConfigurationDefault.CLI_PARALLEL_MIN.getKey(), parallelMin);
+        if (parallelMax != null) configuration.setProperty(STConfigurationDefault.CLI_PARALLEL_MAX.getKey(), parallelMax);
+        if (adaptiveWindow != null)
+            configuration.setProperty(STConfigurationDefault.CLI_ADAPTIVE_WINDOW.getKey(), adaptiveWindow);
+        if (!StringUtils.isBlank(transport))
+            configuration.setProperty(STConfigurationDefault.CLI_TRANSPORT.getKey(), transport);
+        if (tlsSessionCache != null)
+            configuration.setProperty(STConfigurationDefault.WEBSOCKET_TLS_SESSION_CACHE.getKey(), tlsSessionCache);
+        if (tlsSessionTtl != null)
+            configuration.setProperty(STConfigurationDefault.WEBSOCKET_TLS_SESSION_TTL.getKey(), tlsSessionTtl);
+        if (!StringUtils.isBlank(schedule))
+            configuration.setProperty(STConfigurationDefault.CLI_SCHEDULE.getKey(), schedule);
+        if (!StringUtils.isBlank(shard)) configuration.setProperty(STConfigurationDefault.CLI_SHARD.getKey(), shard);
+        if (queue != null) configuration.setProperty(STConfigurationDefault.CLI_QUEUE.getKey(), queue.getAbsolutePath());
+        if (queueLease != null) configuration.setProperty(STConfigurationDefault.CLI_QUEUE_LEASE.getKey(), queueLease);
+        if (watch != null) configuration.setProperty(STConfigurationDefault.CLI_WATCH.getKey(), watch.getAbsolutePath());
+        if (watchSettle != null) configuration.setProperty(STConfigurationDefault.CLI_WATCH_SETTLE.getKey(), watchSettle);
+        if (watchDone != null)
+            configuration.setProperty(STConfigurationDefault.CLI_WATCH_DONE.getKey(), watchDone.getAbsolutePath());
+        if (maxConnections != null)
+            configuration.setProperty(STConfigurationDefault.QUOTA_CONNECTIONS.getKey(), maxConnections);
+        if (maxConnects != null) configuration.setProperty(STConfigurationDefault.QUOTA_CONNECTS.getKey(), maxConnects);
+        if (maxAudioSeconds != null)
+            configuration.setProperty(STConfigurationDefault.QUOTA_AUDIO_SECONDS.getKey(), maxAudioSeconds);
+        if (quotaInterval != null)
+            configuration.setProperty(STConfigurationDefault.QUOTA_INTERVAL.getKey(), quotaInterval);
+        if (memoryBudget != null)
+            configuration.setProperty(STConfigurationDefault.CLI_MEMORY_BUDGET.getKey(), memoryBudget);
+        if (prefetch != null) configuration.setProperty(STConfigurationDefault.CLI_PREFETCH.getKey(), prefetch);
+        if (prefetchBudget != null)
+            configuration.setProperty(STConfigurationDefault.CLI_PREFETCH_BUDGET.getKey(), prefetchBudget);
+        if (segmentSeconds != null)
+            configuration.setProperty(STConfigurationDefault.CLI_SEGMENT_SECONDS.getKey(), segmentSeconds);
+        if (capture != null) configuration.setProperty(STConfigurationDefault.CLI_CAPTURE.getKey(), capture.getAbsolutePath());
+        if (replay != null) configuration.setProperty(STConfigurationDefault.CLI_REPLAY.getKey(), replay.getAbsolutePath());
+        if (replaySpeed != null) configuration.setProperty(STConfigurationDefault.CLI_REPLAY_SPEED.getKey(), replaySpeed);
+        if (hedge) configuration.setProperty(STConfigurationDefault.CLI_HEDGE.getKey(), true);
+        if (hedgeBudget != null) configuration.setProperty(STConfigurationDefault.CLI_HEDGE_BUDGET.getKey(), hedgeBudget);
+        if (hedgePercentile != null)
+            configuration.setProperty(STConfigurationDefault.CLI_HEDGE_PERCENTILE.getKey(), hedgePercentile);
     }
 
-    // one file at a time in this one...
-    private void communicateSequentially() {
-        for (File f : inputFiles) {
-            WebSocketClient client = new WebSocketClient();
-            SpeechClientSocket socket = new SpeechClientSocket(f);
+    // files, or segments of long files, are spread over the configured number of parallel sessions
+    private void communicate() {
+        int parallel = configInstance.getInt(STConfigurationDefault.CLI_PARALLEL);
+        STReplayServer replayServer = createReplayServer();
+        STRouter router = new STRouter(replayServer == null ? createRoutes()
+                : Collections.singletonList(new STRoute(replayServer.getEndpoint(), "", 1, 0, 0, 0)),
+                configInstance.getInt(STConfigurationDefault.CLI_PREWARM), STQuota.fromConfiguration(), this::buildConnectionString);
+        STCapture capture = createCapture();
+        if (capture != null) router.setCapture(capture);
+        STScheduler scheduler = new STScheduler(router, parallel,
+                new STMemoryBudget(configInstance.getLong(STConfigurationDefault.CLI_MEMORY_BUDGET)));
+        STOutputSink sink = createOutputSink();
+        double segmentSeconds = configInstance.getDouble(STConfigurationDefault.CLI_SEGMENT_SECONDS);
+        STSegmenter segmenter = new STSegmenter(segmentSeconds, configInstance.getDouble(STConfigurationDefault.AUDIO_VAD_THRESHOLD));
+        File outputDir = new File(configInstance.getString(STConfigurationDefault.CLI_OUTPUT_DIR));
+        STRunReport report = STRunReport.getInstance();
+        report.start(from, to);
+        // runs ending on an error exit still get their report
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> report.write(outputDir), "run-report"));
 
+        try {
+            router.start();
+            List<STJob> files = new ArrayList<>();
+            String[] shard = StringUtils.split(configInstance.getString(STConfigurationDefault.CLI_SHARD), '/');
+            for (int i = 0; i < inputFiles.length; i++) {
+                if (shard.length == 0 || i % Integer.parseInt(shard[1]) == Integer.parseInt(shard[0])) {
+                    files.add(new STJob(inputFiles[i], headers[i]));
+                }
+            }
+            String rawFormat = configInstance.getString(STConfigurationDefault.AUDIO_RAW_FORMAT);
+            Comparator<STJob> order = STJobOrder.forSchedule(configInstance.getString(STConfigurationDefault.CLI_SCHEDULE),
+                    rawFormat.isEmpty() ? null : STAudioFormat.parse(rawFormat));
+            String queueDirectory = configInstance.getString(STConfigurationDefault.CLI_QUEUE);
+            if (queueDirectory.isEmpty()) {
+                // the whole queue is known before the first job starts, so it can be ordered by duration
+                List<STJob> queue = new ArrayList<>();
+                Map<STJob, STOutputSink> sinks = new HashMap<>();
+                for (STJob file : files) {
+                    queue.addAll(plan(file, segmenter, sink, sinks));
+                }
+                if (order != null) queue.sort(order);
+                for (STJob job : queue) {
+                    scheduler.submit(job, sinks.get(job));
+                }
+                int index = inputFiles.length;
+                for (String archive : archives) {
+                    index = readArchive(archive, index, shard, scheduler, segmenter, sink, null);
+                }
+            } else {
+                if (order != null) files.sort(order);
+                try (STLeaseQueue queue = new STLeaseQueue(new File(queueDirectory),
+                        (long) (configInstance.getDouble(STConfigurationDefault.CLI_QUEUE_LEASE) * 1000))) {
+                    submitClaimed(files, queue, scheduler, segmenter, queue.wrap(sink));
+                    int index = inputFiles.length;
+                    for (String archive : archives) {
+                        index = readArchive(archive, index, shard, scheduler, segmenter, sink, queue);
+                    }
+                    // leases are renewed until the last claimed file is done, the watch still follows
+                    scheduler.awaitIdle();
+                }
+            }
+            String watchDirectory = configInstance.getString(STConfigurationDefault.CLI_WATCH);
+            if (!watchDirectory.isEmpty()) {
+                watch(new File(watchDirectory), scheduler, segmenter, sink);
+            }
+            scheduler.awaitCompletion();
+            sink.close();
+            if (capture != null) capture.close();
+            report.write(outputDir);
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jStcFileWriteError"), e);
+            classLogger.error(stringsCli.getString("log4jStcFileWriteError"));
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_WRITE_ERROR);
+            System.exit(STExitCode.FILE_WRITE_ERROR.getId());
+        } catch (InterruptedException e) {
+            classLogger.debug(stringsCli.getString("log4jStcSocketCloseException"), e);
+            classLogger.error(stringsCli.getString("log4jStcSocketCloseException"));
+            STRunReport.getInstance().recordFailure(STExitCode.CONNECTION_ERROR);
+            System.exit(STExitCode.CONNECTION_ERROR.getId());
+        } catch (Throwable t) {
+            classLogger.debug(stringsCli.getString("log4jStcInternalError"), t);
+            classLogger.error(stringsCli.getString("log4jStcInternalError"));
+            STRunReport.getInstance().recordFailure(STExitCode.INTERNAL_ERROR);
+            System.exit(STExitCode.INTERNAL_ERROR.getId());
+        } finally {
             try {
-                client.start();
-                ClientUpgradeRequest request = new ClientUpgradeRequest();
-                client.connect(socket, buildConnectionString(), request);
-
-                // wait for closed socket connection.
-                socket.awaitClose(5, TimeUnit.SECONDS);
-            } catch (IOException i) {
-                classLogger.debug(stringsCli.getString("log4jStcSocketConnectError"), i);
-                classLogger.error(stringsCli.getString("log4jStcSocketConnectError"));
-                System.exit(STExitCode.CONNECTION_ERROR.getId());
-            } catch (InterruptedException e) {
-                classLogger.debug(stringsCli.getString("log4jStcSocketCloseException"), e);
-                classLogger.error(stringsCli.getString("log4jStcSocketCloseException"));
-                System.exit(STExitCode.CONNECTION_ERROR.getId());
-            } catch (Throwable t) {
-                classLogger.debug(stringsCli.getString("log4jStcInternalError"), t);
+                router.stop();
+                if (replayServer != null) replayServer.stop();
+            } catch (Exception e) {
+                classLogger.debug(stringsCli.getString("log4jStcInternalError"), e);
                 classLogger.error(stringsCli.getString("log4jStcInternalError"));
+                STRunReport.getInstance().recordFailure(STExitCode.INTERNAL_ERROR);
                 System.exit(STExitCode.INTERNAL_ERROR.getId());
-            } finally {
+            }
+        }
+    }
+
+    // splits a file into the jobs to submit for it and records the sink each job reports to
+    private List<STJob> plan(STJob file, STSegmenter segmenter, STOutputSink sink, Map<STJob, STOutputSink> sinks) {
+        double segmentSeconds = configInstance.getDouble(STConfigurationDefault.CLI_SEGMENT_SECONDS);
+        List<STJob> segments = segmentSeconds > 0 ? split(segmenter, file) : Collections.singletonList(file);
+        if (segments.size() == 1 && !segments.get(0).isSegment()) {
+            // streamed results go out as they arrive, everything else collects all utterances of the session first
+            boolean streaming = STValidate.OutputSink.STDOUT.getOptionValue().equals(configInstance.getString(STConfigurationDefault.CLI_OUTPUT_SINK));
+            sinks.put(file, streaming ? sink : new STSegmentCollector(file, 1, sink));
+            return Collections.singletonList(file);
+        }
+        classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugSegments"), file.getFile().getAbsolutePath(), segments.size()));
+        STSegmentCollector collector = new STSegmentCollector(file, segments.size(), sink);
+        for (STJob segment : segments) {
+            sinks.put(segment, collector);
+        }
+        return segments;
+    }
+
+    /*
+     * Files are claimed one at a time once a worker is free, so the processes sharing the queue directory take on work at
+     * the pace they get through it. Files leased to other processes are looked at again until they are done, which takes
+     * over the files of crashed processes once their leases expire.
+     */
+    private void submitClaimed(List<STJob> files, STLeaseQueue queue, STScheduler scheduler, STSegmenter segmenter,
+                               STOutputSink sink) throws InterruptedException {
+        List<STJob> open = new ArrayList<>(files);
+        while (!open.isEmpty()) {
+            for (Iterator<STJob> it = open.iterator(); it.hasNext(); ) {
+                STJob file = it.next();
+                scheduler.awaitCapacity();
+                STLeaseQueue.Claim claim;
+                try {
+                    claim = queue.claim(file);
+                } catch (IOException e) {
+                    classLogger.debug(stringsCli.getString("log4jStcQueueError") + file, e);
+                    classLogger.error(stringsCli.getString("log4jStcQueueError") + file);
+                    STRunReport.getInstance().recordFailure(STExitCode.FILE_WRITE_ERROR);
+                    System.exit(STExitCode.FILE_WRITE_ERROR.getId());
+                    return;
+                }
+                if (claim == STLeaseQueue.Claim.BUSY) continue;
+                it.remove();
+                if (claim == STLeaseQueue.Claim.CLAIMED) {
+                    Map<STJob, STOutputSink> sinks = new HashMap<>();
+                    for (STJob job : plan(file, segmenter, sink, sinks)) {
+                        scheduler.submit(job, sinks.get(job));
+                    }
+                }
+            }
+            if (!open.isEmpty()) {
+                classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugQueueWaiting"), open.size()));
+                Thread.sleep(queue.getPollMillis());
+            }
+        }
+    }
+
+    /*
+     * The archive is read front to back and the next entry only once a session is free, so no more entries are held in
+     * memory than there are sessions. Entries are sharded like files, numbered on from the files given before them.
+     * With a queue, entries are claimed like files, and the archive is read again for the entries leased to other
+     * processes until they are done.
+     */
+    private int readArchive(String input, int index, String[] shard, STScheduler scheduler, STSegmenter segmenter,
+                            STOutputSink sink, STLeaseQueue queue) throws InterruptedException {
+        Set<String> open = null;
+        while (true) {
+            Set<String> busy = new HashSet<>();
+            int end = readArchive(input, index, shard, scheduler, segmenter, sink, queue, open, busy);
+            if (busy.isEmpty()) return end;
+            classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugQueueWaiting"), busy.size()));
+            Thread.sleep(queue.getPollMillis());
+            open = busy;
+        }
+    }
+
+    // reads the entries in open, or all entries if null, and collects those leased to other processes in busy
+    private int readArchive(String input, int index, String[] shard, STScheduler scheduler, STSegmenter segmenter,
+                            STOutputSink sink, STLeaseQueue queue, Set<String> open, Set<String> busy)
+            throws InterruptedException {
+        boolean probeHeaders = configInstance.getString(STConfigurationDefault.AUDIO_RAW_FORMAT).isEmpty();
+        try (STArchiveReader reader = new STArchiveReader(input, !probeHeaders)) {
+            while (true) {
+                scheduler.awaitCapacity();
+                STJob entry = reader.next();
+                if (entry == null) return index;
+                int position = index++;
+                if (shard.length > 0 && position % Integer.parseInt(shard[1]) != Integer.parseInt(shard[0])) continue;
+                if (open != null && !open.contains(entry.getFile().getPath())) continue;
+                STWaveHeader header;
                 try {
-                    client.stop();
-                } catch (Exception e) {
-                    classLogger.debug(stringsCli.getString("log4jStcInternalError"), e);
-                    classLogger.error(stringsCli.getString("log4jStcInternalError"));
-                    System.exit(STExitCode.INTERNAL_ERROR.getId());
+                    header = STValidate.validateEntry(entry, probeHeaders);
+                } catch (STValidationException e) {
+                    // like a watched file, a bad entry must not stop the rest of the archive
+                    classLogger.warn(stringsCli.getString("log4jStcWarnArchiveEntrySkipped") + e.getOptionOrParameter());
+                    continue;
+                }
+                STOutputSink entrySink = sink;
+                if (queue != null) {
+                    STLeaseQueue.Claim claim;
+                    try {
+                        claim = queue.claim(entry);
+                    } catch (IOException e) {
+                        classLogger.debug(stringsCli.getString("log4jStcQueueError") + entry, e);
+                        classLogger.error(stringsCli.getString("log4jStcQueueError") + entry);
+                        STRunReport.getInstance().recordFailure(STExitCode.FILE_WRITE_ERROR);
+                        System.exit(STExitCode.FILE_WRITE_ERROR.getId());
+                        return index;
+                    }
+                    if (claim == STLeaseQueue.Claim.BUSY) busy.add(entry.getFile().getPath());
+                    if (claim != STLeaseQueue.Claim.CLAIMED) continue;
+                    entrySink = queue.wrap(sink);
+                }
+                classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugArchiveEntry"),
+                        entry, String.valueOf(entry.getSize())));
+                Map<STJob, STOutputSink> sinks = new HashMap<>();
+                for (STJob job : plan(entry.withHeader(header), segmenter, entrySink, sinks)) {
+                    scheduler.submit(job, sinks.get(job));
                 }
             }
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jStcArchiveError") + input, e);
+            classLogger.error(stringsCli.getString("log4jStcArchiveError") + input);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+            return index; // never reached, got to satisfy the compiler
+        }
+    }
+
+    /*
+     * Runs until the watched directory is removed or the process is interrupted. New files go straight to the scheduler,
+     * whose session pools keep pre-warmed sessions open in the meantime.
+     */
+    private void watch(File directory, STScheduler scheduler, STSegmenter segmenter, STOutputSink sink) throws InterruptedException {
+        String done = configInstance.getString(STConfigurationDefault.CLI_WATCH_DONE);
+        boolean probeHeaders = configInstance.getString(STConfigurationDefault.AUDIO_RAW_FORMAT).isEmpty();
+        STOutputSink watchSink = STWatcher.moveWhenDone(sink, done.isEmpty() ? null : new File(done));
+        STWatcher watcher;
+        try {
+            watcher = new STWatcher(directory, (long) (configInstance.getDouble(STConfigurationDefault.CLI_WATCH_SETTLE) * 1000), file -> {
+                STWaveHeader header;
+                try {
+                    header = STValidate.validateFile(file, probeHeaders);
+                } catch (STValidationException e) {
+                    // a single bad recording must not stop the watch
+                    classLogger.warn(stringsCli.getString("log4jStcWarnWatchedFileSkipped") + e.getOptionOrParameter());
+                    return;
+                }
+                Map<STJob, STOutputSink> sinks = new HashMap<>();
+                for (STJob job : plan(new STJob(file, header), segmenter, watchSink, sinks)) {
+                    scheduler.submit(job, sinks.get(job));
+                }
+            });
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jStcWatchError") + directory, e);
+            classLogger.error(stringsCli.getString("log4jStcWatchError") + directory);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+            return;
+        }
+        classLogger.info(MessageFormat.format(stringsCli.getString("log4jStcInfoWatching"), directory));
+        watcher.start();
+        watcher.await();
+    }
+
+    private STCapture createCapture() {
+        String file = configInstance.getString(STConfigurationDefault.CLI_CAPTURE);
+        if (file.isEmpty()) return null;
+        try {
+            return new STCapture(new File(file));
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jStcCaptureError") + file, e);
+            classLogger.error(stringsCli.getString("log4jStcCaptureError") + file);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_WRITE_ERROR);
+            System.exit(STExitCode.FILE_WRITE_ERROR.getId());
+            return null; // never reached, got to satisfy the compiler
+        }
+    }
+
+    private STReplayServer createReplayServer() {
+        String file = configInstance.getString(STConfigurationDefault.CLI_REPLAY);
+        if (file.isEmpty()) return null;
+        try {
+            STReplayServer server = new STReplayServer(new File(file), configInstance.getDouble(STConfigurationDefault.CLI_REPLAY_SPEED));
+            server.start();
+            classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugReplaying"), file, server.getEndpoint()));
+            return server;
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jStcReplayError") + file, e);
+            classLogger.error(stringsCli.getString("log4jStcReplayError") + file);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+            return null; // never reached, got to satisfy the compiler
+        }
+    }
+
+    private STOutputSink createOutputSink() {
+        STOutputSink sink;
+        if (STValidate.OutputSink.STDOUT.getOptionValue().equals(configInstance.getString(STConfigurationDefault.CLI_OUTPUT_SINK))) {
+            sink = new STStdoutOutputSink();
+        } else if (STValidate.OutputSink.PACK.getOptionValue().equals(configInstance.getString(STConfigurationDefault.CLI_OUTPUT_SINK))) {
+            sink = new STPackOutputSink();
+        } else {
+            sink = new STFileOutputSink();
+        }
+        String index = configInstance.getString(STConfigurationDefault.CLI_INDEX);
+        return index.isEmpty() ? sink : new STIndexingSink(sink, new STTranscriptIndex(new File(index)));
+    }
+
+    private List<STJob> split(STSegmenter segmenter, STJob job) {
+        try {
+            return segmenter.split(job);
+        } catch (IOException | IllegalArgumentException e) {
+            classLogger.debug(stringsCli.getString("log4jStcFileReadError") + job, e);
+            classLogger.error(stringsCli.getString("log4jStcFileReadError") + job);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+            return null; // never reached, got to satisfy the compiler
+        }
+    }
+
+    // without configured routes, the single configured key and endpoint form the only route
+    private List<STRoute> createRoutes() {
+        String endpoint = configInstance.getString(STConfigurationDefault.API_ENDPOINT);
+        String key = configInstance.getString(STConfigurationDefault.API_KEY);
+        List<STRoute> routes = new ArrayList<>();
+        for (String declaration : StringUtils.split(configInstance.getString(STConfigurationDefault.API_ROUTES), ';')) {
+            routes.add(STRoute.parse(declaration, endpoint, key));
+        }
+        if (routes.isEmpty()) {
+            routes.add(new STRoute(endpoint, key, 1, 0, 0, 0));
         }
+        return routes;
     }
 
-    private URI buildConnectionString() {
+    private URI buildConnectionString(STRoute route) {
         try {
             StringBuilder uriBuilder = new StringBuilder();
-            uriBuilder.append(configInstance.getConfiguration().getString(STConfigurationDefault.API_ENDPOINT.getKey()));
+            uriBuilder.append(route.getEndpoint());
             uriBuilder.append(configInstance.getConfiguration().getString(STConfigurationDefault.API_PATH.getKey()));
             uriBuilder.append("?");
             uriBuilder.append(configInstance.getConfiguration().getString(STConfigurationDefault.API_VERSION.getKey()));
@@ -276,20 +916,22 @@ public class STCli implements Runnable {
                 uriBuilder.append(URLEncoder.encode(configInstance.getConfiguration().getString(STConfigurationDefault.API_PROFANITY_MARKER.getKey()), "UTF-8"));
             }
 
-            if (!configInstance.getConfiguration().getString(STConfigurationDefault.API_KEY.getKey()).isEmpty()) {
+            if (!route.getKey().isEmpty()) {
                 uriBuilder.append("&subscription-key=");
-                uriBuilder.append(URLEncoder.encode(configInstance.getConfiguration().getString(STConfigurationDefault.API_KEY.getKey()), "UTF-8"));
+                uriBuilder.append(URLEncoder.encode(route.getKey(), "UTF-8"));
             }
 
             return new URI(uriBuilder.toString());
         } catch (URISyntaxException e) {
             classLogger.debug(stringsCli.getString("log4jStcInternalError"), e);
             classLogger.error(stringsCli.getString("log4jStcInternalError"));
+            STRunReport.getInstance().recordFailure(STExitCode.INTERNAL_ERROR);
             System.exit(STExitCode.INTERNAL_ERROR.getId());
             return null; // never reached, got to satisfy the compiler
         } catch (UnsupportedEncodingException u) {
             classLogger.debug(stringsCli.getString("log4jStcInternalError"), u);
             classLogger.error(stringsCli.getString("log4jStcInternalError"));
+            STRunReport.getInstance().recordFailure(STExitCode.INTERNAL_ERROR);
             System.exit(STExitCode.INTERNAL_ERROR.getId());
             return null; // never reached, got to satisfy the compiler
         }
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * Limits the number of sessions running at the same time and tunes that limit to the goodput of the run, the seconds
+ * of audio translated per second by sessions that closed cleanly.
+ *
+ * The limit is hill-climbed between a floor and a ceiling, one window of completed sessions at a time. While goodput
+ * grows the limit keeps moving the same way, when it drops the direction turns, and when it stays the same the limit
+ * goes down, as the additional sessions bought nothing. A window in which sessions failed, or in which the time a
+ * session takes beyond the paced upload of its audio grew well above the best seen, points to throttling or queueing
+ * at the service and moves the limit down right away, by a quarter on failures. Windows in which fewer jobs were waiting
+ * than the limit allowed say nothing about the limit and leave it alone.
+ */
+public class STConcurrencyController {
+    static final int MIN_SESSIONS = 3;
+    // goodput changes within this fraction are noise
+    static final double TOLERANCE = 0.05;
+    static final double MAX_ERROR_RATE = 0.1;
+    static final double BACKOFF = 0.75;
+    static final double MAX_LATENCY_RISE = 2;
+    static final long MIN_LATENCY_RISE_MILLIS = 1000;
+
+    private final int floor;
+    private final int ceiling;
+    private int limit;
+    private int active = 0;
+    private int direction = 1;
+    private double goodput = -1;
+    private double lastGoodput = -1;
+    private double bestLatency = -1;
+
+    private long windowStart;
+    private int sessions = 0;
+    private int failures = 0;
+    private int saturated = 0;
+    private double audioSeconds = 0;
+    private long latencyMillis = 0;
+
+    /**
+     * @param initial  limit to start with, clamped to the floor and the ceiling
+     * @param floor    lowest limit
+     * @param ceiling  highest limit
+     * @param nowNanos start of the first window, as of System.nanoTime()
+     */
+    public STConcurrencyController(int initial, int floor, int ceiling, long nowNanos) {
+        this.floor = Math.max(1, floor);
+        this.ceiling = Math.max(this.floor, ceiling);
+        this.limit = Math.min(this.ceiling, Math.max(this.floor, initial));
+        this.windowStart = nowNanos;
+    }
+
+    /**
+     * Waits until fewer sessions than the limit are running and counts the caller as running.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (active >= limit) {
+            wait();
+        }
+        active++;
+    }
+
+    public synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * @param audioSeconds  duration of the audio the session translated
+     * @param sessionMillis time the session took from the first chunk sent until it closed, the paced upload of the
+     *                      audio included
+     * @param failed        true if the session did not close cleanly
+     * @param backlog       true if as many jobs as the limit allows were queued or running when the session ended
+     */
+    public synchronized void record(double audioSeconds, long sessionMillis, boolean failed, boolean backlog) {
+        sessions++;
+        if (backlog) saturated++;
+        if (failed) {
+            failures++;
+        } else {
+            this.audioSeconds += audioSeconds;
+            // the upload takes longer than the audio lasts, what follows it does not depend on the length of the file
+            long chunks = (long) Math.ceil(audioSeconds / STAudioPipeline.CHUNK_SECONDS);
+            long pacedMillis = Math.max(0, chunks - 1) * SpeechClientSocket.CHUNK_DELAY_MILLIS;
+            this.latencyMillis += Math.max(0, sessionMillis - pacedMillis);
+        }
+    }
+
+    /**
+     * Ends the current window if enough sessions completed in it and moves the limit by what the window showed.
+     *
+     * @param nowNanos current time, as of System.nanoTime()
+     * @return the limit for the next window
+     */
+    public synchronized int adjust(long nowNanos) {
+        if (sessions < MIN_SESSIONS || nowNanos <= windowStart) return limit;
+        goodput = audioSeconds / ((nowNanos - windowStart) / 1e9);
+        int step = Math.max(1, limit / 8);
+        if (failures > MAX_ERROR_RATE * sessions) {
+            limit = Math.min(limit - 1, (int) (limit * BACKOFF));
+            // the goodput seen before the failures is no baseline for the smaller limit
+            lastGoodput = -1;
+            direction = 1;
+        } else if (2 * saturated >= sessions) {
+            double latency = (double) latencyMillis / (sessions - failures);
+            if (lastGoodput < 0 || goodput > lastGoodput * (1 + TOLERANCE)) {
+                // keep going
+            } else if (goodput < lastGoodput * (1 - TOLERANCE)) {
+                direction = -direction;
+            } else {
+                direction = -1;
+            }
+            // slightly stale so that a slower network does not read as overload forever
+            bestLatency = bestLatency < 0 ? latency : Math.min(latency, bestLatency * (1 + TOLERANCE));
+            if (latency > Math.max(MAX_LATENCY_RISE * bestLatency, bestLatency + MIN_LATENCY_RISE_MILLIS)) direction = -1;
+            lastGoodput = goodput;
+            limit += direction * step;
+        } else {
+            lastGoodput = -1;
+        }
+        limit = Math.min(ceiling, Math.max(floor, limit));
+        if (limit == floor) direction = 1;
+        if (limit == ceiling) direction = -1;
+        windowStart = nowNanos;
+        sessions = 0;
+        failures = 0;
+        saturated = 0;
+        audioSeconds = 0;
+        latencyMillis = 0;
+        notifyAll();
+        return limit;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return goodput of the last window, in seconds of audio per second, -1 if none ended yet
+     */
+    public synchronized double getGoodput() {
+        return goodput;
+    }
+}
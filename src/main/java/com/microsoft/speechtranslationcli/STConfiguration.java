@@ -141,6 +141,32 @@ public class STConfiguration {
         return configuration;
     }
 
+    /**
+     * Settings files written by older versions do not contain newer keys, so these fall back to the default value.
+     *
+     * @param d the setting to look up
+     * @return the configured value or its default
+     */
+    public String getString(STConfigurationDefault d) {
+        return configuration.getString(d.getKey(), d.getValue());
+    }
+
+    public int getInt(STConfigurationDefault d) {
+        return configuration.getInt(d.getKey(), Integer.parseInt(d.getValue()));
+    }
+
+    public long getLong(STConfigurationDefault d) {
+        return configuration.getLong(d.getKey(), Long.parseLong(d.getValue()));
+    }
+
+    public double getDouble(STConfigurationDefault d) {
+        return configuration.getDouble(d.getKey(), Double.parseDouble(d.getValue()));
+    }
+
+    public boolean getBoolean(STConfigurationDefault d) {
+        return configuration.getBoolean(d.getKey(), Boolean.parseBoolean(d.getValue()));
+    }
+
     /**
      * @return the currentWorkingDirectory
      */
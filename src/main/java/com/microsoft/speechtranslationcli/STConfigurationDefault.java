@@ -41,14 +41,59 @@ public enum STConfigurationDefault {
     API_AUDIO("azure.speechtranslation.api.audio", "audio/wav"),
     API_VOICE("azure.speechtranslation.api.voice", ""),
     API_KEY("azure.speechtranslation.api.key", ""),
+    API_ROUTES("azure.speechtranslation.api.routes", ""),
     WEBSOCKET_TIMEOUT("settings.websocket.upload.timeout", "1000"),
     WEBSOCKET_MAX_BINARY_MSG("settings.websocket.maxbinary", "262144"), // 64 * 4096
     WEBSOCKET_MAX_TEXT_MSG("settings.websocket.maxtext", "65536"), // 64 * 1024
     WEBSOCKET_BUFFER("settings.websocket.buffer", "65536"),
     WEBSOCKET_MAX_IDLE("settings.websocket.maxidletime", "600"),
+    WEBSOCKET_CONNECT_TIMEOUT("settings.websocket.connect.timeout", "10000"),
+    WEBSOCKET_TLS_SESSION_CACHE("settings.websocket.tls.sessioncache", "1024"),
+    WEBSOCKET_TLS_SESSION_TTL("settings.websocket.tls.sessionttl", "86400"),
+    CLI_TRANSPORT("settings.cli.transport", "jetty"),
+    CLI_PREWARM("settings.cli.prewarm", "1"),
+    CLI_PARALLEL("settings.cli.parallel", "1"),
+    CLI_ADAPTIVE("settings.cli.adaptive", "false"),
+    CLI_PARALLEL_MIN("settings.cli.parallel.min", "1"),
+    CLI_PARALLEL_MAX("settings.cli.parallel.max", "16"),
+    CLI_ADAPTIVE_WINDOW("settings.cli.adaptive.window", "10"),
+    CLI_SCHEDULE("settings.cli.schedule", "input"),
+    CLI_SHARD("settings.cli.shard", ""),
+    CLI_QUEUE("settings.cli.queue", ""),
+    CLI_QUEUE_LEASE("settings.cli.queue.lease", "60"),
+    CLI_WATCH("settings.cli.watch", ""),
+    CLI_WATCH_SETTLE("settings.cli.watch.settle", "0.5"),
+    CLI_WATCH_DONE("settings.cli.watch.done", ""),
+    CLI_SEGMENT_SECONDS("settings.cli.segment.seconds", "0"),
+    QUOTA_CONNECTIONS("settings.quota.connections", "0"),
+    QUOTA_CONNECTS("settings.quota.connects", "0"),
+    QUOTA_AUDIO_SECONDS("settings.quota.audioseconds", "0"),
+    QUOTA_INTERVAL("settings.quota.interval", "60"),
+    CLI_MEMORY_BUDGET("settings.cli.memory.budget", "268435456"),
+    CLI_PREFETCH("settings.cli.prefetch", "2"),
+    CLI_PREFETCH_BUDGET("settings.cli.prefetch.budget", "67108864"),
+    CLI_PREFETCH_BYTES("settings.cli.prefetch.bytes", "4194304"),
+    CLI_CAPTURE("settings.cli.capture", ""),
+    CLI_REPLAY("settings.cli.replay", ""),
+    CLI_REPLAY_SPEED("settings.cli.replay.speed", "1"),
+    CLI_HEDGE("settings.cli.hedge", "false"),
+    CLI_HEDGE_BUDGET("settings.cli.hedge.budget", "0.05"),
+    CLI_HEDGE_PERCENTILE("settings.cli.hedge.percentile", "95"),
+    AUDIO_NORMALIZE("settings.audio.normalize", "false"),
+    AUDIO_SAMPLE_RATE("settings.audio.samplerate", "16000"),
+    AUDIO_BITS("settings.audio.bits", "16"),
+    AUDIO_RAW_FORMAT("settings.audio.rawformat", ""),
+    AUDIO_TRIM_SILENCE("settings.audio.trimsilence", "false"),
+    AUDIO_MAX_SILENCE("settings.audio.maxsilence", "0.5"),
+    AUDIO_VAD_THRESHOLD("settings.audio.vad.threshold", "-45"),
     CLI_POSTFIX("settings.cli.postfix", ".translation"),
     CLI_OUTPUT_DIR("settings.cli.outputdir", ""),
-    CLI_OMIT_TEXT("settings.cli.omittext", "");
+    CLI_OMIT_TEXT("settings.cli.omittext", ""),
+    CLI_OUTPUT_SINK("settings.cli.outputsink", "file"),
+    CLI_AUDIO_FIFO("settings.cli.audiofifo", ""),
+    CLI_INDEX("settings.cli.index", ""),
+    CLI_PACK_SIZE("settings.cli.pack.size", "1073741824"),
+    CLI_PACK_GZIP("settings.cli.pack.gzip", "false");
 
     private final String key;
     private final String value;
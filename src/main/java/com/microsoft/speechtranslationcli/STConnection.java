@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An upgraded websocket connection as seen by a SpeechClientSocket, independent of the transport it runs on.
+ */
+public interface STConnection {
+    int NORMAL = 1000;
+
+    /**
+     * Outcome of an asynchronous write.
+     */
+    interface Callback {
+        void writeFailed(Throwable x);
+
+        void writeSuccess();
+    }
+
+    /**
+     * @param data     payload of a single binary message, not modified
+     * @param callback told once the message was written or failed
+     */
+    void sendBinary(ByteBuffer data, Callback callback);
+
+    void sendPing() throws IOException;
+
+    /**
+     * Starts the closing handshake. The socket is told through onClose once it completed.
+     *
+     * @param statusCode websocket status code
+     * @param reason     short reason sent along
+     */
+    void close(int statusCode, String reason);
+
+    boolean isOpen();
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.commons.io.IOUtils.copy;
+import static org.apache.commons.io.IOUtils.read;
+
+/**
+ * Default sink: writes &lt;name&gt;&lt;postfix&gt;.json and &lt;name&gt;&lt;postfix&gt;.&lt;ext&gt; into the output directory.
+ *
+ * Text-to-speech responses of the same job are appended into one audio file. WAV responses are joined under a single
+ * header, which is written with the final length once the job completes.
+ */
+public class STFileOutputSink implements STOutputSink {
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+
+    private final Set<STJob> audioJobs = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<STJob, STAudioFormat> waveFormats = new ConcurrentHashMap<>();
+
+    @Override
+    public void writeText(STJob job, String message) throws IOException {
+        FileUtils.writeStringToFile(outputFile(job, "json"), message, "UTF8");
+    }
+
+    // TODO change file type extension based on format
+    @Override
+    public void writeAudio(STJob job, InputStream audio) throws IOException {
+        boolean first = audioJobs.add(job);
+        InputStream in = new BufferedInputStream(audio);
+        STAudioFormat format = null;
+        if (isWave(in)) {
+            // the service sends the data chunk last, the rest of the response after its header is sample data
+            format = STWaveHeader.read(in, Long.MAX_VALUE).getFormat();
+        }
+        try (OutputStream outputStream = new FileOutputStream(outputFile(job, FilenameUtils.getExtension(job.getFile().getName())), !first)) {
+            if (first && format != null) {
+                waveFormats.put(job, format);
+                outputStream.write(STWaveHeader.build(format, 0));
+            }
+            copy(in, outputStream);
+        }
+    }
+
+    @Override
+    public void complete(STJob job) throws IOException {
+        audioJobs.remove(job);
+        STAudioFormat format = waveFormats.remove(job);
+        if (format == null) return;
+        try (RandomAccessFile file = new RandomAccessFile(outputFile(job, FilenameUtils.getExtension(job.getFile().getName())), "rw")) {
+            file.write(STWaveHeader.build(format, file.length() - STWaveHeader.CANONICAL_HEADER_SIZE));
+        }
+    }
+
+    public File outputFile(STJob job, String extension) {
+        return new File(configInstance.getConfiguration().getString(STConfigurationDefault.CLI_OUTPUT_DIR.getKey()),
+                job.getName() + configInstance.getConfiguration().getString(STConfigurationDefault.CLI_POSTFIX.getKey())
+                        + "." + extension);
+    }
+
+    private static boolean isWave(InputStream in) throws IOException {
+        byte[] magic = new byte[4];
+        in.mark(magic.length);
+        int read = read(in, magic);
+        in.reset();
+        return read == magic.length && "RIFF".equals(new String(magic, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.File;
+
+/**
+ * Emits JDK Flight Recorder events for connects, uploads, chunks, the end-of-stream silence, received messages and
+ * closes, e.g. for a run started with -XX:StartFlightRecording=filename=run.jfr and inspected in JDK Mission Control.
+ *
+ * Timed events are started with a begin method, which returns a handle that is passed to the matching end method. On a
+ * JVM without the Flight Recorder API every method does nothing and handles are null. Without a running recording the
+ * events are discarded at commit.
+ */
+public final class STFlightRecorder {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private STFlightRecorder() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, STFlightRecorder.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static Object beginConnect() {
+        return AVAILABLE ? STJfrEvents.beginConnect() : null;
+    }
+
+    public static void endConnect(Object handle, String endpoint, boolean upgraded) {
+        if (handle != null) STJfrEvents.endConnect(handle, endpoint, upgraded);
+    }
+
+    public static Object beginUpload() {
+        return AVAILABLE ? STJfrEvents.beginUpload() : null;
+    }
+
+    public static void endUpload(Object handle, File file, int chunks, long bytes) {
+        if (handle != null) STJfrEvents.endUpload(handle, file.getAbsolutePath(), chunks, bytes);
+    }
+
+    public static Object beginChunk() {
+        return AVAILABLE ? STJfrEvents.beginChunk() : null;
+    }
+
+    public static void endChunk(Object handle, File file, int chunk, int bytes, boolean success) {
+        if (handle != null) STJfrEvents.endChunk(handle, file.getAbsolutePath(), chunk, bytes, success);
+    }
+
+    public static Object beginSilence() {
+        return AVAILABLE ? STJfrEvents.beginSilence() : null;
+    }
+
+    public static void endSilence(Object handle, File file, int bytes, boolean success) {
+        if (handle != null) STJfrEvents.endSilence(handle, file != null ? file.getAbsolutePath() : null, bytes, success);
+    }
+
+    public static Object beginMessage() {
+        return AVAILABLE ? STJfrEvents.beginMessage() : null;
+    }
+
+    public static void endMessage(Object handle, STJob job, String kind, long bytes) {
+        if (handle != null) STJfrEvents.endMessage(handle, job != null ? job.toString() : null, kind, bytes);
+    }
+
+    public static void close(File file, int statusCode, String reason) {
+        if (AVAILABLE) STJfrEvents.close(file != null ? file.getAbsolutePath() : null, statusCode, reason);
+    }
+}
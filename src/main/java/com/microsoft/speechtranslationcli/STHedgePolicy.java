@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * Decides when a session counts as stalled and whether another hedged session may be started for it.
+ *
+ * After the upload, sessions normally close once the last results are in. The time this takes is learned per run;
+ * a session that stayed quiet, with neither a result nor the close arriving, for longer than the configured
+ * percentile of that time is stalled. Until enough sessions completed, a fixed threshold applies. Hedged sessions are
+ * extra load on the service, so at most the budget fraction of all sessions is hedged, plus one to get started.
+ */
+public class STHedgePolicy {
+    private static final int MIN_SAMPLES = 20;
+    private static final long DEFAULT_STALL_MILLIS = 3000;
+    private static final long MIN_STALL_MILLIS = 250;
+
+    private final STHistogram tails = new STHistogram();
+    private final double percentile;
+    private final double budget;
+    private long sessions = 0;
+    private long hedges = 0;
+
+    /**
+     * @param percentile percentile of the learned tail durations beyond which a quiet session is stalled
+     * @param budget     fraction of sessions that may be hedged
+     */
+    public STHedgePolicy(double percentile, double budget) {
+        this.percentile = percentile;
+        this.budget = budget;
+    }
+
+    /**
+     * @return milliseconds without a result after the upload after which a session is stalled
+     */
+    public long getStallMillis() {
+        if (tails.getCount() < MIN_SAMPLES) return DEFAULT_STALL_MILLIS;
+        return Math.max(MIN_STALL_MILLIS, tails.getPercentile(percentile));
+    }
+
+    /**
+     * @param millis time from the end of the upload until a session that was not hedged closed
+     */
+    public void recordTail(long millis) {
+        tails.record(millis);
+    }
+
+    public synchronized void recordSession() {
+        sessions++;
+    }
+
+    /**
+     * @return true if the budget allows another hedged session, which is then counted against it
+     */
+    public synchronized boolean tryHedge() {
+        if (hedges + 1 > 1 + budget * sessions) return false;
+        hedges++;
+        return true;
+    }
+}
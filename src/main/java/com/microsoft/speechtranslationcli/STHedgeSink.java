@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sits between the sessions translating a job and its sink while the job may be hedged.
+ *
+ * Until a hedged session is started, results of the first session pass through as they arrive. Afterwards the
+ * results of both sessions are held back until one of them is declared the winner: its held back results are passed
+ * on and everything of the other session is dropped. When the hedged session wins, its results for the part of the
+ * recording the first session already delivered final results for are dropped too, so they are not written twice,
+ * along with the text-to-speech audio that followed them.
+ */
+public class STHedgeSink {
+    public static final int PRIMARY = 0;
+    public static final int HEDGE = 1;
+
+    private final STOutputSink target;
+    private final List<List<Write>> held = new ArrayList<>();
+    private boolean hedged = false;
+    private int winner = -1;
+    // end of the last final result of the first session passed on, in ticks of the job timeline
+    private long deliveredEnd = -1;
+    // last final result held back per attempt, the text-to-speech audio arriving next belongs to it
+    private final String[] heldFinal = new String[2];
+
+    private interface Write {
+        void to(STOutputSink sink) throws IOException;
+
+        default void discard() {
+        }
+    }
+
+    public STHedgeSink(STOutputSink target) {
+        this.target = target;
+        held.add(new ArrayList<>());
+        held.add(new ArrayList<>());
+    }
+
+    /**
+     * @param attempt PRIMARY or HEDGE
+     * @return the sink the session of the attempt writes to
+     */
+    public STOutputSink attempt(int attempt) {
+        return new STOutputSink() {
+            @Override
+            public void writeText(STJob job, String message) throws IOException {
+                STHedgeSink.this.writeText(attempt, job, message);
+            }
+
+            @Override
+            public void writeAudio(STJob job, InputStream audio) throws IOException {
+                STHedgeSink.this.writeAudio(attempt, job, audio);
+            }
+        };
+    }
+
+    /**
+     * Starts holding back results, called before the hedged session is started.
+     */
+    public synchronized void hedge() {
+        hedged = true;
+    }
+
+    /**
+     * Passes on the held back results of the winning attempt and drops those of the other one.
+     *
+     * @param attempt PRIMARY or HEDGE
+     * @throws IOException if the results cannot be written
+     */
+    public synchronized void win(int attempt) throws IOException {
+        if (winner >= 0) return;
+        winner = attempt;
+        try {
+            for (Write write : held.get(attempt)) {
+                write.to(target);
+            }
+        } finally {
+            for (List<Write> writes : held) {
+                writes.forEach(Write::discard);
+                writes.clear();
+            }
+        }
+    }
+
+    private synchronized void writeText(int attempt, STJob job, String message) throws IOException {
+        if (winner >= 0 && winner != attempt) return;
+        if (winner == attempt || !hedged) {
+            if (attempt == PRIMARY) track(message);
+            target.writeText(job, message);
+            return;
+        }
+        if (STResultMessage.isFinal(message)) heldFinal[attempt] = message;
+        held.get(attempt).add(sink -> {
+            if (attempt == HEDGE && isDelivered(message)) return;
+            sink.writeText(job, message);
+        });
+    }
+
+    private synchronized void writeAudio(int attempt, STJob job, InputStream audio) throws IOException {
+        if (winner >= 0 && winner != attempt) return;
+        if (winner == attempt || !hedged) {
+            target.writeAudio(job, audio);
+            return;
+        }
+        File spool = File.createTempFile("speechtranslate-hedge-", ".audio");
+        spool.deleteOnExit();
+        FileUtils.copyInputStreamToFile(audio, spool);
+        String result = heldFinal[attempt];
+        held.get(attempt).add(new Write() {
+            @Override
+            public void to(STOutputSink sink) throws IOException {
+                // spoken translation of a result dropped as already delivered
+                if (attempt == HEDGE && result != null && isDelivered(result)) return;
+                try (InputStream in = new FileInputStream(spool)) {
+                    sink.writeAudio(job, in);
+                }
+            }
+
+            @Override
+            public void discard() {
+                FileUtils.deleteQuietly(spool);
+            }
+        });
+    }
+
+    private void track(String message) {
+        if (!STResultMessage.isFinal(message)) return;
+        long offset = STResultMessage.getLong(message, STResultMessage.FIELD_AUDIO_TIME_OFFSET);
+        long size = Math.max(0, STResultMessage.getLong(message, STResultMessage.FIELD_AUDIO_TIME_SIZE));
+        if (offset >= 0) deliveredEnd = Math.max(deliveredEnd, offset + size);
+    }
+
+    // results are matched by the middle of their audio, the two sessions may cut utterances slightly differently
+    private boolean isDelivered(String message) {
+        long offset = STResultMessage.getLong(message, STResultMessage.FIELD_AUDIO_TIME_OFFSET);
+        if (offset < 0 || deliveredEnd < 0) return false;
+        long size = Math.max(0, STResultMessage.getLong(message, STResultMessage.FIELD_AUDIO_TIME_SIZE));
+        return offset + size / 2 < deliveredEnd;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes results on to another sink and adds every final result to the transcript index on the way, so the index is
+ * up to date as soon as the results are written.
+ */
+public class STIndexingSink implements STOutputSink {
+    private final STOutputSink target;
+    private final STTranscriptIndex index;
+
+    public STIndexingSink(STOutputSink target, STTranscriptIndex index) {
+        this.target = target;
+        this.index = index;
+    }
+
+    @Override
+    public void writeText(STJob job, String message) throws IOException {
+        target.writeText(job, message);
+        for (String result : STResultMessage.split(message)) {
+            if (!STResultMessage.isFinal(result)) continue;
+            index.add(job.getFile().getAbsolutePath(),
+                    STResultMessage.getLong(result, STResultMessage.FIELD_AUDIO_TIME_OFFSET),
+                    STResultMessage.getLong(result, STResultMessage.FIELD_AUDIO_TIME_SIZE),
+                    STResultMessage.getString(result, STResultMessage.FIELD_RECOGNITION),
+                    STResultMessage.getString(result, STResultMessage.FIELD_TRANSLATION));
+        }
+    }
+
+    @Override
+    public void writeAudio(STJob job, InputStream audio) throws IOException {
+        target.writeAudio(job, audio);
+    }
+
+    @Override
+    public void complete(STJob job) throws IOException {
+        target.complete(job);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            target.close();
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.configuration2.Configuration;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.*;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * The default transport on the Jetty websocket client. All connections share a single WebSocketClient and therefore a
+ * single connection thread pool, and their TLS sessions come from the process-wide STTlsContext.
+ */
+public class STJettyTransport implements STTransport {
+    private final SslContextFactory ssl = new SslContextFactory() {
+        @Override
+        public SSLEngine newSSLEngine(String host, int port) {
+            SSLEngine engine = super.newSSLEngine(host, port);
+            STTlsContext.handshakeStarted(engine);
+            return engine;
+        }
+    };
+    private final HttpClient http = new HttpClient(ssl);
+    private final WebSocketClient client = new WebSocketClient(http);
+
+    public STJettyTransport() {
+        ssl.setEndpointIdentificationAlgorithm("HTTPS");
+        http.addBean(new SslHandshakeListener() {
+            @Override
+            public void handshakeSucceeded(Event event) {
+                STTlsContext.handshakeFinished(event.getSSLEngine());
+            }
+
+            @Override
+            public void handshakeFailed(Event event, Throwable failure) {
+                STTlsContext.handshakeFailed(event.getSSLEngine());
+            }
+        });
+    }
+
+    @Override
+    public void start() throws Exception {
+        ssl.setSslContext(STTlsContext.get());
+        http.start();
+        client.start();
+    }
+
+    @Override
+    public void connect(SpeechClientSocket socket, URI uri) throws IOException {
+        client.connect(new Endpoint(socket), uri, new ClientUpgradeRequest());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        client.stop();
+        http.stop();
+    }
+
+    /**
+     * Hands the Jetty events of one connection to its socket.
+     */
+    @WebSocket
+    public static class Endpoint {
+        private final STConfiguration configInstance = STConfiguration.getInstance();
+        private final SpeechClientSocket socket;
+
+        Endpoint(SpeechClientSocket socket) {
+            this.socket = socket;
+        }
+
+        @OnWebSocketConnect
+        public void onConnect(Session session) {
+            Configuration configuration = configInstance.getConfiguration();
+            session.getPolicy().setMaxBinaryMessageSize(configuration.getInt(STConfigurationDefault.WEBSOCKET_MAX_BINARY_MSG.getKey()));
+            session.getPolicy().setMaxTextMessageSize(configuration.getInt(STConfigurationDefault.WEBSOCKET_MAX_TEXT_MSG.getKey()));
+            session.getPolicy().setIdleTimeout(configuration.getInt(STConfigurationDefault.WEBSOCKET_MAX_IDLE.getKey()));
+            session.getPolicy().setInputBufferSize(configuration.getInt(STConfigurationDefault.WEBSOCKET_BUFFER.getKey()));
+            socket.onConnect(new Connection(session));
+        }
+
+        @OnWebSocketMessage
+        public void onMessage(Session session, InputStream stream) {
+            socket.onMessage(stream);
+        }
+
+        @OnWebSocketMessage
+        public void onMessage(String msg) {
+            socket.onMessage(msg);
+        }
+
+        @OnWebSocketError
+        public void onError(Session session, Throwable t) {
+            socket.onError(t);
+        }
+
+        @OnWebSocketClose
+        public void onClose(int statusCode, String reason) {
+            socket.onClose(statusCode, reason);
+        }
+    }
+
+    private static class Connection implements STConnection {
+        private final Session session;
+
+        Connection(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer data, Callback callback) {
+            session.getRemote().sendBytes(data, new WriteCallback() {
+                @Override
+                public void writeFailed(Throwable x) {
+                    callback.writeFailed(x);
+                }
+
+                @Override
+                public void writeSuccess() {
+                    callback.writeSuccess();
+                }
+            });
+        }
+
+        @Override
+        public void sendPing() throws IOException {
+            session.getRemote().sendPing(ByteBuffer.allocate(0));
+        }
+
+        @Override
+        public void close(int statusCode, String reason) {
+            session.close(statusCode, reason);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return session.isOpen();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * JDK Flight Recorder events of the session lifecycle. This is the only class referring to jdk.jfr, it is only loaded
+ * through STFlightRecorder and only on JVMs that ship the API (8u262 and later).
+ */
+final class STJfrEvents {
+    private static final String CATEGORY = "Speech Translation CLI";
+
+    private STJfrEvents() {
+    }
+
+    @Name("com.microsoft.speechtranslationcli.Connect")
+    @Label("Connect")
+    @Description("Connect and websocket upgrade of a session")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConnectEvent extends Event {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Upgraded")
+        boolean upgraded;
+    }
+
+    @Name("com.microsoft.speechtranslationcli.Upload")
+    @Label("Upload")
+    @Description("Upload of all chunks of a file or segment")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class UploadEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Chunks")
+        int chunks;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.microsoft.speechtranslationcli.Chunk")
+    @Label("Chunk Sent")
+    @Description("From handing a chunk to the websocket until its write completed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ChunkEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Chunk")
+        int chunk;
+
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.microsoft.speechtranslationcli.Silence")
+    @Label("Silence Sent")
+    @Description("From handing the end-of-stream silence to the websocket until its write completed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class SilenceEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.microsoft.speechtranslationcli.Message")
+    @Label("Message Received")
+    @Description("Writing a received text or audio message to the output sink")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class MessageEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.microsoft.speechtranslationcli.Close")
+    @Label("Close")
+    @Description("A session was closed")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class CloseEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Reason")
+        String reason;
+    }
+
+    static Object begin(Event event) {
+        event.begin();
+        return event;
+    }
+
+    static Object beginConnect() {
+        return begin(new ConnectEvent());
+    }
+
+    static void endConnect(Object handle, String endpoint, boolean upgraded) {
+        ConnectEvent event = (ConnectEvent) handle;
+        event.endpoint = endpoint;
+        event.upgraded = upgraded;
+        event.commit();
+    }
+
+    static Object beginUpload() {
+        return begin(new UploadEvent());
+    }
+
+    static void endUpload(Object handle, String file, int chunks, long bytes) {
+        UploadEvent event = (UploadEvent) handle;
+        event.file = file;
+        event.chunks = chunks;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    static Object beginChunk() {
+        return begin(new ChunkEvent());
+    }
+
+    static void endChunk(Object handle, String file, int chunk, int bytes, boolean success) {
+        ChunkEvent event = (ChunkEvent) handle;
+        event.file = file;
+        event.chunk = chunk;
+        event.bytes = bytes;
+        event.success = success;
+        event.commit();
+    }
+
+    static Object beginSilence() {
+        return begin(new SilenceEvent());
+    }
+
+    static void endSilence(Object handle, String file, int bytes, boolean success) {
+        SilenceEvent event = (SilenceEvent) handle;
+        event.file = file;
+        event.bytes = bytes;
+        event.success = success;
+        event.commit();
+    }
+
+    static Object beginMessage() {
+        return begin(new MessageEvent());
+    }
+
+    static void endMessage(Object handle, String file, String kind, long bytes) {
+        MessageEvent event = (MessageEvent) handle;
+        event.file = file;
+        event.kind = kind;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    static void close(String file, int statusCode, String reason) {
+        CloseEvent event = new CloseEvent();
+        if (event.isEnabled()) {
+            event.file = file;
+            event.statusCode = statusCode;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
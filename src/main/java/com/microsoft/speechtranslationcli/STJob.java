@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A unit of work for one session: a whole input file, or a segment of one when long recordings are split at pauses.
+ */
+public class STJob {
+    private final File file;
+    private final STJob parent;
+    private final int index;
+    private final long offset;
+    private final long length;
+    private final long startTicks;
+    private final STWaveHeader header;
+    private final byte[] content;
+
+    /**
+     * @param file the input file, translated as a whole
+     */
+    public STJob(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param file   the input file, translated as a whole
+     * @param header the WAV header probed during validation, null to parse it when the file is opened
+     */
+    public STJob(File file, STWaveHeader header) {
+        this(file, header, null);
+    }
+
+    /**
+     * @param file    name of the input, for an archive entry the archive path followed by !/ and the entry name
+     * @param header  the WAV header probed during validation, null to parse it when the input is opened
+     * @param content the bytes of the input when it was read from an archive, null to read the file
+     */
+    public STJob(File file, STWaveHeader header, byte[] content) {
+        this(file, header, content, null, 0, 0, -1, 0);
+    }
+
+    private STJob(File file, STWaveHeader header, byte[] content, STJob parent, int index, long offset, long length, long startTicks) {
+        this.file = file;
+        this.header = header;
+        this.content = content;
+        this.parent = parent;
+        this.index = index;
+        this.offset = offset;
+        this.length = length;
+        this.startTicks = startTicks;
+    }
+
+    /**
+     * @param index      position of the segment within the file
+     * @param offset     first byte of the segment, relative to the first sample of the file
+     * @param length     number of sample bytes in the segment
+     * @param startTicks start of the segment in the timeline of the file, in ticks of 100ns
+     * @return a job translating only the given range of this job's file
+     */
+    public STJob segment(int index, long offset, long length, long startTicks) {
+        return new STJob(file, header, content, this, index, offset, length, startTicks);
+    }
+
+    /**
+     * @param header the WAV header probed during validation
+     * @return this whole-input job with the given header
+     */
+    public STJob withHeader(STWaveHeader header) {
+        return new STJob(file, header, content);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if the input was read from an archive and is held in memory rather than read from its file
+     */
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    /**
+     * @return size of the whole input in bytes
+     */
+    public long getSize() {
+        return content != null ? content.length : file.length();
+    }
+
+    /**
+     * @return a stream positioned at the start of the whole input
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : new FileInputStream(file);
+    }
+
+    /**
+     * @return base name of the input, used to name output files
+     */
+    public String getName() {
+        return FilenameUtils.getBaseName(file.getName());
+    }
+
+    public boolean isSegment() {
+        return parent != null;
+    }
+
+    public STJob getParent() {
+        return parent;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of sample bytes to translate, -1 for all of them
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public long getStartTicks() {
+        return startTicks;
+    }
+
+    /**
+     * @return the WAV header probed during validation, or null
+     */
+    public STWaveHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public String toString() {
+        return isSegment() ? file.getAbsolutePath() + "#" + index : file.getAbsolutePath();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.util.Comparator;
+
+/**
+ * Orders queued jobs by the duration of their audio, as probed during validation, so no probing happens on the workers.
+ *
+ * With parallel sessions, a long file picked up last keeps a single session busy while all others are idle. Starting
+ * with the longest files fills the sessions evenly and minimizes the total run time of a batch. Starting with the
+ * shortest ones minimizes the mean time until a file is done. Jobs of equal duration keep their command line order.
+ */
+public final class STJobOrder {
+
+    private STJobOrder() {
+    }
+
+    /**
+     * @param schedule  one of the STValidate.Schedule option values
+     * @param rawFormat the format of headerless input files, null if all inputs are WAV files
+     * @return the order to submit jobs in, null to keep the command line order
+     */
+    public static Comparator<STJob> forSchedule(String schedule, STAudioFormat rawFormat) {
+        Comparator<STJob> shortestFirst = Comparator.comparingDouble(job -> durationSeconds(job, rawFormat));
+        if (STValidate.Schedule.LONGEST.getOptionValue().equals(schedule)) return shortestFirst.reversed();
+        if (STValidate.Schedule.SHORTEST.getOptionValue().equals(schedule)) return shortestFirst;
+        return null;
+    }
+
+    /**
+     * @param job       a file or segment
+     * @param rawFormat the format of headerless input files, null if all inputs are WAV files
+     * @return seconds of audio the job translates, 0 if unknown
+     */
+    static double durationSeconds(STJob job, STAudioFormat rawFormat) {
+        STWaveHeader header = job.getHeader();
+        STAudioFormat format = header != null ? header.getFormat() : rawFormat;
+        if (format == null) return 0;
+        long bytes = job.getLength() >= 0 ? job.getLength() : header != null ? header.getDataLength() : job.getSize();
+        return bytes / (double) format.getBytesPerSecond();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the input files of a batch among any number of processes on any number of hosts, through a directory they
+ * all can reach, for example on NFS. No queue service is needed, every process runs the same command line.
+ *
+ * A process claims a file by creating its lease file NAME-HASH.lease exclusively, where HASH is derived from the path
+ * as given on the command line. While the file is being translated, the lease is renewed by touching it. Once the
+ * results are written the NAME-HASH.done marker is created and the lease deleted. Leases not renewed within the lease
+ * time belong to a crashed process and are taken over: the first process to rename the stale lease away may claim the
+ * file. Done markers persist, so a batch interrupted as a whole resumes with the files not yet done.
+ *
+ * Clocks of the hosts must agree to well within the lease time. A process stalling for longer than the lease time may
+ * have its file taken over, the file is then translated twice but never skipped.
+ */
+public class STLeaseQueue implements Closeable {
+    private static final String LEASE = ".lease";
+    private static final String DONE = ".done";
+
+    public enum Claim {
+        /** the file is leased to this process now */
+        CLAIMED,
+        /** the file is leased to another process that is alive */
+        BUSY,
+        /** the results of the file are written */
+        DONE
+    }
+
+    private final Logger classLogger = LogManager.getLogger(STLeaseQueue.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsCli = configInstance.getStringsCli();
+
+    private final File directory;
+    private final long leaseMillis;
+    private final String owner;
+    private final Map<String, File> held = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lease-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param directory   the shared queue directory, created if missing
+     * @param leaseMillis time after which a lease not renewed is considered abandoned
+     * @throws IOException if the directory cannot be created
+     */
+    public STLeaseQueue(File directory, long leaseMillis) throws IOException {
+        Files.createDirectories(directory.toPath());
+        this.directory = directory;
+        this.leaseMillis = leaseMillis;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + " " + UUID.randomUUID();
+        long period = getPollMillis();
+        heartbeat.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return how long to wait before looking again at files leased to other processes
+     */
+    public long getPollMillis() {
+        return Math.max(1, leaseMillis / 4);
+    }
+
+    /**
+     * @param job a whole input file
+     * @return whether this process may translate the file now
+     * @throws IOException if the queue directory cannot be written
+     */
+    public Claim claim(STJob job) throws IOException {
+        String key = key(job);
+        File done = new File(directory, key + DONE);
+        File lease = new File(directory, key + LEASE);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (done.exists()) return Claim.DONE;
+            try {
+                Files.write(lease.toPath(), owner.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                if (!isExpired(lease) || !takeOver(lease)) return Claim.BUSY;
+                continue;
+            }
+            // another process may have completed the file between the check and the lease
+            if (done.exists()) {
+                Files.deleteIfExists(lease.toPath());
+                return Claim.DONE;
+            }
+            held.put(key, lease);
+            return Claim.CLAIMED;
+        }
+        return Claim.BUSY;
+    }
+
+    /**
+     * Marks a file done and gives up its lease.
+     *
+     * @param job a whole input file claimed by this process
+     * @throws IOException if the done marker cannot be written
+     */
+    public void complete(STJob job) throws IOException {
+        String key = key(job);
+        File done = new File(directory, key + DONE);
+        File temp = new File(directory, key + DONE + "." + UUID.randomUUID());
+        Files.write(temp.toPath(), owner.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), done.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        File lease = held.remove(key);
+        if (lease != null && isOwned(lease)) Files.deleteIfExists(lease.toPath());
+    }
+
+    /**
+     * @param sink the sink results are written to
+     * @return a sink marking every whole file done after the given sink completed it
+     */
+    public STOutputSink wrap(STOutputSink sink) {
+        return new STOutputSink() {
+            @Override
+            public void writeText(STJob job, String message) throws IOException {
+                sink.writeText(job, message);
+            }
+
+            @Override
+            public void writeAudio(STJob job, InputStream audio) throws IOException {
+                sink.writeAudio(job, audio);
+            }
+
+            @Override
+            public void complete(STJob job) throws IOException {
+                sink.complete(job);
+                if (!job.isSegment()) STLeaseQueue.this.complete(job);
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+    }
+
+    static String key(STJob job) {
+        String name = job.getName().replaceAll("[^-_.A-Za-z0-9]", "_");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(job.getFile().getPath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(name).append('-');
+            for (int i = 0; i < 8; i++) {
+                key.append(String.format("%02x", digest[i]));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isExpired(File lease) {
+        long modified = lease.lastModified();
+        // a lease that vanished in the meantime is free again
+        return modified == 0 || System.currentTimeMillis() - modified > leaseMillis;
+    }
+
+    // only one of the processes finding the stale lease gets to rename it away
+    boolean takeOver(File lease) throws IOException {
+        File stale = new File(directory, lease.getName() + "." + UUID.randomUUID());
+        try {
+            Files.move(lease.toPath(), stale.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+        if (!isExpired(stale)) {
+            // the lease was claimed afresh after the check, hand it back
+            try {
+                Files.move(stale.toPath(), lease.toPath());
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(stale.toPath());
+            }
+            return false;
+        }
+        classLogger.warn(MessageFormat.format(stringsCli.getString("log4jSlqWarnLeaseExpired"), lease.getName()));
+        Files.deleteIfExists(stale.toPath());
+        return true;
+    }
+
+    private boolean isOwned(File lease) {
+        try {
+            return owner.equals(new String(Files.readAllBytes(lease.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void renew() {
+        for (Map.Entry<String, File> entry : held.entrySet()) {
+            File lease = entry.getValue();
+            if (!isOwned(lease) || !lease.setLastModified(System.currentTimeMillis())) {
+                held.remove(entry.getKey());
+                classLogger.warn(MessageFormat.format(stringsCli.getString("log4jSlqWarnLeaseLost"), lease.getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * Process-wide budget for audio, response and result buffers. Sessions reserve their expected footprint before they
+ * are admitted and release it once their results are written, so the number of sessions in flight adapts to the
+ * memory available rather than only to the configured parallelism.
+ *
+ * A reservation larger than the whole budget is admitted once no other session holds a reservation, so one oversized
+ * input cannot stall the run. Read-ahead does not count for this: it only takes what is left over and is released
+ * once its session reads it, which may well be the oversized session itself.
+ */
+public class STMemoryBudget {
+    private final long limit;
+    private long reserved = 0;
+    private long readAhead = 0;
+
+    /**
+     * @param limit bytes that may be reserved at the same time
+     */
+    public STMemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Blocks until the bytes fit into the budget.
+     *
+     * @param bytes bytes to reserve
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void reserve(long bytes) throws InterruptedException {
+        while (reserved > readAhead && reserved + bytes > limit) {
+            wait();
+        }
+        reserved += bytes;
+    }
+
+    /**
+     * @param bytes bytes to reserve
+     * @return true if the bytes were reserved without waiting
+     */
+    public synchronized boolean tryReserve(long bytes) {
+        if (reserved > 0 && reserved + bytes > limit) return false;
+        reserved += bytes;
+        return true;
+    }
+
+    /**
+     * @param bytes bytes previously reserved
+     */
+    public synchronized void release(long bytes) {
+        reserved -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * @param bytes bytes to read ahead
+     * @return true if the bytes fit into what is left of the budget and were reserved
+     */
+    public synchronized boolean tryReserveReadAhead(long bytes) {
+        if (reserved + bytes > limit) return false;
+        reserved += bytes;
+        readAhead += bytes;
+        return true;
+    }
+
+    /**
+     * @param bytes bytes previously reserved for read-ahead
+     */
+    public synchronized void releaseReadAhead(long bytes) {
+        reserved -= bytes;
+        readAhead -= bytes;
+        notifyAll();
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+}
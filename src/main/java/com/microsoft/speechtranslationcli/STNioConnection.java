@@ -0,0 +1,526 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.text.MessageFormat;
+import java.util.Base64;
+import java.util.ResourceBundle;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One connection of the STNioTransport. run() connects, upgrades and then reads frames until the connection is
+ * closed, on a thread of its own. Frames are sent on the calling thread, masked while they are copied into a pooled
+ * direct buffer, and encrypted from there if the connection uses TLS.
+ */
+public class STNioConnection implements STConnection {
+    private static final int CLOSE_TIMEOUT_MILLIS = 2000;
+    private static final int MAX_HEADER_LINE = 8192;
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final Logger classLogger = LogManager.getLogger(STNioConnection.class);
+    private final ResourceBundle stringsClient = STConfiguration.getInstance().getStringsClient();
+
+    private final SpeechClientSocket socket;
+    private final URI uri;
+    private final STBufferPool buffers;
+    private final SSLContext sslContext;
+    private final ScheduledExecutorService timer;
+    private final int connectTimeout;
+    private final int bufferSize;
+    private final int maxBinary;
+    private final int maxText;
+
+    private final Object writeLock = new Object();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile boolean upgraded = false;
+    private volatile boolean closeSent = false;
+    private volatile SocketChannel channel;
+    private SSLEngine engine;
+    // read side, only used by the thread in run()
+    private ByteBuffer netIn;
+    private ByteBuffer appIn;
+    // write side, guarded by writeLock
+    private ByteBuffer netOut;
+
+    public STNioConnection(SpeechClientSocket socket, URI uri, STBufferPool buffers, SSLContext sslContext,
+                           ScheduledExecutorService timer, int connectTimeout, int bufferSize, int maxBinary, int maxText) {
+        this.socket = socket;
+        this.uri = uri;
+        this.buffers = buffers;
+        this.sslContext = sslContext;
+        this.timer = timer;
+        this.connectTimeout = connectTimeout;
+        this.bufferSize = bufferSize;
+        this.maxBinary = maxBinary;
+        this.maxText = maxText;
+    }
+
+    /**
+     * Connects and reads frames until the connection is closed, reporting to the socket on the way.
+     */
+    public void run() {
+        try {
+            open();
+            upgrade();
+        } catch (IOException | RuntimeException e) {
+            closeChannel();
+            socket.onError(e);
+            return;
+        }
+        upgraded = true;
+        socket.onConnect(this);
+        try {
+            readFrames();
+        } catch (IOException | RuntimeException e) {
+            closeChannel();
+            // reading fails as well once the channel is dropped after our close frame, which is no error
+            if (!closeSent) socket.onError(e);
+            fireClose(1006, String.valueOf(e.getMessage()));
+        }
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer data, Callback callback) {
+        try {
+            sendFrame(OPCODE_BINARY, data);
+        } catch (IOException | RuntimeException e) {
+            callback.writeFailed(e);
+            return;
+        }
+        callback.writeSuccess();
+    }
+
+    @Override
+    public void sendPing() throws IOException {
+        sendFrame(OPCODE_PING, ByteBuffer.allocate(0));
+    }
+
+    @Override
+    public void close(int statusCode, String reason) {
+        synchronized (writeLock) {
+            if (closeSent) return;
+            byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer payload = ByteBuffer.allocate(2 + Math.min(text.length, 123));
+            payload.putShort((short) statusCode).put(text, 0, payload.remaining()).flip();
+            try {
+                sendFrame(OPCODE_CLOSE, payload);
+            } catch (IOException e) {
+                abort();
+                return;
+            } finally {
+                closeSent = true;
+            }
+        }
+        timer.schedule(() -> {
+            if (closed.get()) return;
+            classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSNCDebugCloseTimeout"), String.valueOf(CLOSE_TIMEOUT_MILLIS)));
+            abort();
+        }, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isOpen() {
+        SocketChannel c = this.channel;
+        return upgraded && !closeSent && c != null && c.isOpen();
+    }
+
+    /**
+     * Drops the connection without a closing handshake, the reading thread then reports the close.
+     */
+    public void abort() {
+        closeSent = true;
+        closeChannel();
+    }
+
+    private void open() throws IOException {
+        boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80;
+        channel = SocketChannel.open();
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
+        if (secure) {
+            engine = sslContext.createSSLEngine(uri.getHost(), port);
+            engine.setUseClientMode(true);
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            engine.setSSLParameters(parameters);
+            STTlsContext.handshakeStarted(engine);
+            netIn = ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize());
+            appIn = ByteBuffer.allocateDirect(Math.max(bufferSize, engine.getSession().getApplicationBufferSize()));
+            try {
+                handshake();
+            } catch (IOException | RuntimeException e) {
+                STTlsContext.handshakeFailed(engine);
+                throw e;
+            }
+            STTlsContext.handshakeFinished(engine);
+        } else {
+            appIn = ByteBuffer.allocateDirect(bufferSize);
+        }
+        appIn.flip();
+    }
+
+    private void handshake() throws IOException {
+        engine.beginHandshake();
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        while (status != SSLEngineResult.HandshakeStatus.FINISHED && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+            switch (status) {
+                case NEED_WRAP:
+                    synchronized (writeLock) {
+                        write(ByteBuffer.allocate(0));
+                    }
+                    break;
+                case NEED_TASK:
+                    runTasks();
+                    break;
+                default:
+                    netIn.flip();
+                    SSLEngineResult result;
+                    try {
+                        result = engine.unwrap(netIn, appIn);
+                    } finally {
+                        netIn.compact();
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        read(netIn);
+                    } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                    } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new EOFException();
+                    }
+            }
+            status = engine.getHandshakeStatus();
+        }
+    }
+
+    private void upgrade() throws IOException {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        String key = Base64.getEncoder().encodeToString(nonce);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) path += "?" + uri.getRawQuery();
+        String request = "GET " + path + " HTTP/1.1\r\nHost: " + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "") +
+                "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Key: " + key +
+                "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+        synchronized (writeLock) {
+            write(ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        String status = readLine();
+        String[] parts = status.split(" ");
+        if (parts.length < 2 || !"101".equals(parts[1])) throw new IOException("Upgrade rejected: " + status);
+        String accept = null;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+                accept = line.substring(colon + 1).trim();
+            }
+        }
+        if (!STReplayServer.acceptKey(key).equals(accept)) throw new IOException("Invalid Sec-WebSocket-Accept: " + accept);
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            need(1);
+            byte c = appIn.get();
+            if (c == '\n') return line.toString();
+            if (c != '\r') line.append((char) c);
+            if (line.length() > MAX_HEADER_LINE) throw new IOException("Header line too long");
+        }
+    }
+
+    private void readFrames() throws IOException {
+        ByteArrayOutputStream message = null;
+        int messageOpcode = -1;
+        while (true) {
+            need(2);
+            int b0 = appIn.get() & 0xFF;
+            int b1 = appIn.get() & 0xFF;
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            long length = b1 & 0x7F;
+            if (length == 126) {
+                need(2);
+                length = appIn.getShort() & 0xFFFF;
+            } else if (length == 127) {
+                need(8);
+                length = appIn.getLong();
+            }
+            byte[] mask = null;
+            if ((b1 & 0x80) != 0) {
+                need(4);
+                mask = new byte[4];
+                appIn.get(mask);
+            }
+
+            if (opcode >= OPCODE_CLOSE) {
+                if (length > 125) throw new IOException("Control frame too large");
+                byte[] payload = readPayload((int) length, mask);
+                if (opcode == OPCODE_CLOSE) {
+                    closing(payload);
+                    return;
+                } else if (opcode == OPCODE_PING) {
+                    sendFrame(OPCODE_PONG, ByteBuffer.wrap(payload));
+                }
+                continue;
+            }
+            if (opcode != OPCODE_CONTINUATION) {
+                messageOpcode = opcode;
+                message = new ByteArrayOutputStream();
+            }
+            if (message == null) throw new IOException("Continuation frame without a message");
+            int max = messageOpcode == OPCODE_TEXT ? maxText : maxBinary;
+            if (length < 0 || message.size() + length > max) throw new IOException("Message larger than " + max + " bytes");
+            message.write(readPayload((int) length, mask));
+            if (fin) {
+                byte[] data = message.toByteArray();
+                message = null;
+                if (messageOpcode == OPCODE_TEXT) {
+                    socket.onMessage(new String(data, StandardCharsets.UTF_8));
+                } else if (messageOpcode == OPCODE_BINARY) {
+                    socket.onMessage(new ByteArrayInputStream(data));
+                }
+            }
+        }
+    }
+
+    // the service closed the connection, or answered our close frame
+    private void closing(byte[] payload) {
+        int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : 1005;
+        String reason = payload.length > 2 ? new String(payload, 2, payload.length - 2, StandardCharsets.UTF_8) : "";
+        synchronized (writeLock) {
+            if (!closeSent) {
+                try {
+                    ByteBuffer echo = ByteBuffer.allocate(2).putShort((short) (code == 1005 ? NORMAL : code));
+                    echo.flip();
+                    sendFrame(OPCODE_CLOSE, echo);
+                } catch (IOException e) {
+                    classLogger.debug(stringsClient.getString("log4jSNCDebugCloseFailed"), e);
+                }
+                closeSent = true;
+            }
+        }
+        closeChannel();
+        fireClose(code, reason);
+    }
+
+    private byte[] readPayload(int length, byte[] mask) throws IOException {
+        byte[] payload = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!appIn.hasRemaining()) fill();
+            int n = Math.min(appIn.remaining(), length - offset);
+            appIn.get(payload, offset, n);
+            offset += n;
+        }
+        if (mask != null) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+        }
+        return payload;
+    }
+
+    private void need(int bytes) throws IOException {
+        while (appIn.remaining() < bytes) {
+            fill();
+        }
+    }
+
+    // reads more application data into appIn, which is kept ready for reading in between
+    private void fill() throws IOException {
+        appIn.compact();
+        try {
+            if (engine == null) {
+                read(appIn);
+            } else {
+                unwrap();
+            }
+        } finally {
+            appIn.flip();
+        }
+    }
+
+    private void unwrap() throws IOException {
+        while (true) {
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) runTasks();
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                    read(netIn);
+                    break;
+                case CLOSED:
+                    throw new EOFException();
+                default:
+                    if (result.bytesProduced() > 0) return;
+                    // post-handshake messages such as session tickets produce no data, some need an answer
+                    if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                        synchronized (writeLock) {
+                            write(ByteBuffer.allocate(0));
+                        }
+                    }
+                    if (result.bytesConsumed() == 0) read(netIn);
+            }
+        }
+    }
+
+    private void read(ByteBuffer target) throws IOException {
+        if (channel.read(target) < 0) throw new EOFException();
+    }
+
+    /*
+     * The frame is copied into a pooled direct buffer, masking four bytes at a time, and written whenever the buffer
+     * is full. Payload and mask are both read big-endian, so whole ints line up with the mask bytes.
+     */
+    private void sendFrame(int opcode, ByteBuffer payload) throws IOException {
+        ByteBuffer data = payload.slice();
+        synchronized (writeLock) {
+            if (closeSent) throw new IOException("Connection is closing");
+            ByteBuffer frame = buffers.acquire();
+            try {
+                int length = data.remaining();
+                frame.put((byte) (0x80 | opcode));
+                if (length < 126) {
+                    frame.put((byte) (0x80 | length));
+                } else if (length < 65536) {
+                    frame.put((byte) (0x80 | 126)).putShort((short) length);
+                } else {
+                    frame.put((byte) (0x80 | 127)).putLong(length);
+                }
+                int mask = random.nextInt();
+                frame.putInt(mask);
+                int tail = 0;
+                while (data.hasRemaining()) {
+                    if (frame.remaining() < 4) {
+                        frame.flip();
+                        write(frame);
+                        frame.clear();
+                    }
+                    if (data.remaining() >= 4) {
+                        frame.putInt(data.getInt() ^ mask);
+                    } else {
+                        frame.put((byte) (data.get() ^ (mask >>> (24 - 8 * tail++))));
+                    }
+                }
+                frame.flip();
+                write(frame);
+            } finally {
+                buffers.release(frame);
+            }
+        }
+    }
+
+    // callers hold writeLock
+    private void write(ByteBuffer source) throws IOException {
+        if (engine == null) {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            return;
+        }
+        do {
+            netOut.clear();
+            SSLEngineResult result = engine.wrap(source, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) throw new EOFException();
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = ByteBuffer.allocateDirect(Math.max(2 * netOut.capacity(), engine.getSession().getPacketBufferSize()));
+                continue;
+            }
+            netOut.flip();
+            while (netOut.hasRemaining()) {
+                channel.write(netOut);
+            }
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) runTasks();
+        } while (source.hasRemaining());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    // buffer in write mode, its content is kept
+    private static ByteBuffer grow(ByteBuffer buffer, int atLeast) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(2 * buffer.capacity(), buffer.position() + atLeast));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private void closeChannel() {
+        SocketChannel c = this.channel;
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException e) {
+            classLogger.debug(stringsClient.getString("log4jSNCDebugCloseFailed"), e);
+        }
+    }
+
+    private void fireClose(int code, String reason) {
+        if (closed.compareAndSet(false, true)) {
+            socket.onClose(code, reason);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small websocket client transport on SocketChannel and SSLEngine, covering only what the sessions need: the
+ * client side of the opening handshake, masked binary frames, text and binary messages from the service, ping, pong
+ * and close. Every connection has a thread reading its frames, frames are written by the sending thread from pooled
+ * direct buffers.
+ */
+public class STNioTransport implements STTransport {
+    private static final int FRAME_BUFFER = 64 * 1024;
+
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+
+    private final STBufferPool buffers;
+    private final Set<STNioConnection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threads = new AtomicInteger();
+    private ExecutorService readers;
+    private ScheduledExecutorService timer;
+    private SSLContext sslContext;
+
+    public STNioTransport() {
+        this.buffers = new STBufferPool(FRAME_BUFFER, Math.max(4, 2 * configInstance.getInt(STConfigurationDefault.CLI_PARALLEL)));
+    }
+
+    @Override
+    public void start() throws Exception {
+        sslContext = STTlsContext.get();
+        readers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "nio-connection-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nio-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void connect(SpeechClientSocket socket, URI uri) throws IOException {
+        STNioConnection connection = new STNioConnection(socket, uri, buffers, sslContext, timer,
+                configInstance.getInt(STConfigurationDefault.WEBSOCKET_CONNECT_TIMEOUT),
+                configInstance.getInt(STConfigurationDefault.WEBSOCKET_BUFFER),
+                configInstance.getInt(STConfigurationDefault.WEBSOCKET_MAX_BINARY_MSG),
+                configInstance.getInt(STConfigurationDefault.WEBSOCKET_MAX_TEXT_MSG));
+        connections.add(connection);
+        readers.execute(() -> {
+            try {
+                connection.run();
+            } finally {
+                connections.remove(connection);
+            }
+        });
+    }
+
+    @Override
+    public void stop() throws Exception {
+        for (STNioConnection connection : connections) {
+            connection.abort();
+        }
+        readers.shutdownNow();
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps positions in an uploaded stream, from which silence has been cut, back to positions in the original recording.
+ * Positions are in ticks of 100ns, the unit the service uses for audioTimeOffset and audioTimeSize.
+ *
+ * Each breakpoint marks a cut: from the compacted position onwards, time advances one to one from the original
+ * position. Before the first breakpoint both timelines are identical.
+ */
+public class STOffsetMap {
+    public static final long TICKS_PER_SECOND = 10_000_000L;
+
+    private final List<long[]> breakpoints = new ArrayList<>();
+
+    /**
+     * @param compacted position in the uploaded stream
+     * @param original  position in the original recording that the compacted position corresponds to
+     */
+    public synchronized void add(long compacted, long original) {
+        breakpoints.add(new long[]{compacted, original});
+    }
+
+    public synchronized long toOriginal(long compacted) {
+        int low = 0, high = breakpoints.size() - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (breakpoints.get(mid)[0] <= compacted) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0) return compacted;
+        long[] b = breakpoints.get(found);
+        return b[1] + (compacted - b[0]);
+    }
+
+    /**
+     * @return number of cuts recorded so far
+     */
+    public synchronized int size() {
+        return breakpoints.size();
+    }
+
+    /**
+     * @return total amount of audio removed so far, in ticks
+     */
+    public synchronized long getRemovedTicks() {
+        if (breakpoints.isEmpty()) return 0;
+        long[] b = breakpoints.get(breakpoints.size() - 1);
+        return b[1] - b[0];
+    }
+
+    public static long toTicks(long frames, int sampleRate) {
+        return frames * TICKS_PER_SECOND / sampleRate;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the results of a job as they arrive on its socket. Implementations decide where results end up.
+ */
+public interface STOutputSink {
+
+    /**
+     * @param job     the job the message belongs to
+     * @param message a text message as sent by the service, with time offsets already mapped to the input timeline
+     * @throws IOException if the message cannot be written
+     */
+    void writeText(STJob job, String message) throws IOException;
+
+    /**
+     * @param job   the job the audio belongs to
+     * @param audio the text-to-speech audio stream, closed by the caller
+     * @throws IOException if the audio cannot be written
+     */
+    void writeAudio(STJob job, InputStream audio) throws IOException;
+
+    /**
+     * Called once no further results will arrive for the job, including jobs skipped without a session.
+     *
+     * @param job the finished job
+     * @throws IOException if pending results cannot be written
+     */
+    default void complete(STJob job) throws IOException {
+    }
+
+    /**
+     * Called once after all jobs have completed.
+     *
+     * @throws IOException if the sink cannot be closed
+     */
+    default void close() throws IOException {
+    }
+}
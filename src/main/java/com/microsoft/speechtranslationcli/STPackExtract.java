@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+/**
+ * Lists or extracts the contents of a result store written with --output-sink pack. Extracted results are laid out
+ * exactly as the file sink would have written them.
+ */
+@CommandLine.Command(name = "extract", mixinStandardHelpOptions = true, versionProvider = STManifestVersionProvider.class)
+public class STPackExtract implements Runnable {
+    public static final String NAME = "extract";
+
+    private static final Logger classLogger = LogManager.getLogger(STPackExtract.class);
+    private static final STConfiguration configInstance = STConfiguration.getInstance();
+    private static final ResourceBundle stringsCli = configInstance.getStringsCli();
+
+    @Option(names = "--store", description = "Directory holding the result store. " +
+            "The default is the current working directory.", required = false)
+    private File store;
+
+    @Option(names = "--output-dir", description = "Directory to which extracted files will be written. " +
+            "The default is the current working directory.", required = false)
+    private File outputLocation;
+
+    @Option(names = "--output-postfix", description = "File name postfix attached to the end of the extracted " +
+            "file(s). The default is \".translation\".", required = false)
+    private String postfix;
+
+    @Option(names = "--list", description = "Only list the stored inputs and record sizes.", required = false)
+    private boolean list;
+
+    @Parameters(arity = "0..*", paramLabel = "FILE", description = "Input file(s) to extract, by path or file name. " +
+            "The default is all stored inputs.")
+    private String[] inputFiles = new String[0];
+
+    public void run() {
+        String directory = store != null ? store.getAbsolutePath() : configInstance.getCurrentWorkingDirectory();
+        configInstance.getConfiguration().setProperty(STConfigurationDefault.CLI_OUTPUT_DIR.getKey(),
+                outputLocation != null ? outputLocation.getAbsolutePath() : configInstance.getCurrentWorkingDirectory());
+        if (!StringUtils.isBlank(postfix))
+            configInstance.getConfiguration().setProperty(STConfigurationDefault.CLI_POSTFIX.getKey(), postfix);
+
+        STPackStore packStore = new STPackStore(new File(directory), Long.MAX_VALUE);
+        STFileOutputSink fileSink = new STFileOutputSink();
+        try {
+            for (Map.Entry<String, STPackStore.Entry[]> entry : packStore.readIndex().entrySet()) {
+                if (!selected(entry.getKey())) continue;
+                STJob job = new STJob(new File(entry.getKey()));
+                STPackStore.Entry text = entry.getValue()[STPackStore.TYPE_TEXT];
+                STPackStore.Entry audio = entry.getValue()[STPackStore.TYPE_AUDIO];
+                if (list) {
+                    System.out.println(entry.getKey() + "\t" + (text != null ? text.getLength() : 0) + "\t" + (audio != null ? audio.getLength() : 0));
+                    continue;
+                }
+                if (text != null) fileSink.writeText(job, new String(packStore.read(text), StandardCharsets.UTF_8));
+                if (audio != null) fileSink.writeAudio(job, new ByteArrayInputStream(packStore.read(audio)));
+                fileSink.complete(job);
+                classLogger.debug(MessageFormat.format(stringsCli.getString("log4jSpeDebugExtracted"), entry.getKey()));
+            }
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jSpeStoreError") + directory, e);
+            classLogger.error(stringsCli.getString("log4jSpeStoreError") + directory);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+        }
+    }
+
+    private boolean selected(String key) {
+        if (inputFiles.length == 0) return true;
+        for (String f : inputFiles) {
+            if (key.equals(new File(f).getAbsolutePath()) || FilenameUtils.getName(key).equals(f)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Appends results to an STPackStore in the output directory instead of creating two files per input. Only the last
+ * text message of a job is kept, as with the file sink, and written once the job completes.
+ *
+ * Use the extract command to turn a store back into individual files.
+ */
+public class STPackOutputSink implements STOutputSink {
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+
+    private final STPackStore store;
+    private final boolean gzip;
+    private final ConcurrentMap<STJob, String> lastMessages = new ConcurrentHashMap<>();
+
+    public STPackOutputSink() {
+        this.store = new STPackStore(new File(configInstance.getString(STConfigurationDefault.CLI_OUTPUT_DIR)),
+                configInstance.getLong(STConfigurationDefault.CLI_PACK_SIZE));
+        this.gzip = configInstance.getBoolean(STConfigurationDefault.CLI_PACK_GZIP);
+    }
+
+    @Override
+    public void writeText(STJob job, String message) {
+        lastMessages.put(job, message);
+    }
+
+    @Override
+    public void writeAudio(STJob job, InputStream audio) throws IOException {
+        // buffered outside the store lock, so a slow download does not hold up other sessions
+        store.append(job.getFile().getAbsolutePath(), STPackStore.TYPE_AUDIO, IOUtils.toByteArray(audio), gzip);
+    }
+
+    @Override
+    public void complete(STJob job) throws IOException {
+        String message = lastMessages.remove(job);
+        if (message != null) {
+            store.append(job.getFile().getAbsolutePath(), STPackStore.TYPE_TEXT, message.getBytes(StandardCharsets.UTF_8), gzip);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
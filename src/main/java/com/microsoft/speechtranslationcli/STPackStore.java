@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Append-only result store: records are appended to rolling pack files results-NNNNN.pack and located through a
+ * compact binary index results.idx, keyed by input path. This replaces two files per input with two appends.
+ *
+ * Pack record: magic "STR1", type byte, flags byte, key length (short), payload length (int), key, payload.
+ * Index record: key length (short), key, type byte, flags byte, pack number (int), payload offset (long), length (int).
+ *
+ * The index is rebuilt on the fly by readers; for a key and type the last record written wins.
+ */
+public class STPackStore implements Closeable {
+    public static final byte TYPE_TEXT = 0;
+    public static final byte TYPE_AUDIO = 1;
+    public static final byte FLAG_GZIP = 1;
+
+    public static final String INDEX_NAME = "results.idx";
+    private static final byte[] MAGIC = "STR1".getBytes(StandardCharsets.US_ASCII);
+    private static final int RECORD_HEADER = MAGIC.length + 1 + 1 + 2 + 4;
+    private static final int INDEX_ENTRY = 2 + 1 + 1 + 4 + 8 + 4;
+
+    private final File directory;
+    private final long maxPackSize;
+    private RandomAccessFile pack = null;
+    private int packNumber = -1;
+    private FileOutputStream index = null;
+
+    /**
+     * An index entry pointing to the payload of one record.
+     */
+    public static class Entry {
+        private final String key;
+        private final byte type;
+        private final byte flags;
+        private final int pack;
+        private final long offset;
+        private final int length;
+
+        Entry(String key, byte type, byte flags, int pack, long offset, int length) {
+            this.key = key;
+            this.type = type;
+            this.flags = flags;
+            this.pack = pack;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * @param directory   directory holding the pack files and the index
+     * @param maxPackSize size in bytes after which a new pack file is started
+     */
+    public STPackStore(File directory, long maxPackSize) {
+        this.directory = directory;
+        this.maxPackSize = maxPackSize;
+    }
+
+    /**
+     * Appends one record and its index entry. Appends are serialized within this process only, the store must not be
+     * written by several processes at once.
+     *
+     * @param key     the input path
+     * @param type    TYPE_TEXT or TYPE_AUDIO
+     * @param payload the record content
+     * @param gzip    compress the payload
+     * @throws IOException if writing fails
+     */
+    public void append(String key, byte type, byte[] payload, boolean gzip) throws IOException {
+        byte flags = 0;
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 2 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(payload);
+            }
+            payload = compressed.toByteArray();
+            flags |= FLAG_GZIP;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        synchronized (this) {
+            openForAppend(RECORD_HEADER + keyBytes.length + payload.length);
+            long start = pack.length();
+            ByteArrayOutputStream record = new ByteArrayOutputStream(RECORD_HEADER + keyBytes.length + payload.length);
+            DataOutputStream out = new DataOutputStream(record);
+            out.write(MAGIC);
+            out.writeByte(type);
+            out.writeByte(flags);
+            out.writeShort(keyBytes.length);
+            out.writeInt(payload.length);
+            out.write(keyBytes);
+            out.write(payload);
+            pack.seek(start);
+            pack.write(record.toByteArray());
+
+            // like the record, the index entry goes out in a single write
+            ByteArrayOutputStream entry = new ByteArrayOutputStream(INDEX_ENTRY + keyBytes.length);
+            out = new DataOutputStream(entry);
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.writeByte(type);
+            out.writeByte(flags);
+            out.writeInt(packNumber);
+            out.writeLong(start + RECORD_HEADER + keyBytes.length);
+            out.writeInt(payload.length);
+            index.write(entry.toByteArray());
+        }
+    }
+
+    /**
+     * @return the latest entry per key and type, in order of first appearance
+     * @throws IOException if the index cannot be read
+     */
+    public Map<String, Entry[]> readIndex() throws IOException {
+        Map<String, Entry[]> entries = new LinkedHashMap<>();
+        File indexFile = new File(directory, INDEX_NAME);
+        if (!indexFile.exists()) return entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            while (true) {
+                int keyLength;
+                try {
+                    keyLength = in.readUnsignedShort();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] keyBytes = new byte[keyLength];
+                in.readFully(keyBytes);
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+                Entry entry = new Entry(key, in.readByte(), in.readByte(), in.readInt(), in.readLong(), in.readInt());
+                entries.computeIfAbsent(key, k -> new Entry[2])[entry.type] = entry;
+            }
+        } catch (EOFException e) {
+            // a torn last record from an interrupted run is ignored
+        }
+        return entries;
+    }
+
+    /**
+     * @param entry an entry from readIndex()
+     * @return the decompressed payload
+     * @throws IOException if the pack cannot be read
+     */
+    public byte[] read(Entry entry) throws IOException {
+        byte[] payload = new byte[entry.length];
+        try (RandomAccessFile in = new RandomAccessFile(packFile(entry.pack), "r")) {
+            in.seek(entry.offset);
+            in.readFully(payload);
+        }
+        if ((entry.flags & FLAG_GZIP) == 0) return payload;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (pack != null) pack.close();
+        if (index != null) index.close();
+        pack = null;
+        index = null;
+    }
+
+    private void openForAppend(int recordLength) throws IOException {
+        if (index == null) {
+            index = new FileOutputStream(new File(directory, INDEX_NAME), true);
+            packNumber = 0;
+            while (packFile(packNumber + 1).exists()) packNumber++;
+        }
+        if (pack != null && pack.length() + recordLength > maxPackSize && pack.length() > 0) {
+            pack.close();
+            pack = null;
+            packNumber++;
+        }
+        if (pack == null) {
+            pack = new RandomAccessFile(packFile(packNumber), "rw");
+            if (pack.length() + recordLength > maxPackSize && pack.length() > 0) {
+                pack.close();
+                pack = new RandomAccessFile(packFile(++packNumber), "rw");
+            }
+        }
+    }
+
+    private File packFile(int number) {
+        return new File(directory, String.format("results-%05d.pack", number));
+    }
+}
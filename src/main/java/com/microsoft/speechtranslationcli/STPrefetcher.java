@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the beginning of the next queued inputs in the background while the current sessions upload, so a session
+ * starting on slow or network attached storage finds its WAV header and first seconds of audio already in memory.
+ *
+ * At most depth inputs are read ahead and the bytes held at any time never exceed the budget. Prefetched bytes are
+ * taken from the process-wide memory budget as well, and released once the stream handed out by open() is closed.
+ * Segments are not prefetched, the segmenter has just read their file.
+ */
+public class STPrefetcher {
+    private static final Logger classLogger = LogManager.getLogger(STPrefetcher.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsCli = configInstance.getStringsCli();
+
+    private final STMemoryBudget memory;
+    private final int depth;
+    private final long budget;
+    private final int bytesPerFile;
+
+    private final Deque<STJob> queue = new ArrayDeque<>();
+    private final Map<STJob, Prefetch> prefetched = new HashMap<>();
+    private long reserved = 0;
+
+    /**
+     * @param memory       process-wide budget the prefetched bytes are also reserved from
+     * @param depth        number of upcoming inputs read ahead, 0 disables prefetching
+     * @param budget       bytes held by prefetched data at most
+     * @param bytesPerFile bytes read ahead per input at most
+     */
+    public STPrefetcher(STMemoryBudget memory, int depth, long budget, int bytesPerFile) {
+        this.memory = memory;
+        this.depth = depth;
+        this.budget = budget;
+        this.bytesPerFile = (int) Math.min(bytesPerFile, budget);
+    }
+
+    /**
+     * Announces a job in the order it will be opened.
+     *
+     * @param job the queued job
+     */
+    public synchronized void schedule(STJob job) {
+        // archive entries are already in memory
+        if (depth <= 0 || job.isSegment() || job.isInMemory()) return;
+        queue.add(job);
+        fill();
+    }
+
+    /**
+     * Opens the input of a job, starting with any prefetched bytes.
+     *
+     * @param job the job to read
+     * @return a stream positioned at the start of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream open(STJob job) throws IOException {
+        return open(job, true);
+    }
+
+    /**
+     * Opens the input of a job like open(), but keeps the prefetched bytes for the next call of open().
+     *
+     * @param job the job to read
+     * @return a stream positioned at the start of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream peek(STJob job) throws IOException {
+        return open(job, false);
+    }
+
+    /**
+     * Releases the prefetched bytes of a job that will not be opened after all.
+     *
+     * @param job the job given up on
+     */
+    public void skip(STJob job) {
+        Prefetch prefetch;
+        synchronized (this) {
+            queue.remove(job);
+            prefetch = prefetched.remove(job);
+        }
+        if (prefetch != null) release(prefetch);
+    }
+
+    private InputStream open(STJob job, boolean take) throws IOException {
+        Prefetch prefetch;
+        synchronized (this) {
+            queue.remove(job);
+            prefetch = take ? prefetched.remove(job) : prefetched.get(job);
+        }
+        if (prefetch == null) {
+            return job.openStream();
+        }
+        ByteBuffer head;
+        try {
+            head = prefetch.data.get();
+        } catch (InterruptedException | ExecutionException e) {
+            // the regular read reports the error, if it persists
+            classLogger.debug(stringsCli.getString("log4jSpfDebugPrefetchFailed") + job, e);
+            if (take) release(prefetch);
+            return new FileInputStream(job.getFile());
+        }
+        FileInputStream rest = new FileInputStream(job.getFile());
+        try {
+            rest.getChannel().position(head.remaining());
+        } catch (IOException e) {
+            rest.close();
+            if (take) release(prefetch);
+            throw e;
+        }
+        classLogger.trace(MessageFormat.format(stringsCli.getString("log4jSpfTracePrefetchUsed"), String.valueOf(head.remaining()), job));
+        InputStream stream = new SequenceInputStream(
+                new ByteArrayInputStream(head.array(), head.position(), head.remaining()), rest);
+        if (!take) return stream;
+        return new FilterInputStream(stream) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        release(prefetch);
+                    }
+                }
+            }
+        };
+    }
+
+    private synchronized void release(Prefetch prefetch) {
+        reserved -= prefetch.size;
+        memory.releaseReadAhead(prefetch.size);
+        fill();
+    }
+
+    private void fill() {
+        while (prefetched.size() < depth && !queue.isEmpty()) {
+            STJob next = queue.peek();
+            int size = (int) Math.min(bytesPerFile, next.getFile().length());
+            // read-ahead never waits for memory, it only uses what sessions leave over
+            if (reserved + size > budget || !memory.tryReserveReadAhead(size)) break;
+            queue.poll();
+            if (size <= 0) continue;
+            reserved += size;
+            prefetched.put(next, new Prefetch(size, read(next.getFile(), size)));
+        }
+    }
+
+    private CompletableFuture<ByteBuffer> read(File file, int size) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        try {
+            AsynchronousFileChannel channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channel.read(buffer, 0, channel, new CompletionHandler<Integer, AsynchronousFileChannel>() {
+                @Override
+                public void completed(Integer read, AsynchronousFileChannel channel) {
+                    if (read >= 0 && buffer.hasRemaining()) {
+                        channel.read(buffer, buffer.position(), channel, this);
+                        return;
+                    }
+                    close(channel);
+                    buffer.flip();
+                    future.complete(buffer);
+                }
+
+                @Override
+                public void failed(Throwable t, AsynchronousFileChannel channel) {
+                    close(channel);
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static class Prefetch {
+        private final int size;
+        private final CompletableFuture<ByteBuffer> data;
+
+        Prefetch(int size, CompletableFuture<ByteBuffer> data) {
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to read from it
+        }
+    }
+}
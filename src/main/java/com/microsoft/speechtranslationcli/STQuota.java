@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Process-wide budgets for the service quotas: concurrently open connections, connects per interval and audio seconds
+ * uploaded per interval. Each budget is disabled when its limit is 0.
+ *
+ * Configure the limits at, or slightly below, the service's quotas; the buckets never exceed them within any interval.
+ * A quota may have a parent, e.g. the quota of one subscription key within the process-wide one, and then only grants
+ * what both grant.
+ */
+public class STQuota {
+    private final STQuota parent;
+    private final Semaphore connections;
+    private final STTokenBucket connects;
+    private final STTokenBucket audioSeconds;
+
+    /**
+     * @param maxConnections  connections open at the same time, pre-warmed ones included
+     * @param maxConnects     connects per interval
+     * @param maxAudioSeconds seconds of audio uploaded per interval
+     * @param intervalSeconds the interval the rate limits refer to
+     */
+    public STQuota(int maxConnections, double maxConnects, double maxAudioSeconds, double intervalSeconds) {
+        this(null, maxConnections, maxConnects, maxAudioSeconds, intervalSeconds);
+    }
+
+    /**
+     * @param parent          quota that is consulted as well, null for none
+     * @param maxConnections  connections open at the same time, pre-warmed ones included
+     * @param maxConnects     connects per interval
+     * @param maxAudioSeconds seconds of audio uploaded per interval
+     * @param intervalSeconds the interval the rate limits refer to
+     */
+    public STQuota(STQuota parent, int maxConnections, double maxConnects, double maxAudioSeconds, double intervalSeconds) {
+        this.parent = parent;
+        this.connections = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+        this.connects = maxConnects > 0 ? new STTokenBucket(maxConnects, intervalSeconds) : null;
+        this.audioSeconds = maxAudioSeconds > 0 ? new STTokenBucket(maxAudioSeconds, intervalSeconds) : null;
+    }
+
+    public static STQuota fromConfiguration() {
+        STConfiguration configInstance = STConfiguration.getInstance();
+        return new STQuota(configInstance.getInt(STConfigurationDefault.QUOTA_CONNECTIONS),
+                configInstance.getDouble(STConfigurationDefault.QUOTA_CONNECTS),
+                configInstance.getDouble(STConfigurationDefault.QUOTA_AUDIO_SECONDS),
+                configInstance.getDouble(STConfigurationDefault.QUOTA_INTERVAL));
+    }
+
+    /**
+     * Blocks until a connection may be opened. Every successful call must be matched by releaseConnection().
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireConnection() throws InterruptedException {
+        if (connections != null) connections.acquire();
+        try {
+            if (connects != null) connects.acquire(1);
+            if (parent != null) parent.acquireConnection();
+        } catch (InterruptedException e) {
+            if (connections != null) connections.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a connection only if one is available right away and nobody is waiting for one, as pre-warming must not
+     * take connections away from sessions that need them now.
+     *
+     * @return true if a connection may be opened
+     */
+    public boolean tryAcquireConnection() {
+        if (connections != null && (connections.hasQueuedThreads() || !connections.tryAcquire())) return false;
+        if ((connects != null && !connects.tryAcquire(1)) || (parent != null && !parent.tryAcquireConnection())) {
+            if (connections != null) connections.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a connection is likely to be granted without waiting
+     */
+    public boolean isConnectionAvailable() {
+        return (connections == null || connections.availablePermits() > 0) && (parent == null || parent.isConnectionAvailable());
+    }
+
+    public void releaseConnection() {
+        if (connections != null) connections.release();
+        if (parent != null) parent.releaseConnection();
+    }
+
+    /**
+     * Blocks until the audio may be uploaded.
+     *
+     * @param seconds duration of the audio about to be sent
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireAudio(double seconds) throws InterruptedException {
+        if (audioSeconds != null) audioSeconds.acquire(seconds);
+        if (parent != null) parent.acquireAudio(seconds);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local websocket endpoint playing back the sessions of a capture file, so runs can be reproduced and benchmarked
+ * without the network or the service. Connections are assigned the recorded sessions in the order they start uploading, starting
+ * over once all were used. Once the first audio chunk arrives, the recorded text and binary responses and the close are sent
+ * at their recorded offsets, divided by the speed factor. What the client uploads is read and discarded.
+ *
+ * Only what the client needs is implemented of RFC 6455: the opening handshake without extensions, unmasked server
+ * frames, masked and fragmented client frames, ping and close.
+ */
+public class STReplayServer {
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_MESSAGE = 16 * 1024 * 1024;
+
+    private final Logger classLogger = LogManager.getLogger(STReplayServer.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsClient = configInstance.getStringsClient();
+
+    private final List<List<STCapture.Record>> sessions;
+    private final double speed;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger threads = new AtomicInteger();
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "replay-connection-" + threads.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "replay-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private ServerSocket server;
+
+    /**
+     * @param capture a file written by STCapture
+     * @param speed   playback speed, 1 replays at the recorded pace, 2 twice as fast
+     * @throws IOException if the capture cannot be read or contains no sessions
+     */
+    public STReplayServer(File capture, double speed) throws IOException {
+        this.sessions = STCapture.read(capture);
+        this.speed = speed;
+        if (sessions.isEmpty()) throw new IOException("No sessions in capture file " + capture);
+    }
+
+    public void start() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        connections.execute(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    connections.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    // closed by stop()
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the endpoint to connect to, without a path
+     */
+    public String getEndpoint() {
+        return "ws://" + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+    }
+
+    public void stop() throws IOException {
+        server.close();
+        timer.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    private void serve(Socket socket) {
+        List<ScheduledFuture<?>> scheduled = new ArrayList<>();
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            Connection connection = new Connection(new BufferedOutputStream(s.getOutputStream()));
+            handshake(in, connection.out);
+
+            boolean started = false;
+            while (true) {
+                Message message = readMessage(in, connection);
+                if (message == null) break;
+                if (message.opcode == 0x2 && !started) {
+                    // pre-warmed connections that are never used must not take up a recorded session
+                    started = true;
+                    int index = next.getAndIncrement() % sessions.size();
+                    List<STCapture.Record> records = sessions.get(index);
+                    classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSRSDebugReplaying"), String.valueOf(index + 1),
+                            String.valueOf(sessions.size()), new String(records.get(0).getPayload(), StandardCharsets.UTF_8)));
+                    for (STCapture.Record record : records) {
+                        long delay = (long) (record.getOffsetMicros() / speed);
+                        scheduled.add(timer.schedule(() -> connection.replay(record), delay, TimeUnit.MICROSECONDS));
+                    }
+                } else if (message.opcode == 0x8) {
+                    connection.send(0x8, message.payload.length >= 2 ? new byte[]{message.payload[0], message.payload[1]} : new byte[0]);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            classLogger.debug(stringsClient.getString("log4jSRSDebugConnectionError"), e);
+        } finally {
+            for (ScheduledFuture<?> future : scheduled) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static void handshake(InputStream in, OutputStream out) throws IOException {
+        String key = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) throw new IOException("Not a websocket upgrade request");
+        out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n" +
+                "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * @param key the Sec-WebSocket-Key of an upgrade request
+     * @return the Sec-WebSocket-Accept value answering it
+     * @throws IOException if SHA-1 is not available
+     */
+    static String acceptKey(String key) throws IOException {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+                    .digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) throw new IOException("Connection closed during handshake");
+            if (c != '\r') line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private static class Message {
+        private final int opcode;
+        private final byte[] payload;
+
+        Message(int opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+    }
+
+    // reads the next data or close message, answering pings on the way
+    private static Message readMessage(DataInputStream in, Connection connection) throws IOException {
+        int messageOpcode = -1;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        while (true) {
+            int b0 = in.read();
+            if (b0 < 0) return null;
+            int b1 = in.readUnsignedByte();
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            long length = b1 & 0x7F;
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = in.readLong();
+            }
+            if (length < 0 || length > MAX_MESSAGE || data.size() + length > MAX_MESSAGE) {
+                throw new IOException("Frame too large");
+            }
+            byte[] mask = new byte[4];
+            if ((b1 & 0x80) != 0) in.readFully(mask);
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+            if (opcode == 0x9) {
+                connection.send(0xA, payload);
+            } else if (opcode == 0x8) {
+                return new Message(opcode, payload);
+            } else if (opcode == 0x0 || opcode == 0x1 || opcode == 0x2) {
+                if (opcode != 0x0) messageOpcode = opcode;
+                data.write(payload);
+                if (fin) return new Message(messageOpcode, data.toByteArray());
+            }
+        }
+    }
+
+    private class Connection {
+        private final OutputStream out;
+        private boolean closed = false;
+
+        Connection(OutputStream out) {
+            this.out = out;
+        }
+
+        void replay(STCapture.Record record) {
+            try {
+                switch (record.getType()) {
+                    case STCapture.TEXT:
+                        send(0x1, record.getPayload());
+                        break;
+                    case STCapture.BINARY:
+                        send(0x2, record.getPayload());
+                        break;
+                    case STCapture.CLOSE:
+                        int code = STCapture.readInt(record.getPayload());
+                        send(0x8, new byte[]{(byte) (code >>> 8), (byte) code});
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IOException e) {
+                classLogger.debug(stringsClient.getString("log4jSRSDebugConnectionError"), e);
+            }
+        }
+
+        synchronized void send(int opcode, byte[] payload) throws IOException {
+            if (closed) return;
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length < 65536) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) ((long) payload.length >>> shift));
+                }
+            }
+            out.write(payload);
+            out.flush();
+            if (opcode == 0x8) closed = true;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.util.Arrays;
+
+/**
+ * Streaming rational sample rate converter using a windowed-sinc polyphase filter bank.
+ *
+ * The conversion ratio is reduced to L/M. Conceptually the input is zero-stuffed by L, low-pass filtered below the
+ * lower of both Nyquist frequencies and decimated by M. The polyphase form only evaluates the filter taps that hit
+ * non-zero input samples for each output sample, so the cost per output sample is the number of taps per phase.
+ */
+public class STResampler {
+    private static final int HALF_TAPS = 16;
+    private static final double ROLLOFF = 0.94;
+    private static final double KAISER_BETA = 8.0;
+
+    private final int up;
+    private final int down;
+    private final int tapsPerPhase;
+    private final float[][] phases;
+    private final long delay;
+
+    // input history, buffer[0] has the absolute input index bufferStart
+    private float[] buffer;
+    private int bufferLength;
+    private long bufferStart;
+    private long inputCount = 0;
+    private long outputCount = 0;
+
+    public STResampler(int inputRate, int outputRate) {
+        int g = gcd(inputRate, outputRate);
+        this.up = outputRate / g;
+        this.down = inputRate / g;
+        double stretch = Math.max(1.0, (double) down / up);
+        this.tapsPerPhase = 2 * (int) Math.ceil(HALF_TAPS * stretch);
+        int length = up * tapsPerPhase;
+        double cutoff = ROLLOFF * 0.5 / Math.max(up, down); // cycles per sample at the zero-stuffed rate
+        int center = length / 2; // integer so the group delay is a whole number of samples
+
+        this.phases = new float[up][tapsPerPhase];
+        for (int k = 0; k < length; k++) {
+            double x = k - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double h = up * sinc * kaiser(x / center);
+            phases[k % up][k / up] = (float) h;
+        }
+        this.delay = center;
+
+        // start with a full window of silence so the first outputs have history
+        this.buffer = new float[Math.max(1024, tapsPerPhase * 4)];
+        this.bufferLength = tapsPerPhase;
+        this.bufferStart = -tapsPerPhase;
+    }
+
+    public boolean isIdentity() {
+        return up == down;
+    }
+
+    /**
+     * Feeds samples and returns every output sample that can already be computed.
+     *
+     * @param in     mono input samples
+     * @param length number of valid samples in in
+     * @return resampled output, possibly empty
+     */
+    public float[] process(float[] in, int length) {
+        append(in, length);
+        inputCount += length;
+        return drain(inputCount * up / down + (inputCount * up % down == 0 ? 0 : 1), false);
+    }
+
+    /**
+     * Pads the end of the stream with silence and returns the remaining output, so that the total output length is
+     * exactly ceil(inputs * L / M).
+     *
+     * @return remaining output samples
+     */
+    public float[] flush() {
+        long total = inputCount * up / down + (inputCount * up % down == 0 ? 0 : 1);
+        float[] zeros = new float[tapsPerPhase + (int) (delay / up) + 1];
+        append(zeros, zeros.length);
+        return drain(total, true);
+    }
+
+    private float[] drain(long limit, boolean flushing) {
+        long available = bufferStart + bufferLength; // absolute index one past the last buffered input
+        float[] out = new float[(int) Math.max(0, limit - outputCount)];
+        int produced = 0;
+        while (outputCount < limit) {
+            long t = outputCount * down + delay;
+            long base = t / up;
+            if (base >= available) break;
+            if (!flushing && base >= inputCount) break;
+            int phase = (int) (t % up);
+            float[] h = phases[phase];
+            int index = (int) (base - bufferStart);
+            double acc = 0;
+            for (int m = 0; m < tapsPerPhase; m++) {
+                acc += h[m] * buffer[index - m];
+            }
+            out[produced++] = (float) acc;
+            outputCount++;
+        }
+        compact();
+        return produced == out.length ? out : Arrays.copyOf(out, produced);
+    }
+
+    private void append(float[] in, int length) {
+        if (bufferLength + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferLength + length));
+        }
+        System.arraycopy(in, 0, buffer, bufferLength, length);
+        bufferLength += length;
+    }
+
+    // drop history that no future output sample can reach
+    private void compact() {
+        long nextBase = (outputCount * down + delay) / up;
+        long keepFrom = nextBase - tapsPerPhase + 1;
+        int drop = (int) Math.min(bufferLength, Math.max(0, keepFrom - bufferStart));
+        if (drop > 0) {
+            System.arraycopy(buffer, drop, buffer, 0, bufferLength - drop);
+            bufferLength -= drop;
+            bufferStart += drop;
+        }
+    }
+
+    private static double kaiser(double x) {
+        if (Math.abs(x) > 1) return 0;
+        return bessel0(KAISER_BETA * Math.sqrt(1 - x * x)) / bessel0(KAISER_BETA);
+    }
+
+    private static double bessel0(double x) {
+        double sum = 1, term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for the flat JSON result messages the service sends, e.g.
+ * {"type":"final","id":"0","recognition":"...","translation":"...","audioTimeOffset":2731600000,"audioTimeSize":21500000}
+ *
+ * Only top level string and number fields are needed by the client, so this avoids pulling in a JSON library.
+ */
+public class STResultMessage {
+    public static final String TYPE_FINAL = "final";
+    public static final String TYPE_PARTIAL = "partial";
+
+    public static final String FIELD_TYPE = "type";
+    public static final String FIELD_ID = "id";
+    public static final String FIELD_RECOGNITION = "recognition";
+    public static final String FIELD_TRANSLATION = "translation";
+    public static final String FIELD_AUDIO_TIME_OFFSET = "audioTimeOffset";
+    public static final String FIELD_AUDIO_TIME_SIZE = "audioTimeSize";
+
+    private STResultMessage() {
+    }
+
+    /**
+     * @return the unescaped string value of the field, or null if the message has no such string field
+     */
+    public static String getString(String json, String field) {
+        Matcher m = Pattern.compile("\"" + Pattern.quote(field) + "\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"").matcher(json);
+        return m.find() ? unescape(m.group(1)) : null;
+    }
+
+    /**
+     * @return the value of the numeric field, or -1 if the message has no such field
+     */
+    public static long getLong(String json, String field) {
+        Matcher m = numberField(field).matcher(json);
+        return m.find() ? Long.parseLong(m.group(2)) : -1;
+    }
+
+    /**
+     * @return the message with the value of the numeric field replaced, unchanged if the field is missing
+     */
+    public static String setLong(String json, String field, long value) {
+        Matcher m = numberField(field).matcher(json);
+        return m.find() ? json.substring(0, m.start(2)) + value + json.substring(m.end(2)) : json;
+    }
+
+    /**
+     * @return the messages of a JSON array of messages as stitched for segmented files, or the message itself
+     */
+    public static List<String> split(String json) {
+        String trimmed = json.trim();
+        if (!trimmed.startsWith("[")) return Collections.singletonList(json);
+        List<String> messages = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                if (depth++ == 0) start = i;
+            } else if (c == '}' && --depth == 0) {
+                messages.add(trimmed.substring(start, i + 1));
+            }
+        }
+        return messages;
+    }
+
+    public static boolean isFinal(String json) {
+        return TYPE_FINAL.equals(getString(json, FIELD_TYPE));
+    }
+
+    /**
+     * Translates the audio time fields of a message from the uploaded stream to the original recording.
+     *
+     * @param json      the message as received
+     * @param offsetMap cuts applied to the uploaded stream
+     * @return the message with audioTimeOffset and audioTimeSize in the original timeline
+     */
+    public static String mapOffsets(String json, STOffsetMap offsetMap) {
+        long offset = getLong(json, FIELD_AUDIO_TIME_OFFSET);
+        if (offset < 0 || offsetMap == null || offsetMap.size() == 0) return json;
+        long size = getLong(json, FIELD_AUDIO_TIME_SIZE);
+        long start = offsetMap.toOriginal(offset);
+        String mapped = setLong(json, FIELD_AUDIO_TIME_OFFSET, start);
+        if (size >= 0) {
+            mapped = setLong(mapped, FIELD_AUDIO_TIME_SIZE, offsetMap.toOriginal(offset + size) - start);
+        }
+        return mapped;
+    }
+
+    /**
+     * @return the message with audioTimeOffset moved by the given number of ticks
+     */
+    public static String shiftOffset(String json, long ticks) {
+        long offset = getLong(json, FIELD_AUDIO_TIME_OFFSET);
+        return offset < 0 ? json : setLong(json, FIELD_AUDIO_TIME_OFFSET, offset + ticks);
+    }
+
+    public static String escape(String s) {
+        StringBuilder b = new StringBuilder(s.length() + 8);
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':
+                    b.append("\\\"");
+                    break;
+                case '\\':
+                    b.append("\\\\");
+                    break;
+                case '\n':
+                    b.append("\\n");
+                    break;
+                case '\r':
+                    b.append("\\r");
+                    break;
+                case '\t':
+                    b.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        b.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+            }
+        }
+        return b.toString();
+    }
+
+    private static Pattern numberField(String field) {
+        return Pattern.compile("(\"" + Pattern.quote(field) + "\"\\s*:\\s*)(-?\\d+)");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder b = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 >= s.length()) {
+                b.append(c);
+                continue;
+            }
+            char e = s.charAt(++i);
+            switch (e) {
+                case 'n':
+                    b.append('\n');
+                    break;
+                case 'r':
+                    b.append('\r');
+                    break;
+                case 't':
+                    b.append('\t');
+                    break;
+                case 'b':
+                    b.append('\b');
+                    break;
+                case 'f':
+                    b.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 < s.length()) {
+                        b.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    break;
+                default:
+                    b.append(e);
+            }
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * One subscription key and endpoint sessions can be opened with, declared as comma-separated name=value pairs, e.g.
+ * endpoint=wss://dev.microsofttranslator.com,key=0123abcd,weight=2,connections=4,audioseconds=1800
+ *
+ * Missing endpoint and key fall back to the configured defaults. connections, connects and audioseconds are quotas of
+ * this route alone, per the configured quota interval.
+ */
+public class STRoute {
+    private final String endpoint;
+    private final String key;
+    private final double weight;
+    private final int maxConnections;
+    private final double maxConnects;
+    private final double maxAudioSeconds;
+    private final STRouteHealth health = new STRouteHealth();
+    private STSessionPool pool;
+
+    public STRoute(String endpoint, String key, double weight, int maxConnections, double maxConnects, double maxAudioSeconds) {
+        this.endpoint = endpoint;
+        this.key = key;
+        this.weight = weight;
+        this.maxConnections = maxConnections;
+        this.maxConnects = maxConnects;
+        this.maxAudioSeconds = maxAudioSeconds;
+    }
+
+    /**
+     * @param declaration     the route declaration
+     * @param defaultEndpoint endpoint used if the declaration has none
+     * @param defaultKey      key used if the declaration has none
+     * @return the parsed route
+     * @throws IllegalArgumentException if the declaration is malformed
+     */
+    public static STRoute parse(String declaration, String defaultEndpoint, String defaultKey) {
+        String endpoint = defaultEndpoint;
+        String key = defaultKey;
+        double weight = 1;
+        int maxConnections = 0;
+        double maxConnects = 0;
+        double maxAudioSeconds = 0;
+        for (String pair : StringUtils.split(declaration, ',')) {
+            String name = StringUtils.substringBefore(pair, "=").trim();
+            String value = StringUtils.substringAfter(pair, "=").trim();
+            if (!pair.contains("=") || value.isEmpty()) throw new IllegalArgumentException(declaration);
+            try {
+                switch (name) {
+                    case "endpoint":
+                        endpoint = value;
+                        break;
+                    case "key":
+                        key = value;
+                        break;
+                    case "weight":
+                        weight = Double.parseDouble(value);
+                        break;
+                    case "connections":
+                        maxConnections = Integer.parseInt(value);
+                        break;
+                    case "connects":
+                        maxConnects = Double.parseDouble(value);
+                        break;
+                    case "audioseconds":
+                        maxAudioSeconds = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(declaration);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(declaration, e);
+            }
+        }
+        if (weight <= 0 || maxConnections < 0 || maxConnects < 0 || maxAudioSeconds < 0) {
+            throw new IllegalArgumentException(declaration);
+        }
+        return new STRoute(endpoint, key, weight, maxConnections, maxConnects, maxAudioSeconds);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public STRouteHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @param parent          the process-wide quota
+     * @param intervalSeconds the interval the rate limits refer to
+     * @return the quota of this route, also drawing from the process-wide one
+     */
+    public STQuota createQuota(STQuota parent, double intervalSeconds) {
+        return new STQuota(parent, maxConnections, maxConnects, maxAudioSeconds, intervalSeconds);
+    }
+
+    public STSessionPool getPool() {
+        return pool;
+    }
+
+    void setPool(STSessionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " (" + StringUtils.left(key, 4) + "...)";
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * Recent health of one route, tracked as exponentially weighted moving averages of the connect error rate and of the
+ * handshake latency. The resulting factor scales the configured weight of the route.
+ */
+public class STRouteHealth {
+    static final double ALPHA = 0.2;
+    // a failing route keeps a trickle of traffic, so it is noticed once it recovers
+    static final double MIN_FACTOR = 0.05;
+
+    private double errorRate = 0;
+    private double latencyMillis = -1;
+
+    /**
+     * @param handshakeMillis duration of the handshake, -1 if unknown
+     */
+    public synchronized void recordSuccess(long handshakeMillis) {
+        errorRate = errorRate * (1 - ALPHA);
+        if (handshakeMillis >= 0) {
+            latencyMillis = latencyMillis < 0 ? handshakeMillis : latencyMillis * (1 - ALPHA) + handshakeMillis * ALPHA;
+        }
+    }
+
+    public synchronized void recordFailure() {
+        errorRate = errorRate * (1 - ALPHA) + ALPHA;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @return average handshake latency, -1 before the first handshake
+     */
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @param bestLatencyMillis lowest average handshake latency among all routes, -1 if none is known yet
+     * @return factor between MIN_FACTOR and 1 applied to the route's weight
+     */
+    public synchronized double factor(double bestLatencyMillis) {
+        double factor = (1 - errorRate) * (1 - errorRate);
+        if (latencyMillis > 0 && bestLatencyMillis > 0) {
+            factor *= Math.min(1, bestLatencyMillis / latencyMillis);
+        }
+        return Math.max(MIN_FACTOR, factor);
+    }
+}
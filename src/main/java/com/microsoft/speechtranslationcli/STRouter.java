@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Spreads sessions over the configured routes, each a subscription key and endpoint with its own session pool and
+ * quota. A route is picked at random in proportion to its weight scaled by its health, so routes with recent handshake
+ * failures or slow handshakes get less traffic. Routes out of free connections are passed over while others have some.
+ * If a session cannot be established on one route, the next is tried.
+ *
+ * All pools share a single STTransport, chosen with --transport.
+ */
+public class STRouter {
+    private final Logger classLogger = LogManager.getLogger(STRouter.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsClient = configInstance.getStringsClient();
+
+    private final STTransport transport = STTransport.create(configInstance.getString(STConfigurationDefault.CLI_TRANSPORT));
+    private final List<STRoute> routes;
+
+    /**
+     * @param routes  the routes to spread sessions over
+     * @param prewarm number of idle sessions kept ready in total, divided among the routes by weight
+     * @param quota   the process-wide quota every route draws from as well
+     * @param uris    builds the connection string of a route
+     */
+    public STRouter(List<STRoute> routes, int prewarm, STQuota quota, Function<STRoute, URI> uris) {
+        this.routes = routes;
+        double totalWeight = routes.stream().mapToDouble(STRoute::getWeight).sum();
+        double interval = configInstance.getDouble(STConfigurationDefault.QUOTA_INTERVAL);
+        for (STRoute route : routes) {
+            int size = (int) Math.round(prewarm * route.getWeight() / totalWeight);
+            route.setPool(new STSessionPool(transport, uris.apply(route), size, route.createQuota(quota, interval), route.getHealth()));
+        }
+        // rounding must not switch pre-warming off altogether
+        if (prewarm > 0 && routes.stream().allMatch(r -> Math.round(prewarm * r.getWeight() / totalWeight) == 0)) {
+            STRoute heaviest = routes.stream().max((a, b) -> Double.compare(a.getWeight(), b.getWeight())).get();
+            heaviest.setPool(new STSessionPool(transport, uris.apply(heaviest), 1, heaviest.createQuota(quota, interval), heaviest.getHealth()));
+        }
+    }
+
+    /**
+     * @param capture records the sessions of every route, set before starting the router
+     */
+    public void setCapture(STCapture capture) {
+        for (STRoute route : routes) {
+            route.getPool().setCapture(capture);
+        }
+    }
+
+    public void start() throws Exception {
+        transport.start();
+        for (STRoute route : routes) {
+            route.getPool().start();
+        }
+    }
+
+    /**
+     * @return a connected socket ready for SpeechClientSocket.translate()
+     * @throws IOException          if no route could establish a session
+     * @throws InterruptedException if interrupted while waiting for a connection or handshake
+     */
+    public SpeechClientSocket acquire() throws IOException, InterruptedException {
+        List<STRoute> candidates = new ArrayList<>(routes);
+        while (true) {
+            STRoute route = select(candidates);
+            try {
+                return route.getPool().acquire();
+            } catch (IOException e) {
+                candidates.remove(route);
+                if (candidates.isEmpty()) throw e;
+                classLogger.warn(MessageFormat.format(stringsClient.getString("log4jSRWarnFailover"), route, e.getMessage()));
+            }
+        }
+    }
+
+    public void stop() throws Exception {
+        for (STRoute route : routes) {
+            route.getPool().stop();
+        }
+        transport.stop();
+    }
+
+    static STRoute select(List<STRoute> candidates) {
+        if (candidates.size() == 1) return candidates.get(0);
+        double bestLatency = -1;
+        for (STRoute route : candidates) {
+            double latency = route.getHealth().getLatencyMillis();
+            if (latency > 0 && (bestLatency < 0 || latency < bestLatency)) bestLatency = latency;
+        }
+        List<STRoute> available = new ArrayList<>();
+        for (STRoute route : candidates) {
+            if (route.getPool() == null || route.getPool().isConnectionAvailable()) available.add(route);
+        }
+        if (available.isEmpty()) available = candidates;
+
+        double[] weights = new double[available.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            STRoute route = available.get(i);
+            weights[i] = route.getWeight() * route.getHealth().factor(bestLatency);
+            total += weights[i];
+        }
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            pick -= weights[i];
+            if (pick < 0) return available.get(i);
+        }
+        return available.get(available.size() - 1);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Collects the performance figures of a run and writes them as a report once the run ends, as JSON into the output
+ * directory and as a summary to stderr. The report is also written when the run is cut short by an error, with the
+ * failure counted under its exit code.
+ *
+ * Latencies are in milliseconds. The handshake is measured from creating the connection until it is open, the first
+ * partial and first final result and the upload duration from the first chunk sent. Text-to-speech sizes are in bytes. All distributions are kept per language pair, except for the TLS
+ * handshake durations of the connections, which are kept per handshake type, full or resumed.
+ */
+public class STRunReport {
+    private static final Logger classLogger = LogManager.getLogger(STRunReport.class);
+    private static final STRunReport instance = new STRunReport();
+
+    static final String REPORT_NAME = "speechtranslate-report.json";
+    static final double[] PERCENTILES = {50, 90, 99};
+
+    private volatile long started = System.nanoTime();
+    private final AtomicBoolean written = new AtomicBoolean(false);
+    private volatile String languagePair = "";
+    private final ConcurrentMap<String, Metrics> metrics = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<STExitCode, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final DoubleAdder audioSeconds = new DoubleAdder();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final STHistogram tlsFull = new STHistogram();
+    private final STHistogram tlsResumed = new STHistogram();
+
+    /**
+     * Distributions of one language pair.
+     */
+    static class Metrics {
+        final STHistogram handshake = new STHistogram();
+        final STHistogram firstPartial = new STHistogram();
+        final STHistogram finalResult = new STHistogram();
+        final STHistogram upload = new STHistogram();
+        final STHistogram ttsBytes = new STHistogram();
+    }
+
+    STRunReport() {
+    }
+
+    public static STRunReport getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts the wall clock of the run.
+     *
+     * @param from language of the speech
+     * @param to   language of the translation
+     */
+    public void start(String from, String to) {
+        started = System.nanoTime();
+        languagePair = from + "-" + to;
+    }
+
+    public void recordHandshake(long millis) {
+        metrics().handshake.record(millis);
+    }
+
+    public void recordFirstPartial(long millis) {
+        metrics().firstPartial.record(millis);
+    }
+
+    public void recordFinalResult(long millis) {
+        metrics().finalResult.record(millis);
+    }
+
+    public void recordUpload(long millis) {
+        metrics().upload.record(millis);
+    }
+
+    public void recordTtsBytes(long bytes) {
+        metrics().ttsBytes.record(bytes);
+    }
+
+    public void recordAudio(double seconds) {
+        audioSeconds.add(seconds);
+    }
+
+    public void recordFile() {
+        files.incrementAndGet();
+    }
+
+    public void recordSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * @param won true if the hedged session completed before the session it duplicated
+     */
+    public void recordHedge(boolean won) {
+        hedges.incrementAndGet();
+        if (won) hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * @param resumed true if a cached TLS session was resumed rather than negotiated in a full handshake
+     * @param millis  duration of the TLS handshake
+     */
+    public void recordTlsHandshake(boolean resumed, long millis) {
+        (resumed ? tlsResumed : tlsFull).record(millis);
+    }
+
+    public void recordFailure(STExitCode code) {
+        failures.computeIfAbsent(code, c -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Writes the report, at most once per run.
+     *
+     * @param outputDir directory the JSON report is written to
+     */
+    public void write(File outputDir) {
+        if (!written.compareAndSet(false, true)) return;
+        System.err.print(toText());
+        File report = new File(outputDir, REPORT_NAME);
+        try {
+            FileUtils.writeStringToFile(report, toJson(), "UTF8");
+        } catch (IOException e) {
+            ResourceBundle stringsCli = STConfiguration.getInstance().getStringsCli();
+            classLogger.debug(stringsCli.getString("log4jSrrReportWriteError") + report.getAbsolutePath(), e);
+            classLogger.warn(stringsCli.getString("log4jSrrReportWriteError") + report.getAbsolutePath());
+        }
+    }
+
+    String toJson() {
+        double wall = wallSeconds();
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"wallSeconds\":").append(format(wall))
+                .append(",\"audioSeconds\":").append(format(audioSeconds.sum()))
+                .append(",\"realtimeFactor\":").append(format(realtimeFactor(wall)))
+                .append(",\"files\":").append(files.get())
+                .append(",\"filesPerSecond\":").append(format(wall > 0 ? files.get() / wall : 0))
+                .append(",\"skipped\":").append(skipped.get())
+                .append(",\"hedges\":").append(hedges.get())
+                .append(",\"hedgesWon\":").append(hedgesWon.get())
+                .append(",\"tlsHandshakeMillis\":{\"full\":").append(toJson(tlsFull))
+                .append(",\"resumed\":").append(toJson(tlsResumed)).append('}')
+                .append(",\"failures\":{");
+        String separator = "";
+        for (STExitCode code : STExitCode.values()) {
+            AtomicLong count = failures.get(code);
+            if (count == null) continue;
+            json.append(separator).append('"').append(code.name()).append("\":").append(count.get());
+            separator = ",";
+        }
+        json.append("},\"languagePairs\":{");
+        separator = "";
+        for (Map.Entry<String, Metrics> entry : metrics.entrySet()) {
+            Metrics m = entry.getValue();
+            json.append(separator).append('"').append(STResultMessage.escape(entry.getKey())).append("\":{");
+            json.append("\"handshakeMillis\":").append(toJson(m.handshake))
+                    .append(",\"firstPartialMillis\":").append(toJson(m.firstPartial))
+                    .append(",\"finalResultMillis\":").append(toJson(m.finalResult))
+                    .append(",\"uploadMillis\":").append(toJson(m.upload))
+                    .append(",\"ttsBytes\":").append(toJson(m.ttsBytes)).append('}');
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    String toText() {
+        double wall = wallSeconds();
+        StringBuilder text = new StringBuilder(1024);
+        text.append(String.format(Locale.ROOT, "%nRun report: %d files, %.1fs audio in %.1fs wall time, realtime factor %.2f, %.2f files/s%n",
+                files.get(), audioSeconds.sum(), wall, realtimeFactor(wall), wall > 0 ? files.get() / wall : 0));
+        if (skipped.get() > 0) {
+            text.append(String.format(Locale.ROOT, "  skipped without speech: %d%n", skipped.get()));
+        }
+        if (hedges.get() > 0) {
+            text.append(String.format(Locale.ROOT, "  hedged sessions: %d, completed first: %d%n", hedges.get(), hedgesWon.get()));
+        }
+        if (tlsFull.getCount() + tlsResumed.getCount() > 0) {
+            text.append(String.format(Locale.ROOT, "  TLS handshakes: %d full, p50 %d ms; %d resumed, p50 %d ms%n",
+                    tlsFull.getCount(), tlsFull.getPercentile(50), tlsResumed.getCount(), tlsResumed.getPercentile(50)));
+        }
+        for (Map.Entry<STExitCode, AtomicLong> failure : failures.entrySet()) {
+            text.append(String.format(Locale.ROOT, "  failures %s: %d%n", failure.getKey().name(), failure.getValue().get()));
+        }
+        for (Map.Entry<String, Metrics> entry : metrics.entrySet()) {
+            Metrics m = entry.getValue();
+            text.append("  ").append(entry.getKey().isEmpty() ? "-" : entry.getKey())
+                    .append(String.format(Locale.ROOT, "%n    %-20s %8s %8s %8s %8s %8s%n", "", "count", "p50", "p90", "p99", "max"));
+            toText(text, "handshake ms", m.handshake);
+            toText(text, "first partial ms", m.firstPartial);
+            toText(text, "final result ms", m.finalResult);
+            toText(text, "upload ms", m.upload);
+            toText(text, "tts bytes", m.ttsBytes);
+        }
+        return text.toString();
+    }
+
+    private Metrics metrics() {
+        return metrics.computeIfAbsent(languagePair, k -> new Metrics());
+    }
+
+    private double wallSeconds() {
+        return (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    // seconds of audio translated per second of wall time
+    private double realtimeFactor(double wall) {
+        return wall > 0 ? audioSeconds.sum() / wall : 0;
+    }
+
+    private static String toJson(STHistogram h) {
+        StringBuilder json = new StringBuilder("{\"count\":").append(h.getCount());
+        for (double p : PERCENTILES) {
+            json.append(",\"p").append((int) p).append("\":").append(h.getPercentile(p));
+        }
+        return json.append(",\"max\":").append(h.getMax()).append(",\"mean\":").append(format(h.getMean())).append('}').toString();
+    }
+
+    private static void toText(StringBuilder text, String label, STHistogram h) {
+        if (h.getCount() == 0) return;
+        text.append(String.format(Locale.ROOT, "    %-20s %8d %8d %8d %8d %8d%n", label, h.getCount(),
+                h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getMax()));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
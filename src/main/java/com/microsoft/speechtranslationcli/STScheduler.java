@@ -0,0 +1,386 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs jobs on a fixed number of worker threads, each of which drives one session at a time. With a single worker this
+ * is the classic one file after the other mode, while the session pools prepare the connection for the next job.
+ *
+ * With --adaptive there are as many workers as the ceiling allows, and an STConcurrencyController decides how many of
+ * them run a session at a time. It is adjusted once per window from the sessions completed in it.
+ */
+public class STScheduler {
+    private static final Logger classLogger = LogManager.getLogger(STScheduler.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsCli = configInstance.getStringsCli();
+
+    private static final long RESULT_BYTES = 64 * 1024;
+    private static final int TTS_WAV_BYTE_RATE = 32000;
+    private static final int TTS_MP3_BYTE_RATE = 6000;
+    private static final int CLOSE_SECONDS = 5;
+    private static final int POLL_MILLIS = 100;
+
+    private final STRouter router;
+    private final STMemoryBudget memory;
+    private final STPrefetcher prefetcher;
+    private final ExecutorService workers;
+    private final STHedgePolicy hedgePolicy;
+    private final ExecutorService hedgers;
+    private final STConcurrencyController controller;
+    private final ScheduledExecutorService tuner;
+    private final int parallel;
+    private int pending = 0;
+
+    public STScheduler(STRouter router, int parallel, STMemoryBudget memory) {
+        this.router = router;
+        this.memory = memory;
+        this.parallel = Math.max(1, parallel);
+        this.prefetcher = new STPrefetcher(memory, configInstance.getInt(STConfigurationDefault.CLI_PREFETCH),
+                configInstance.getLong(STConfigurationDefault.CLI_PREFETCH_BUDGET),
+                configInstance.getInt(STConfigurationDefault.CLI_PREFETCH_BYTES));
+        if (configInstance.getBoolean(STConfigurationDefault.CLI_ADAPTIVE)) {
+            this.controller = new STConcurrencyController(this.parallel, configInstance.getInt(STConfigurationDefault.CLI_PARALLEL_MIN),
+                    configInstance.getInt(STConfigurationDefault.CLI_PARALLEL_MAX), System.nanoTime());
+            long window = (long) (configInstance.getDouble(STConfigurationDefault.CLI_ADAPTIVE_WINDOW) * 1000);
+            this.tuner = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "concurrency-tuner");
+                t.setDaemon(true);
+                return t;
+            });
+            tuner.scheduleWithFixedDelay(this::tune, window, window, TimeUnit.MILLISECONDS);
+        } else {
+            this.controller = null;
+            this.tuner = null;
+        }
+        AtomicInteger count = new AtomicInteger();
+        int threads = controller == null ? this.parallel : configInstance.getInt(STConfigurationDefault.CLI_PARALLEL_MAX);
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "session-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (configInstance.getBoolean(STConfigurationDefault.CLI_HEDGE)) {
+            this.hedgePolicy = new STHedgePolicy(configInstance.getDouble(STConfigurationDefault.CLI_HEDGE_PERCENTILE),
+                    configInstance.getDouble(STConfigurationDefault.CLI_HEDGE_BUDGET));
+            AtomicInteger hedgeCount = new AtomicInteger();
+            this.hedgers = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "session-hedge-" + hedgeCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.hedgePolicy = null;
+            this.hedgers = null;
+        }
+    }
+
+    /**
+     * Queues a job. Jobs start in submission order as workers become available.
+     *
+     * @param job  the file or segment to translate
+     * @param sink receives the results of the job
+     */
+    public void submit(STJob job, STOutputSink sink) {
+        synchronized (this) {
+            pending++;
+        }
+        prefetcher.schedule(job);
+        workers.execute(() -> {
+            try {
+                run(job, sink);
+            } finally {
+                synchronized (this) {
+                    pending--;
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until fewer jobs are queued or running than there are workers, for callers that only take on work once it
+     * can start right away.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitCapacity() throws InterruptedException {
+        while (pending >= limit()) {
+            wait();
+        }
+    }
+
+    /**
+     * Waits until every job submitted so far has completed. Jobs can still be submitted afterwards.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (pending > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Waits until every submitted job has completed. No jobs can be submitted afterwards.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        if (tuner != null) {
+            tuner.shutdownNow();
+            classLogger.info(MessageFormat.format(stringsCli.getString("log4jStcInfoConcurrencySettled"),
+                    String.valueOf(controller.getLimit())));
+        }
+    }
+
+    private int limit() {
+        return controller == null ? parallel : controller.getLimit();
+    }
+
+    private void tune() {
+        int before = controller.getLimit();
+        int after = controller.adjust(System.nanoTime());
+        if (after == before) return;
+        classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugConcurrency"), String.valueOf(before),
+                String.valueOf(after), String.format(Locale.ROOT, "%.2f", controller.getGoodput())));
+        // callers waiting for capacity see the new limit
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void run(STJob job, STOutputSink sink) {
+        boolean limited = false;
+        try {
+            if (controller != null) {
+                controller.acquire();
+                limited = true;
+            }
+            if (containsSpeech(job)) {
+                STAudioPipeline pipeline = openPipeline(job);
+                STRunReport.getInstance().recordAudio(pipeline.getDurationSeconds());
+                long footprint = footprint(pipeline);
+                memory.reserve(footprint);
+                try {
+                    SpeechClientSocket socket = router.acquire();
+                    STRunReport.getInstance().recordHandshake(socket.getHandshakeMillis());
+                    long started = System.nanoTime();
+                    boolean closedInTime = true;
+                    if (hedgePolicy == null) {
+                        socket.translate(job, pipeline, sink);
+
+                        // wait for closed socket connection.
+                        closedInTime = socket.awaitClose(CLOSE_SECONDS, TimeUnit.SECONDS);
+                        if (!closedInTime) {
+                            socket.close();
+                        }
+                    } else {
+                        translateHedged(job, socket, pipeline, footprint, sink);
+                    }
+                    if (controller != null) {
+                        int status = socket.getCloseStatus();
+                        controller.record(pipeline.getDurationSeconds(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+                                !closedInTime || (status >= 0 && status != STConnection.NORMAL), hasBacklog());
+                    }
+                    sink.complete(job);
+                } finally {
+                    memory.release(footprint);
+                }
+            } else {
+                STRunReport.getInstance().recordSkipped();
+                sink.complete(job);
+            }
+            if (!job.isSegment()) STRunReport.getInstance().recordFile();
+        } catch (IOException i) {
+            classLogger.debug(stringsCli.getString("log4jStcSocketConnectError"), i);
+            classLogger.error(stringsCli.getString("log4jStcSocketConnectError"));
+            STRunReport.getInstance().recordFailure(STExitCode.CONNECTION_ERROR);
+            System.exit(STExitCode.CONNECTION_ERROR.getId());
+        } catch (InterruptedException e) {
+            classLogger.debug(stringsCli.getString("log4jStcSocketCloseException"), e);
+            classLogger.error(stringsCli.getString("log4jStcSocketCloseException"));
+            STRunReport.getInstance().recordFailure(STExitCode.CONNECTION_ERROR);
+            System.exit(STExitCode.CONNECTION_ERROR.getId());
+        } catch (Throwable t) {
+            classLogger.debug(stringsCli.getString("log4jStcInternalError"), t);
+            classLogger.error(stringsCli.getString("log4jStcInternalError"));
+            STRunReport.getInstance().recordFailure(STExitCode.INTERNAL_ERROR);
+            System.exit(STExitCode.INTERNAL_ERROR.getId());
+        } finally {
+            if (limited) controller.release();
+        }
+    }
+
+    // as many jobs as the limit allows are running or queued, so the session's outcome says something about the limit
+    private synchronized boolean hasBacklog() {
+        return pending >= limit();
+    }
+
+    /*
+     * Like the plain path, but while waiting for the session to close after the upload, a session that stays quiet for
+     * longer than the policy expects is duplicated on a second session. Both then run until one of them closes, the
+     * results of the other one are dropped by the STHedgeSink.
+     */
+    private void translateHedged(STJob job, SpeechClientSocket socket, STAudioPipeline pipeline, long footprint,
+                                 STOutputSink sink) throws IOException, InterruptedException {
+        hedgePolicy.recordSession();
+        STHedgeSink gate = new STHedgeSink(sink);
+        socket.translate(job, pipeline, gate.attempt(STHedgeSink.PRIMARY));
+        long uploaded = System.nanoTime();
+        long deadline = uploaded + TimeUnit.SECONDS.toNanos(CLOSE_SECONDS);
+        while (!socket.isClosed() && System.nanoTime() < deadline) {
+            long quiet = socket.getQuietMillis();
+            if (quiet > hedgePolicy.getStallMillis()
+                    && canHedge(pipeline.getDurationSeconds(), System.nanoTime(), deadline)
+                    && hedge(job, socket, gate, footprint, quiet, deadline)) return;
+            socket.awaitClose(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (socket.isClosed()) {
+            hedgePolicy.recordTail(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - uploaded));
+        } else {
+            socket.close();
+        }
+        gate.win(STHedgeSink.PRIMARY);
+    }
+
+    // returns false without side effects if the budget or the memory do not allow another session right now
+    private boolean hedge(STJob job, SpeechClientSocket primary, STHedgeSink gate, long footprint, long quiet,
+                          long deadline) throws IOException, InterruptedException {
+        if (!memory.tryReserve(footprint)) return false;
+        try {
+            if (!hedgePolicy.tryHedge()) return false;
+            classLogger.info(MessageFormat.format(stringsCli.getString("log4jStcInfoHedging"), job, String.valueOf(quiet)));
+            gate.hedge();
+            STAudioPipeline pipeline = openPipeline(job);
+            SpeechClientSocket hedge = router.acquire();
+            CompletableFuture<Long> upload = CompletableFuture.supplyAsync(() -> {
+                hedge.translate(job, pipeline, gate.attempt(STHedgeSink.HEDGE));
+                return System.nanoTime();
+            }, hedgers);
+
+            int winner;
+            while (true) {
+                boolean hedgeDone = hedge.isClosed() || (upload.isDone() && !upload.isCompletedExceptionally()
+                        && System.nanoTime() - upload.join() > TimeUnit.SECONDS.toNanos(CLOSE_SECONDS));
+                winner = winner(primary.isClosed(), hedge.isClosed() && hedge.isUploaded(), hedgeDone,
+                        System.nanoTime() >= deadline);
+                if (winner >= 0) break;
+                primary.awaitClose(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (winner == STHedgeSink.PRIMARY) {
+                hedge.close();
+                primary.close();
+            } else {
+                primary.close();
+            }
+            gate.win(winner);
+            STRunReport.getInstance().recordHedge(winner == STHedgeSink.HEDGE);
+            classLogger.debug(MessageFormat.format(stringsCli.getString("log4jStcDebugHedgeWinner"), job,
+                    winner == STHedgeSink.HEDGE));
+            return true;
+        } finally {
+            memory.release(footprint);
+        }
+    }
+
+    /*
+     * The hedge uploads at the same pace as the first session did. It is only started if that upload ends before the
+     * first session's close timeout, otherwise waiting for it would make the job slower than not hedging at all, so in
+     * practice only short files and segments are hedged.
+     */
+    static boolean canHedge(double durationSeconds, long now, long deadline) {
+        return deadline - now > TimeUnit.MILLISECONDS.toNanos(SpeechClientSocket.pacingMillis(durationSeconds));
+    }
+
+    /*
+     * Returns the session whose results are kept, or -1 while the race is open. A session that closed first wins, the
+     * hedge only with its whole upload sent. If the hedge failed or did not close in time either, the first session
+     * gets what is left of its time.
+     */
+    static int winner(boolean primaryClosed, boolean hedgeCompleted, boolean hedgeDone, boolean pastDeadline) {
+        if (primaryClosed) return STHedgeSink.PRIMARY;
+        if (hedgeCompleted) return STHedgeSink.HEDGE;
+        if (hedgeDone && pastDeadline) return STHedgeSink.PRIMARY;
+        return -1;
+    }
+
+    // with silence trimming enabled, inputs without any speech are skipped before a session is spent on them
+    private boolean containsSpeech(STJob job) {
+        if (!configInstance.getBoolean(STConfigurationDefault.AUDIO_TRIM_SILENCE)) return true;
+        // the prefetched head is left for the pipeline the session reads
+        try (STAudioPipeline pipeline = STAudioPipeline.open(job, prefetcher.peek(job))) {
+            if (STVoiceActivityDetector.containsSpeech(pipeline, configInstance.getDouble(STConfigurationDefault.AUDIO_VAD_THRESHOLD))) {
+                return true;
+            }
+            classLogger.warn(stringsCli.getString("log4jStcWarnNoSpeech") + job);
+            prefetcher.skip(job);
+            return false;
+        } catch (IOException | IllegalArgumentException e) {
+            classLogger.debug(stringsCli.getString("log4jStcFileReadError") + job, e);
+            classLogger.error(stringsCli.getString("log4jStcFileReadError") + job);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+            return false; // never reached, got to satisfy the compiler
+        }
+    }
+
+    // upload buffers of two chunks plus the expected text-to-speech response and results of the session
+    private long footprint(STAudioPipeline pipeline) {
+        long chunk = (long) (pipeline.getSourceFormat().getBytesPerSecond() * STAudioPipeline.CHUNK_SECONDS);
+        long footprint = 2 * chunk + RESULT_BYTES;
+        if (SpeechClientSocket.expectsAudio()) {
+            boolean wav = "audio/wav".equalsIgnoreCase(configInstance.getString(STConfigurationDefault.API_AUDIO));
+            footprint += (long) (pipeline.getDurationSeconds() * (wav ? TTS_WAV_BYTE_RATE : TTS_MP3_BYTE_RATE));
+        }
+        return footprint;
+    }
+
+    private STAudioPipeline openPipeline(STJob job) {
+        try {
+            return STAudioPipeline.open(job, prefetcher.open(job));
+        } catch (IOException | IllegalArgumentException e) {
+            classLogger.debug(stringsCli.getString("log4jStcFileReadError") + job, e);
+            classLogger.error(stringsCli.getString("log4jStcFileReadError") + job);
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+            return null; // never reached, got to satisfy the compiler
+        }
+    }
+}
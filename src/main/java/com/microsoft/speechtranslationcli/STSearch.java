@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the transcript index written with --index. Every query argument is a phrase, quote it to search for several
+ * words in a row. Matching utterances contain all phrases and are printed one per line: input file, start time,
+ * recognized text and translation, separated by tabs.
+ */
+@CommandLine.Command(name = "search", mixinStandardHelpOptions = true, versionProvider = STManifestVersionProvider.class)
+public class STSearch implements Runnable {
+    public static final String NAME = "search";
+
+    private static final Logger classLogger = LogManager.getLogger(STSearch.class);
+    private static final STConfiguration configInstance = STConfiguration.getInstance();
+    private static final ResourceBundle stringsCli = configInstance.getStringsCli();
+
+    @Option(names = "--index", description = "Directory holding the transcript index. " +
+            "The default is the current working directory.", required = false)
+    private File index;
+
+    @Option(names = "--field", description = "Text to search. Valid options are: source, target, any. " +
+            "The default is any.", required = false)
+    private String field = "any";
+
+    @Option(names = "--limit", description = "Maximum number of utterances printed. The default is 100.", required = false)
+    private int limit = 100;
+
+    @Parameters(arity = "1..*", paramLabel = "PHRASE", description = "Word or phrase every utterance found contains.")
+    private String[] phrases;
+
+    public void run() {
+        File directory = index != null ? index : new File(configInstance.getCurrentWorkingDirectory());
+        int searchField;
+        if ("source".equals(field)) {
+            searchField = STTranscriptIndex.FIELD_SOURCE;
+        } else if ("target".equals(field)) {
+            searchField = STTranscriptIndex.FIELD_TARGET;
+        } else if ("any".equals(field)) {
+            searchField = STTranscriptIndex.FIELD_ANY;
+        } else {
+            classLogger.fatal(stringsCli.getString("StvValidationInvalidOption") + field);
+            System.exit(STExitCode.VALIDATION_ERROR.getId());
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            List<STTranscriptIndex.Hit> hits = new STTranscriptIndex(directory).search(Arrays.asList(phrases), searchField, limit);
+            for (STTranscriptIndex.Hit hit : hits) {
+                System.out.println(hit.getFile() + "\t" + formatTicks(hit.getOffsetTicks()) + "\t" + hit.getSource() + "\t" + hit.getTarget());
+            }
+            classLogger.debug(MessageFormat.format(stringsCli.getString("log4jSseDebugFound"), hits.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+        } catch (IOException e) {
+            classLogger.debug(stringsCli.getString("log4jSseIndexError") + directory, e);
+            classLogger.error(stringsCli.getString("log4jSseIndexError") + directory);
+            System.exit(STExitCode.FILE_READ_ERROR.getId());
+        }
+    }
+
+    // ticks of 100ns as h:mm:ss.fff
+    static String formatTicks(long ticks) {
+        if (ticks < 0) return "-";
+        long millis = ticks / 10000;
+        return String.format("%d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+}
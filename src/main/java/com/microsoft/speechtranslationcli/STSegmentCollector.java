@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the results of the segments of one file while they are translated in parallel, and hands the stitched
+ * results to the actual sink once the last segment completes: the final text messages of all segments in order as a
+ * JSON array, with audioTimeOffset shifted into the timeline of the file, and the text-to-speech audio concatenated.
+ *
+ * A file translated as a whole is collected as a single segment, so every utterance of a session is kept and not only
+ * the last one. Each text-to-speech response is spooled to a temporary file so long recordings do not have to fit
+ * into memory.
+ */
+public class STSegmentCollector implements STOutputSink {
+    private final STJob parent;
+    private final STOutputSink target;
+    private final AtomicInteger pending;
+    private final List<List<String>> texts;
+    private final List<List<File>> audio;
+
+    public STSegmentCollector(STJob parent, int segments, STOutputSink target) {
+        this.parent = parent;
+        this.target = target;
+        this.pending = new AtomicInteger(segments);
+        this.texts = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            texts.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        this.audio = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            audio.add(new ArrayList<>());
+        }
+    }
+
+    @Override
+    public void writeText(STJob job, String message) {
+        List<String> segment = texts.get(job.getIndex());
+        String shifted = STResultMessage.shiftOffset(message, job.getStartTicks());
+        synchronized (segment) {
+            // keep every final result, and the latest message as long as the segment has no final result yet
+            if (!segment.isEmpty() && !STResultMessage.isFinal(segment.get(segment.size() - 1))) {
+                segment.remove(segment.size() - 1);
+            }
+            segment.add(shifted);
+        }
+    }
+
+    @Override
+    public void writeAudio(STJob job, InputStream stream) throws IOException {
+        File spool = File.createTempFile("speechtranslate-segment-", ".audio");
+        spool.deleteOnExit();
+        FileUtils.copyInputStreamToFile(stream, spool);
+        synchronized (audio) {
+            audio.get(job.getIndex()).add(spool);
+        }
+    }
+
+    @Override
+    public void complete(STJob job) throws IOException {
+        if (pending.decrementAndGet() == 0) {
+            stitch(job.isSegment());
+        }
+    }
+
+    private void stitch(boolean segmented) throws IOException {
+        List<String> finals = new ArrayList<>();
+        for (List<String> segment : texts) {
+            finals.addAll(segment);
+        }
+        if (!finals.isEmpty()) {
+            target.writeText(parent, "[" + StringUtils.join(finals, ",") + "]");
+        }
+
+        List<File> spooled = new ArrayList<>();
+        synchronized (audio) {
+            for (List<File> segment : audio) {
+                spooled.addAll(segment);
+            }
+        }
+        if (!spooled.isEmpty()) {
+            try (InputStream in = concatenate(spooled)) {
+                target.writeAudio(parent, in);
+            } finally {
+                for (File f : spooled) {
+                    FileUtils.deleteQuietly(f);
+                }
+            }
+        }
+        // the scheduler counts files translated as a whole itself
+        if (segmented) STRunReport.getInstance().recordFile();
+        target.complete(parent);
+    }
+
+    // WAV segments are joined under a single header covering all sample data, anything else is appended as is.
+    // The service sends the data chunk last, so the rest of each file after its header is sample data.
+    private static InputStream concatenate(List<File> files) throws IOException {
+        Vector<InputStream> streams = new Vector<>();
+        STWaveHeader first = null;
+        long dataLength = 0;
+        try {
+            for (File f : files) {
+                InputStream in = new BufferedInputStream(new FileInputStream(f));
+                streams.add(in);
+                if (isWave(f)) {
+                    STWaveHeader header = STWaveHeader.read(in, f.length());
+                    if (first == null) first = header;
+                    dataLength += header.getDataLength();
+                }
+            }
+        } catch (IOException e) {
+            for (InputStream in : streams) {
+                IOUtils.closeQuietly(in);
+            }
+            throw e;
+        }
+        if (first != null) {
+            streams.add(0, new ByteArrayInputStream(STWaveHeader.build(first.getFormat(), dataLength)));
+        }
+        return new SequenceInputStream(streams.elements());
+    }
+
+    private static boolean isWave(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] magic = new byte[4];
+            return IOUtils.read(in, magic) == 4 && "RIFF".equals(new String(magic, StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a long recording into segments of roughly the target length, cutting in the middle of pauses.
+ *
+ * Once a segment has reached the target length it is cut at the longest pause seen since it reached half the target
+ * length. If no usable pause turns up the segment is cut hard at one and a half times the target length.
+ */
+public class STSegmenter {
+    private static final double MIN_PAUSE_SECONDS = 0.3;
+    private static final double MIN_LAST_SEGMENT_SECONDS = 1.0;
+
+    private final double targetSeconds;
+    private final double thresholdDb;
+
+    public STSegmenter(double targetSeconds, double thresholdDb) {
+        this.targetSeconds = targetSeconds;
+        this.thresholdDb = thresholdDb;
+    }
+
+    /**
+     * @param job the whole-file job to split
+     * @return the segments in order, or a list holding just the given job if the file is not long enough to split
+     * @throws IOException if reading the file fails
+     */
+    public List<STJob> split(STJob job) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        STAudioFormat format;
+        try (STAudioPipeline pipeline = STAudioPipeline.open(job)) {
+            format = pipeline.getSourceFormat();
+            if (pipeline.getDurationSeconds() < targetSeconds * 1.5) {
+                List<STJob> whole = new ArrayList<>();
+                whole.add(job);
+                return whole;
+            }
+            long bytesPerSecond = format.getBytesPerSecond();
+            long target = (long) (targetSeconds * bytesPerSecond);
+            long min = target / 2;
+            long max = target * 3 / 2;
+            long minPause = (long) (MIN_PAUSE_SECONDS * bytesPerSecond);
+
+            STVoiceActivityDetector vad = new STVoiceActivityDetector(format, thresholdDb);
+            int frame = vad.getFrameSize();
+            long segmentStart = 0;
+            long position = 0;
+            long pauseStart = -1;
+            long bestCut = -1;
+            long bestPause = 0;
+            byte[] chunk;
+            while ((chunk = pipeline.nextRawChunk()) != null) {
+                for (int p = 0; p < chunk.length; p += frame) {
+                    int length = Math.min(frame, chunk.length - p);
+                    if (vad.isSpeech(chunk, p, length)) {
+                        pauseStart = -1;
+                    } else {
+                        if (pauseStart < segmentStart) pauseStart = position;
+                        long pause = position + length - pauseStart;
+                        if (pauseStart - segmentStart >= min && pause > bestPause) {
+                            bestPause = pause;
+                            bestCut = align(pauseStart + pause / 2, format);
+                        }
+                    }
+                    position += length;
+
+                    long segmentLength = position - segmentStart;
+                    boolean cutAtPause = segmentLength >= target && bestPause >= minPause;
+                    if (cutAtPause || segmentLength >= max) {
+                        long cut = bestCut > segmentStart ? bestCut : position;
+                        ranges.add(new long[]{segmentStart, cut - segmentStart});
+                        segmentStart = cut;
+                        bestCut = -1;
+                        bestPause = 0;
+                    }
+                }
+            }
+            long rest = position - segmentStart;
+            if (!ranges.isEmpty() && rest < MIN_LAST_SEGMENT_SECONDS * bytesPerSecond) {
+                ranges.get(ranges.size() - 1)[1] += rest;
+            } else if (rest > 0) {
+                ranges.add(new long[]{segmentStart, rest});
+            }
+        }
+
+        List<STJob> segments = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] r = ranges.get(i);
+            long startFrames = r[0] / format.getFrameSize();
+            segments.add(job.segment(i, r[0], r[1], STOffsetMap.toTicks(startFrames, format.getSampleRate())));
+        }
+        return segments;
+    }
+
+    private static long align(long position, STAudioFormat format) {
+        return position - position % format.getFrameSize();
+    }
+}
@@ -2,13 +2,13 @@ package com.microsoft.speechtranslationcli;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.jetty.websocket.api.WriteCallback;
 
 import java.io.File;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
+import java.util.function.BooleanSupplier;
 
-public class STSendChunkStatus implements WriteCallback {
+public class STSendChunkStatus implements STConnection.Callback {
 
     private final Logger classLogger = LogManager.getLogger(STSendChunkStatus.class);
     private final STConfiguration configInstance = STConfiguration.getInstance();
@@ -17,11 +17,20 @@ public class STSendChunkStatus implements WriteCallback {
     private final File file;
     private int chunk;
     private int total;
+    private final int bytes;
+    private final Object event;
+    private final BooleanSupplier cancelled;
 
-    public STSendChunkStatus(File f, int chunk, int total) {
+    /**
+     * @param cancelled true once the session was given up on purpose, its failing writes are then expected
+     */
+    public STSendChunkStatus(File f, int chunk, int total, int bytes, BooleanSupplier cancelled) {
         file = f;
+        this.cancelled = cancelled;
         this.chunk = chunk;
         this.total = total;
+        this.bytes = bytes;
+        this.event = STFlightRecorder.beginChunk();
     }
 
     /**
@@ -33,8 +42,14 @@ public class STSendChunkStatus implements WriteCallback {
      */
     @Override
     public void writeFailed(Throwable x) {
+        STFlightRecorder.endChunk(event, file, chunk, bytes, false);
+        if (cancelled.getAsBoolean()) {
+            classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSendingCancelled"), file.getAbsolutePath()), x);
+            return;
+        }
         classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSendingFileFailed"), file.getAbsolutePath(), chunk + 1, total), x);
         classLogger.error(MessageFormat.format(stringsClient.getString("log4jSCSDebugSendingFileFailed"), file.getAbsolutePath(), chunk + 1, total));
+        STRunReport.getInstance().recordFailure(STExitCode.UPLOAD_ERROR);
         System.exit(STExitCode.UPLOAD_ERROR.getId());
     }
 
@@ -47,6 +62,7 @@ public class STSendChunkStatus implements WriteCallback {
      */
     @Override
     public void writeSuccess() {
+        STFlightRecorder.endChunk(event, file, chunk, bytes, true);
         if (chunk == total) {
             classLogger.trace(stringsClient.getString("log4jSCSTraceSendingFileDone") + file.getAbsolutePath());
         } else {
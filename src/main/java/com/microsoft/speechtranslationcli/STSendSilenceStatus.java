@@ -2,22 +2,25 @@ package com.microsoft.speechtranslationcli;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.jetty.websocket.api.WriteCallback;
 
 import java.io.File;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
-public class STSendSilenceStatus implements WriteCallback {
+public class STSendSilenceStatus implements STConnection.Callback {
 
     private final Logger classLogger = LogManager.getLogger(STSendSilenceStatus.class);
     private final STConfiguration configInstance = STConfiguration.getInstance();
     private final ResourceBundle stringsClient = configInstance.getStringsClient();
 
+    private final File file;
     private int length;
+    private final Object event;
 
-    public STSendSilenceStatus(int length) {
+    public STSendSilenceStatus(File f, int length) {
+        this.file = f;
         this.length = length;
+        this.event = STFlightRecorder.beginSilence();
     }
 
     /**
@@ -29,6 +32,7 @@ public class STSendSilenceStatus implements WriteCallback {
      */
     @Override
     public void writeFailed(Throwable x) {
+        STFlightRecorder.endSilence(event, file, length, false);
         classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSilenceWriteFailure"), length), x);
         classLogger.warn(MessageFormat.format(stringsClient.getString("log4jSCSDebugSilenceWriteFailure"), length));
         //System.exit(STExitCode.UPLOAD_ERROR.getId());
@@ -43,6 +47,7 @@ public class STSendSilenceStatus implements WriteCallback {
      */
     @Override
     public void writeSuccess() {
+        STFlightRecorder.endSilence(event, file, length, true);
         classLogger.trace(MessageFormat.format(stringsClient.getString("log4jSCSDebugSilenceWriteSuccess"), length));
     }
 }
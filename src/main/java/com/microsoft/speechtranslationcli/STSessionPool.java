@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Opening a session costs DNS, TCP, TLS and the websocket upgrade before the first chunk can go out. The pool keeps a
+ * small number of upgraded sessions open and idle, so the handshake for the next file runs while the current one is
+ * still uploading. Idle sessions are pinged before they reach the websocket idle timeout and replaced once closed.
+ *
+ * All sockets of a pool share a single STTransport.
+ */
+public class STSessionPool {
+    private final Logger classLogger = LogManager.getLogger(STSessionPool.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsClient = configInstance.getStringsClient();
+
+    private final STTransport transport;
+    private final boolean ownsTransport;
+    private final STRouteHealth health;
+    private final BlockingDeque<SpeechClientSocket> warm = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "session-pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final URI uri;
+    private final STQuota quota;
+    private final int size;
+    private final long maxIdle;
+    private final long connectTimeout;
+    private volatile STCapture capture = null;
+
+    /**
+     * @param uri  connection string every session of this pool uses
+     * @param size  number of idle sessions to keep ready, 0 disables pre-warming
+     * @param quota limits the connections opened by the pool
+     */
+    public STSessionPool(URI uri, int size, STQuota quota) {
+        this(STTransport.create(STConfiguration.getInstance().getString(STConfigurationDefault.CLI_TRANSPORT)), true,
+                uri, size, quota, new STRouteHealth());
+    }
+
+    /**
+     * @param transport the started transport shared with other pools, its lifecycle is up to the caller
+     * @param uri    connection string every session of this pool uses
+     * @param size   number of idle sessions to keep ready, 0 disables pre-warming
+     * @param quota  limits the connections opened by the pool
+     * @param health records handshake latencies and failures of this pool
+     */
+    public STSessionPool(STTransport transport, URI uri, int size, STQuota quota, STRouteHealth health) {
+        this(transport, false, uri, size, quota, health);
+    }
+
+    private STSessionPool(STTransport transport, boolean ownsTransport, URI uri, int size, STQuota quota, STRouteHealth health) {
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
+        this.health = health;
+        this.uri = uri;
+        this.quota = quota;
+        this.size = Math.max(0, size);
+        this.maxIdle = configInstance.getLong(STConfigurationDefault.WEBSOCKET_MAX_IDLE);
+        this.connectTimeout = configInstance.getLong(STConfigurationDefault.WEBSOCKET_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * @param capture records the sessions of this pool, set before starting the pool
+     */
+    public void setCapture(STCapture capture) {
+        this.capture = capture;
+    }
+
+    public void start() throws Exception {
+        if (ownsTransport) transport.start();
+        refill();
+        if (size > 0) {
+            long period = Math.max(1, maxIdle / 4);
+            maintenance.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Hands out an upgraded session, preferring a pre-warmed one, and starts warming up its replacement.
+     *
+     * @return a connected socket ready for SpeechClientSocket.translate()
+     * @throws IOException          if no session could be established within the connect timeout
+     * @throws InterruptedException if interrupted while waiting for a handshake
+     */
+    public SpeechClientSocket acquire() throws IOException, InterruptedException {
+        SpeechClientSocket socket;
+        while ((socket = warm.pollFirst()) != null) {
+            if (socket.awaitConnect(connectTimeout, TimeUnit.MILLISECONDS) && socket.isOpen()) {
+                classLogger.trace(MessageFormat.format(stringsClient.getString("log4jSSPTraceWarmSessionUsed"), String.valueOf(socket.getIdleMillis())));
+                health.recordSuccess(socket.getHandshakeMillis());
+                refill();
+                return socket;
+            }
+            classLogger.debug(stringsClient.getString("log4jSSPDebugWarmSessionDiscarded"));
+            // sessions closed after an idle period are no failure of the route, failed handshakes are
+            if (socket.getHandshakeMillis() < 0) health.recordFailure();
+            socket.close();
+        }
+
+        quota.acquireConnection();
+        try {
+            socket = connect();
+        } catch (IOException e) {
+            health.recordFailure();
+            throw e;
+        }
+        refill();
+        if (!socket.awaitConnect(connectTimeout, TimeUnit.MILLISECONDS) || !socket.isOpen()) {
+            socket.close();
+            health.recordFailure();
+            throw new IOException(MessageFormat.format(stringsClient.getString("log4jSSPConnectTimeout"), String.valueOf(connectTimeout)));
+        }
+        health.recordSuccess(socket.getHandshakeMillis());
+        return socket;
+    }
+
+    /**
+     * @return true if a pre-warmed session is ready or the quota allows opening one without waiting
+     */
+    public boolean isConnectionAvailable() {
+        return !warm.isEmpty() || quota.isConnectionAvailable();
+    }
+
+    public void stop() throws Exception {
+        maintenance.shutdownNow();
+        SpeechClientSocket socket;
+        while ((socket = warm.pollFirst()) != null) {
+            socket.close();
+        }
+        if (ownsTransport) transport.stop();
+    }
+
+    private synchronized void refill() {
+        while (warm.size() < size) {
+            if (!quota.tryAcquireConnection()) return;
+            try {
+                warm.offerLast(connect());
+                classLogger.trace(stringsClient.getString("log4jSSPTraceWarmingSession"));
+            } catch (IOException e) {
+                health.recordFailure();
+                classLogger.debug(stringsClient.getString("log4jSSPDebugWarmingFailed"), e);
+                return;
+            }
+        }
+    }
+
+    // the caller holds a connection of the quota, it is handed back once the socket is closed
+    private SpeechClientSocket connect() throws IOException {
+        SpeechClientSocket socket = new SpeechClientSocket(quota, uri.getHost());
+        socket.setCloseListener(quota::releaseConnection);
+        if (capture != null) socket.setCapture(capture, uri.toString());
+        try {
+            transport.connect(socket, uri);
+        } catch (IOException | RuntimeException e) {
+            quota.releaseConnection();
+            throw e;
+        }
+        return socket;
+    }
+
+    private void maintain() {
+        for (SpeechClientSocket socket : warm) {
+            if (socket.isClosed()) {
+                warm.remove(socket);
+                if (socket.getHandshakeMillis() < 0) health.recordFailure();
+            } else if (socket.isOpen() && socket.getIdleMillis() >= maxIdle / 2) {
+                socket.keepAlive();
+            }
+        }
+        refill();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Shortens every pause longer than the configured maximum. Half of the allowed silence is kept after the end of
+ * speech and half right before speech resumes, the middle of the pause is dropped. Every cut is recorded in an
+ * STOffsetMap so offsets reported by the service can be translated back to the original recording.
+ */
+public class STSilenceCompactor implements STAudioStage {
+    private final STAudioFormat format;
+    private final STVoiceActivityDetector vad;
+    private final int keepHead;
+    private final int keepTail;
+    private final STOffsetMap offsetMap = new STOffsetMap();
+
+    private byte[] carry = new byte[0];
+    private final ArrayDeque<byte[]> tail = new ArrayDeque<>();
+    private long tailFrames = 0;
+    private int silentFrames = 0;
+    private boolean cut = false;
+    private long inputFrames = 0;
+    private long outputFrames = 0;
+
+    /**
+     * @param format      format of the audio passing through, it is not changed
+     * @param maxSilence  longest pause in seconds that is kept as is
+     * @param thresholdDb voice activity energy threshold in dBFS
+     */
+    public STSilenceCompactor(STAudioFormat format, double maxSilence, double thresholdDb) {
+        this.format = format;
+        this.vad = new STVoiceActivityDetector(format, thresholdDb);
+        int keep = (int) Math.round(maxSilence / STVoiceActivityDetector.FRAME_SECONDS);
+        this.keepHead = keep / 2;
+        this.keepTail = keep - keepHead;
+    }
+
+    public STOffsetMap getOffsetMap() {
+        return offsetMap;
+    }
+
+    @Override
+    public STAudioFormat getOutputFormat() {
+        return format;
+    }
+
+    @Override
+    public byte[] process(byte[] chunk, int length) {
+        byte[] data = carry.length == 0 ? chunk : concat(carry, chunk, length);
+        int dataLength = carry.length == 0 ? length : carry.length + length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(dataLength);
+        int frameSize = vad.getFrameSize();
+        int p = 0;
+        for (; p + frameSize <= dataLength; p += frameSize) {
+            frame(data, p, frameSize, out);
+        }
+        carry = Arrays.copyOfRange(data, p, dataLength);
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] flush() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (carry.length > 0) {
+            frame(carry, 0, carry.length, out);
+            carry = new byte[0];
+        }
+        // trailing silence beyond the head is of no use to the service
+        tail.clear();
+        return out.toByteArray();
+    }
+
+    private void frame(byte[] data, int offset, int length, ByteArrayOutputStream out) {
+        long frames = length / format.getFrameSize();
+        if (vad.isSpeech(data, offset, length)) {
+            if (cut) {
+                offsetMap.add(STOffsetMap.toTicks(outputFrames, format.getSampleRate()),
+                        STOffsetMap.toTicks(inputFrames - tailFrames, format.getSampleRate()));
+            }
+            for (byte[] b : tail) {
+                out.write(b, 0, b.length);
+            }
+            outputFrames += tailFrames;
+            tail.clear();
+            tailFrames = 0;
+            silentFrames = 0;
+            cut = false;
+            out.write(data, offset, length);
+            outputFrames += frames;
+        } else if (++silentFrames <= keepHead) {
+            out.write(data, offset, length);
+            outputFrames += frames;
+        } else {
+            tail.addLast(Arrays.copyOfRange(data, offset, offset + length));
+            tailFrames += frames;
+            if (tail.size() > keepTail) {
+                tailFrames -= tail.removeFirst().length / format.getFrameSize();
+                cut = true;
+            }
+        }
+        inputFrames += frames;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b, int bLength) {
+        byte[] c = Arrays.copyOf(a, a.length + bLength);
+        System.arraycopy(b, 0, c, a.length, bLength);
+        return c;
+    }
+}
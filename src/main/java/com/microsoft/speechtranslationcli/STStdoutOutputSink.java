@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.io.IOUtils.copyLarge;
+
+/**
+ * Streams every text message to stdout as newline delimited JSON as soon as it arrives, e.g.
+ * {"file":"/in/call.wav","seq":3,"message":{"type":"final",...}}
+ *
+ * Text-to-speech audio goes to a FIFO, or other file, if one is configured, announced on stdout by an "audioBytes"
+ * line once written. Without a FIFO it is written to the output directory as usual.
+ *
+ * Files split with --segment are not streamed: their results are stitched first and printed as a single message, a
+ * JSON array of the final results of the file, once the last segment is done.
+ */
+public class STStdoutOutputSink implements STOutputSink {
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+
+    private final PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
+    private final ConcurrentMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    private final STFileOutputSink fileSink = new STFileOutputSink();
+    private final String audioFifo;
+    private OutputStream audioStream = null;
+
+    public STStdoutOutputSink() {
+        this.audioFifo = configInstance.getString(STConfigurationDefault.CLI_AUDIO_FIFO);
+    }
+
+    @Override
+    public void writeText(STJob job, String message) {
+        // newlines outside of strings are insignificant in JSON, inside strings they are always escaped
+        emit(job, "\"message\":" + StringUtils.replaceChars(message, "\r\n", "  "));
+    }
+
+    @Override
+    public void writeAudio(STJob job, InputStream audio) throws IOException {
+        if (StringUtils.isEmpty(audioFifo)) {
+            fileSink.writeAudio(job, audio);
+            return;
+        }
+        long bytes;
+        synchronized (this) {
+            // opening a FIFO blocks until a reader attaches, so it is only opened once audio arrives
+            if (audioStream == null) {
+                audioStream = new FileOutputStream(audioFifo);
+            }
+            bytes = copyLarge(audio, audioStream);
+            audioStream.flush();
+        }
+        emit(job, "\"audioBytes\":" + bytes);
+    }
+
+    @Override
+    public void complete(STJob job) throws IOException {
+        if (StringUtils.isEmpty(audioFifo)) {
+            fileSink.complete(job);
+        }
+    }
+
+    private void emit(STJob job, String payload) {
+        String file = job.getFile().getAbsolutePath();
+        long seq = sequences.computeIfAbsent(file, k -> new AtomicLong()).incrementAndGet();
+        StringBuilder line = new StringBuilder(payload.length() + file.length() + 48);
+        line.append("{\"file\":\"").append(STResultMessage.escape(file)).append("\",\"seq\":").append(seq);
+        line.append(',').append(payload).append("}\n");
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            out.write(bytes, 0, bytes.length);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import java.security.GeneralSecurityException;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The single SSLContext all connections of the process are opened with, whatever the transport. Its client session
+ * cache keeps the TLS sessions of earlier connections, so that connections to the same host resume them with an
+ * abbreviated handshake instead of a full one.
+ *
+ * Handshakes are timed from the creation of their SSLEngine and counted in the run report as full or resumed. A resumed
+ * handshake reuses a cached session, which was therefore created before the handshake started.
+ */
+public class STTlsContext {
+    private static final Logger classLogger = LogManager.getLogger(STTlsContext.class);
+
+    private static SSLContext shared = null;
+    private static final Map<SSLEngine, long[]> started = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private STTlsContext() {
+    }
+
+    /**
+     * @return the shared context, created with the configured session cache size and timeout on first use
+     * @throws GeneralSecurityException if no TLS implementation is available
+     */
+    public static synchronized SSLContext get() throws GeneralSecurityException {
+        if (shared == null) {
+            STConfiguration configInstance = STConfiguration.getInstance();
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+            SSLSessionContext sessions = context.getClientSessionContext();
+            sessions.setSessionCacheSize(configInstance.getInt(STConfigurationDefault.WEBSOCKET_TLS_SESSION_CACHE));
+            sessions.setSessionTimeout(configInstance.getInt(STConfigurationDefault.WEBSOCKET_TLS_SESSION_TTL));
+            shared = context;
+        }
+        return shared;
+    }
+
+    /**
+     * @param engine a client engine of the shared context, about to start its handshake
+     */
+    public static void handshakeStarted(SSLEngine engine) {
+        started.put(engine, new long[]{System.currentTimeMillis(), System.nanoTime()});
+    }
+
+    /**
+     * Records the handshake of an engine announced with {@link #handshakeStarted(SSLEngine)}.
+     *
+     * @param engine an engine whose handshake has completed
+     */
+    public static void handshakeFinished(SSLEngine engine) {
+        long[] start = started.remove(engine);
+        if (start == null) return;
+        long millis = (System.nanoTime() - start[1]) / 1_000_000;
+        boolean resumed = engine.getSession().getCreationTime() < start[0];
+        STRunReport.getInstance().recordTlsHandshake(resumed, millis);
+        if (classLogger.isTraceEnabled()) {
+            classLogger.trace(MessageFormat.format(STConfiguration.getInstance().getStringsClient().getString(
+                    resumed ? "log4jSTLTraceResumed" : "log4jSTLTraceFull"), engine.getPeerHost(), String.valueOf(millis)));
+        }
+    }
+
+    /**
+     * @param engine an engine whose handshake has failed, it is not counted
+     */
+    public static void handshakeFailed(SSLEngine engine) {
+        started.remove(engine);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket for a limit of a number of units per interval, e.g. audio seconds per minute.
+ *
+ * A plain bucket holding a full interval's worth of tokens allows twice the limit within one interval: the full bucket
+ * plus what refills meanwhile. This bucket only holds a small burst and refills at the remaining rate, so no window of
+ * one interval ever sees more than the limit.
+ */
+public class STTokenBucket {
+    static final double BURST_FRACTION = 0.1;
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param limit           units allowed per interval
+     * @param intervalSeconds length of the interval
+     */
+    public STTokenBucket(double limit, double intervalSeconds) {
+        this.capacity = limit * BURST_FRACTION;
+        this.tokensPerNano = limit * (1 - BURST_FRACTION) / (intervalSeconds * TimeUnit.SECONDS.toNanos(1));
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the units are available. Requests larger than the burst wait for a full bucket and leave it in debt.
+     *
+     * @param units units to take
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire(double units) throws InterruptedException {
+        double needed = Math.min(units, capacity);
+        refill();
+        while (tokens < needed) {
+            long waitNanos = (long) Math.ceil((needed - tokens) / tokensPerNano);
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            refill();
+        }
+        tokens -= units;
+    }
+
+    /**
+     * @param units units to take
+     * @return true if the units were available and taken
+     */
+    public synchronized boolean tryAcquire(double units) {
+        refill();
+        if (tokens < Math.min(units, capacity)) return false;
+        tokens -= units;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * On-disk inverted index over the final results of a run, so utterances are found without scanning result files.
+ *
+ * Utterances are appended to utterances.dat, their start offsets to utterances.off, which makes the position in the
+ * offsets file the utterance id. Postings are buffered and written as immutable segments segment-NNNNN.seg; once there
+ * are more than MAX_SEGMENTS they are merged into one. Every term of the recognition (source) and translation (target)
+ * text has a posting per occurrence, encoded in a long as utterance id, field and position, so phrases are found by
+ * matching consecutive positions.
+ *
+ * Segment: magic "STX1", postings per term (count, postings), dictionary (term count, per term its UTF term and the
+ * offset of its postings), offset of the dictionary.
+ *
+ * Only one process may write to an index directory at a time, readers may search while it is written.
+ */
+public class STTranscriptIndex implements Closeable {
+    public static final int FIELD_SOURCE = 0;
+    public static final int FIELD_TARGET = 1;
+    public static final int FIELD_ANY = -1;
+
+    private static final byte[] MAGIC = "STX1".getBytes(StandardCharsets.US_ASCII);
+    private static final String UTTERANCES = "utterances.dat";
+    private static final String OFFSETS = "utterances.off";
+    private static final String LOCK = "index.lock";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAX_POSITION = (1 << 24) - 1;
+    private static final int FLUSH_UTTERANCES = 4096;
+    private static final long FLUSH_MILLIS = 10000;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final File directory;
+    private RandomAccessFile lockFile = null;
+    private FileLock lock = null;
+    private DataOutputStream utterances = null;
+    private DataOutputStream offsets = null;
+    private long utteranceBytes;
+    private int nextId;
+    private final TreeMap<String, List<Long>> buffer = new TreeMap<>();
+    private int buffered = 0;
+    private long firstBuffered;
+
+    /**
+     * A matching utterance.
+     */
+    public static class Hit {
+        private final int id;
+        private final String file;
+        private final long offsetTicks;
+        private final long sizeTicks;
+        private final String source;
+        private final String target;
+
+        Hit(int id, String file, long offsetTicks, long sizeTicks, String source, String target) {
+            this.id = id;
+            this.file = file;
+            this.offsetTicks = offsetTicks;
+            this.sizeTicks = sizeTicks;
+            this.source = source;
+            this.target = target;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return start of the utterance in the input file, in ticks of 100ns
+         */
+        public long getOffsetTicks() {
+            return offsetTicks;
+        }
+
+        public long getSizeTicks() {
+            return sizeTicks;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+    }
+
+    /**
+     * @param directory directory holding the index, created when the first utterance is added
+     */
+    public STTranscriptIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Splits text into lower case terms of letters and digits. Ideographs are terms of their own, so phrases of
+     * languages written without spaces are found as sequences of characters.
+     *
+     * @param text recognized or translated text
+     * @return the terms in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isIdeographic(c)) {
+                if (term.length() > 0) terms.add(term.toString());
+                term.setLength(0);
+                terms.add(new String(Character.toChars(c)));
+            } else if (Character.isLetterOrDigit(c)) {
+                term.appendCodePoint(Character.toLowerCase(c));
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) terms.add(term.toString());
+        return terms;
+    }
+
+    /**
+     * Adds one utterance. Its postings become searchable with the next flush.
+     *
+     * @param file        the input file the utterance belongs to
+     * @param offsetTicks start of the utterance in the input file, in ticks of 100ns
+     * @param sizeTicks   duration of the utterance, in ticks of 100ns
+     * @param source      the recognized text
+     * @param target      the translated text
+     * @throws IOException if the index cannot be written
+     */
+    public synchronized void add(String file, long offsetTicks, long sizeTicks, String source, String target) throws IOException {
+        openForAppend();
+        int id = nextId++;
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(record);
+        writeString(out, file);
+        out.writeLong(offsetTicks);
+        out.writeLong(sizeTicks);
+        writeString(out, source == null ? "" : source);
+        writeString(out, target == null ? "" : target);
+        offsets.writeLong(utteranceBytes);
+        record.writeTo(utterances);
+        utteranceBytes += record.size();
+
+        addPostings(id, FIELD_SOURCE, source);
+        addPostings(id, FIELD_TARGET, target);
+        if (buffered++ == 0) firstBuffered = System.currentTimeMillis();
+        if (buffered >= FLUSH_UTTERANCES || System.currentTimeMillis() - firstBuffered >= FLUSH_MILLIS) flush();
+    }
+
+    /**
+     * Writes the buffered postings as a new segment.
+     *
+     * @throws IOException if the segment cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (buffered == 0) return;
+        // postings only ever refer to utterances that are on disk
+        utterances.flush();
+        offsets.flush();
+        writeSegment(nextSegment(), buffer);
+        buffer.clear();
+        buffered = 0;
+        List<File> segments = segments();
+        if (segments.size() > MAX_SEGMENTS) merge(segments);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (utterances == null) return;
+        flush();
+        utterances.close();
+        offsets.close();
+        lock.release();
+        lockFile.close();
+        utterances = null;
+    }
+
+    /**
+     * Finds the utterances containing every phrase.
+     *
+     * @param phrases the phrases to look for, each a sequence of terms that must appear in this order
+     * @param field   FIELD_SOURCE, FIELD_TARGET or FIELD_ANY
+     * @param limit   maximum number of hits returned
+     * @return the matching utterances in the order they were indexed
+     * @throws IOException if the index cannot be read
+     */
+    public List<Hit> search(List<String> phrases, int field, int limit) throws IOException {
+        Set<String> terms = new HashSet<>();
+        List<List<String>> tokenized = new ArrayList<>();
+        for (String phrase : phrases) {
+            List<String> phraseTerms = tokenize(phrase);
+            if (phraseTerms.isEmpty()) continue;
+            tokenized.add(phraseTerms);
+            terms.addAll(phraseTerms);
+        }
+        if (tokenized.isEmpty()) return Collections.emptyList();
+
+        Map<String, Set<Long>> postings = new HashMap<>();
+        for (File segment : segments()) {
+            readPostings(segment, terms, postings);
+        }
+
+        Set<Integer> ids = null;
+        for (List<String> phraseTerms : tokenized) {
+            Set<Integer> matches = matchPhrase(phraseTerms, postings, field);
+            if (ids == null) {
+                ids = matches;
+            } else {
+                ids.retainAll(matches);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        if (ids.isEmpty()) return hits;
+        try (RandomAccessFile offsetsIn = new RandomAccessFile(new File(directory, OFFSETS), "r");
+             RandomAccessFile utterancesIn = new RandomAccessFile(new File(directory, UTTERANCES), "r")) {
+            for (int id : new TreeSet<>(ids)) {
+                if (hits.size() >= limit) break;
+                offsetsIn.seek((long) id * 8);
+                utterancesIn.seek(offsetsIn.readLong());
+                hits.add(new Hit(id, readString(utterancesIn), utterancesIn.readLong(), utterancesIn.readLong(),
+                        readString(utterancesIn), readString(utterancesIn)));
+            }
+        }
+        return hits;
+    }
+
+    static long posting(int id, int field, int position) {
+        return ((long) id << 32) | ((long) field << 24) | Math.min(position, MAX_POSITION);
+    }
+
+    private static Set<Integer> matchPhrase(List<String> phraseTerms, Map<String, Set<Long>> postings, int field) {
+        Set<Integer> ids = new HashSet<>();
+        Set<Long> first = postings.getOrDefault(phraseTerms.get(0), Collections.emptySet());
+        for (long start : first) {
+            int startField = (int) (start >>> 24) & 0xFF;
+            if (field != FIELD_ANY && startField != field) continue;
+            boolean match = true;
+            for (int k = 1; k < phraseTerms.size() && match; k++) {
+                match = postings.getOrDefault(phraseTerms.get(k), Collections.emptySet()).contains(start + k);
+            }
+            if (match) ids.add((int) (start >>> 32));
+        }
+        return ids;
+    }
+
+    private void addPostings(int id, int field, String text) {
+        List<String> terms = tokenize(text);
+        for (int position = 0; position < terms.size(); position++) {
+            buffer.computeIfAbsent(terms.get(position), k -> new ArrayList<>()).add(posting(id, field, position));
+        }
+    }
+
+    // the lock keeps a second writer out instead of merging, which is why --queue rejects --index
+    private void openForAppend() throws IOException {
+        if (utterances != null) return;
+        Files.createDirectories(directory.toPath());
+        lockFile = new RandomAccessFile(new File(directory, LOCK), "rw");
+        lock = lockFile.getChannel().tryLock();
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Index is being written by another process: " + directory);
+        }
+        File offsetsFile = new File(directory, OFFSETS);
+        // an offset torn by an interrupted run is dropped, its utterance is simply not found
+        long completeOffsets = offsetsFile.length() / 8 * 8;
+        if (completeOffsets != offsetsFile.length()) {
+            try (RandomAccessFile truncate = new RandomAccessFile(offsetsFile, "rw")) {
+                truncate.setLength(completeOffsets);
+            }
+        }
+        nextId = (int) (completeOffsets / 8);
+        utteranceBytes = new File(directory, UTTERANCES).length();
+        utterances = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, UTTERANCES), true)));
+        offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile, true)));
+    }
+
+    private List<File> segments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return new ArrayList<>();
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    private File nextSegment() {
+        List<File> segments = segments();
+        int number = 0;
+        if (!segments.isEmpty()) {
+            String last = segments.get(segments.size() - 1).getName();
+            number = Integer.parseInt(last.substring(SEGMENT_PREFIX.length(), last.length() - SEGMENT_SUFFIX.length())) + 1;
+        }
+        return new File(directory, String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // segments are written under a temporary name, readers never see a partial segment
+    private static void writeSegment(File segment, TreeMap<String, ? extends Iterable<Long>> postings) throws IOException {
+        File temp = new File(segment.getParentFile(), segment.getName() + ".tmp");
+        Map<String, Long> dictionary = new TreeMap<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            for (Map.Entry<String, ? extends Iterable<Long>> term : postings.entrySet()) {
+                dictionary.put(term.getKey(), (long) out.size());
+                List<Long> list = new ArrayList<>();
+                term.getValue().forEach(list::add);
+                out.writeInt(list.size());
+                for (long posting : list) {
+                    out.writeLong(posting);
+                }
+            }
+            long dictionaryOffset = out.size();
+            out.writeInt(dictionary.size());
+            for (Map.Entry<String, Long> entry : dictionary.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeLong(dictionaryOffset);
+        }
+        Files.move(temp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void merge(List<File> segments) throws IOException {
+        TreeMap<String, TreeSet<Long>> merged = new TreeMap<>();
+        for (File segment : segments) {
+            readSegment(segment, null, (term, posting) -> merged.computeIfAbsent(term, k -> new TreeSet<>()).add(posting));
+        }
+        writeSegment(nextSegment(), merged);
+        for (File segment : segments) {
+            Files.deleteIfExists(segment.toPath());
+        }
+    }
+
+    private interface PostingConsumer {
+        void accept(String term, long posting);
+    }
+
+    private static void readPostings(File segment, Set<String> terms, Map<String, Set<Long>> postings) throws IOException {
+        readSegment(segment, terms, (term, posting) -> postings.computeIfAbsent(term, k -> new HashSet<>()).add(posting));
+    }
+
+    // reads the postings of the given terms, or of all terms if null
+    private static void readSegment(File segment, Set<String> terms, PostingConsumer consumer) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(segment, "r")) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not an index segment: " + segment);
+            in.seek(in.length() - 8);
+            long dictionaryOffset = in.readLong();
+            Map<String, Long> selected = new TreeMap<>();
+            // the channel is closed with the file
+            DataInputStream dictionary = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(in.getChannel().position(dictionaryOffset)), 65536));
+            int termCount = dictionary.readInt();
+            for (int i = 0; i < termCount; i++) {
+                String term = dictionary.readUTF();
+                long offset = dictionary.readLong();
+                if (terms == null || terms.contains(term)) selected.put(term, offset);
+            }
+            for (Map.Entry<String, Long> term : selected.entrySet()) {
+                in.seek(term.getValue());
+                int count = in.readInt();
+                byte[] bytes = new byte[count * 8];
+                in.readFully(bytes);
+                DataInputStream postings = new DataInputStream(new ByteArrayInputStream(bytes));
+                for (int i = 0; i < count; i++) {
+                    consumer.accept(term.getKey(), postings.readLong());
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(RandomAccessFile in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
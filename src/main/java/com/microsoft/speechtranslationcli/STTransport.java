@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Opens the websocket connections of SpeechClientSocket instances. A transport reports back to the socket through
+ * onConnect, onMessage, onError and onClose, the same way for every implementation.
+ */
+public interface STTransport {
+
+    /**
+     * @param name one of the STValidate.Transport option values
+     * @return a new, not yet started transport
+     */
+    static STTransport create(String name) {
+        if (STValidate.Transport.NIO.getOptionValue().equals(name)) return new STNioTransport();
+        return new STJettyTransport();
+    }
+
+    void start() throws Exception;
+
+    /**
+     * Starts connecting and returns without waiting for the upgrade.
+     *
+     * @param socket told once the upgrade completed or failed
+     * @param uri    the connection string, ws or wss
+     * @throws IOException if connecting cannot even be started
+     */
+    void connect(SpeechClientSocket socket, URI uri) throws IOException;
+
+    void stop() throws Exception;
+}
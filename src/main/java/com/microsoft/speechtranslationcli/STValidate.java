@@ -28,39 +28,156 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.MessageFormat;
 import java.util.ResourceBundle;
-import java.util.function.Consumer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class STValidate {
     private static final Logger classLogger = LogManager.getLogger(STValidate.class);
     private static final STConfiguration configInstance = STConfiguration.getInstance();
     private static final ResourceBundle stringsCli = configInstance.getStringsCli();
 
-    public static void validateFiles(File[] inputFiles) throws STValidationException {
-        new ArrayList<File>(Arrays.asList(inputFiles)).forEach(new Consumer<File>() {
-            public void accept(File file) {
-                classLogger.trace(stringsCli.getString("log4jStvTraceFileValidation") + file.getAbsolutePath());
-                if(!file.exists()){
-                    throw new STValidationException(file.getAbsolutePath(),
-                            stringsCli.getString("StvValidationFileDoesNotExist"), true);
-                } else if(!file.canRead()) {
-                    throw new STValidationException(file.getAbsolutePath(),
-                            stringsCli.getString("StvValidationFileCannotRead"), true);
-                } else if(file.isDirectory()) {
-                    throw new STValidationException(file.getAbsolutePath(),
-                            stringsCli.getString("StvValidationFileIsDirectory"), true);
-                } else if(file.length() == 0) {
-                    throw new STValidationException(file.getAbsolutePath(),
-                            stringsCli.getString("StvValidationFileLengthZero"), true);
-                } else if(file.isHidden()) {
-                    throw new STValidationException(file.getAbsolutePath(),
-                            stringsCli.getString("StvValidationFileIsHidden"), true);
+    /**
+     * Validates all input files at once: each file is checked with a single attribute read and, unless the input is
+     * raw PCM, its WAV header is parsed. Files are validated in parallel, all failures are reported together.
+     *
+     * @param inputFiles   the files to validate
+     * @param probeHeaders parse the WAV header of each file
+     * @return the parsed header per input file, null entries if headers were not probed
+     * @throws STValidationException listing every file that failed validation
+     */
+    public static STWaveHeader[] validateFiles(File[] inputFiles, boolean probeHeaders) throws STValidationException {
+        STWaveHeader[] headers = new STWaveHeader[inputFiles.length];
+        String[] errors = new String[inputFiles.length];
+        // stat calls and header reads wait on storage, not on the CPU
+        ForkJoinPool pool = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        try {
+            pool.submit(() -> IntStream.range(0, inputFiles.length).parallel().forEach(i -> {
+                try {
+                    headers[i] = validateFile(inputFiles[i], probeHeaders);
+                } catch (STValidationException e) {
+                    errors[i] = e.getOptionOrParameter() + ": " + e.getMessage().trim();
                 }
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new STValidationException(e.toString(), stringsCli.getString("StvValidationFilesInterrupted"), true);
+        } finally {
+            pool.shutdown();
+        }
+
+        StringBuilder failures = new StringBuilder();
+        int failed = 0;
+        for (String error : errors) {
+            if (error == null) continue;
+            failures.append(System.lineSeparator()).append("  ").append(error);
+            failed++;
+        }
+        if (failed > 0) {
+            throw new STValidationException(failures.toString(), MessageFormat.format(
+                    stringsCli.getString("StvValidationFilesFailed"), String.valueOf(failed), String.valueOf(inputFiles.length)), true);
+        }
+        return headers;
+    }
+
+    /**
+     * Validates a single input file like validateFiles does, on the calling thread.
+     *
+     * @param file        the file to validate
+     * @param probeHeader parse the WAV header, false for raw input
+     * @return the WAV header of the file, null if not probed
+     * @throws STValidationException if the file failed validation
+     */
+    public static STWaveHeader validateFile(File file, boolean probeHeader) throws STValidationException {
+        classLogger.trace(stringsCli.getString("log4jStvTraceFileValidation") + file.getAbsolutePath());
+        Path path = file.toPath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new STValidationException(file.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileDoesNotExist"), true);
+        } catch (IOException e) {
+            throw new STValidationException(file.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileCannotRead"), true);
+        }
+        if (attributes.isDirectory()) {
+            throw new STValidationException(file.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileIsDirectory"), true);
+        } else if (attributes.size() == 0) {
+            throw new STValidationException(file.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileLengthZero"), true);
+        } else if (file.isHidden()) {
+            throw new STValidationException(file.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileIsHidden"), true);
+        }
+
+        // opening the file is the read permission check
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 512)) {
+            if (!probeHeader) return null;
+            STWaveHeader header;
+            try {
+                header = STWaveHeader.read(in, attributes.size());
+            } catch (IOException e) {
+                throw new STValidationException(file.getAbsolutePath(),
+                        stringsCli.getString("StvValidationFileNotWave") + e.getMessage(), true);
             }
-        });
+            if (header.getDataLength() <= 0) {
+                throw new STValidationException(file.getAbsolutePath(),
+                        stringsCli.getString("StvValidationFileNoAudio"), true);
+            }
+            return header;
+        } catch (IOException e) {
+            throw new STValidationException(file.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileCannotRead"), true);
+        }
+    }
+
+    public static void validateArchive(File archive) throws STValidationException {
+        if (!archive.exists()) {
+            throw new STValidationException(archive.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileDoesNotExist"), true);
+        } else if (archive.isDirectory()) {
+            throw new STValidationException(archive.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileIsDirectory"), true);
+        } else if (!archive.canRead()) {
+            throw new STValidationException(archive.getAbsolutePath(),
+                    stringsCli.getString("StvValidationFileCannotRead"), true);
+        }
+    }
+
+    /**
+     * @param entry       an input read from an archive
+     * @param probeHeader parse the WAV header, false for raw input
+     * @return the WAV header of the entry, null if not probed
+     * @throws STValidationException if the entry is empty or not a WAV file with audio
+     */
+    public static STWaveHeader validateEntry(STJob entry, boolean probeHeader) throws STValidationException {
+        classLogger.trace(stringsCli.getString("log4jStvTraceFileValidation") + entry);
+        if (entry.getSize() == 0) {
+            throw new STValidationException(entry.toString(), stringsCli.getString("StvValidationFileLengthZero"), true);
+        }
+        if (!probeHeader) return null;
+        STWaveHeader header;
+        try (InputStream in = entry.openStream()) {
+            header = STWaveHeader.read(in, entry.getSize());
+        } catch (IOException e) {
+            throw new STValidationException(entry.toString(),
+                    stringsCli.getString("StvValidationFileNotWave") + e.getMessage(), true);
+        }
+        if (header.getDataLength() <= 0) {
+            throw new STValidationException(entry.toString(), stringsCli.getString("StvValidationFileNoAudio"), true);
+        }
+        return header;
     }
 
     public static void validateOutputDir(File outputDir) throws STValidationException {
@@ -82,6 +199,151 @@ public class STValidate {
         }
     }
 
+    public static void validateRawFormat(String rawFormat) throws STValidationException {
+        if (StringUtils.isEmpty(rawFormat)) return;
+        try {
+            STAudioFormat.parse(rawFormat);
+        } catch (IllegalArgumentException e) {
+            throw new STValidationException(rawFormat, stringsCli.getString("StvValidationInvalidRawFormat"), true);
+        }
+    }
+
+    public static void validateTargetFormat(int sampleRate, int bits) throws STValidationException {
+        if (sampleRate < 8000 || sampleRate > 192000) {
+            throw new STValidationException(String.valueOf(sampleRate),
+                    stringsCli.getString("StvValidationInvalidSampleRate"), true);
+        } else if (!STAudioFormat.pcm(sampleRate, bits).isSupported()) {
+            throw new STValidationException(String.valueOf(bits),
+                    stringsCli.getString("StvValidationInvalidBits"), true);
+        }
+    }
+
+    public static void validateParallel(int parallel) throws STValidationException {
+        if (parallel < 1) {
+            throw new STValidationException(String.valueOf(parallel),
+                    stringsCli.getString("StvValidationInvalidParallel"), true);
+        }
+    }
+
+    public static void validateAdaptive(int floor, int ceiling, double window) throws STValidationException {
+        if (floor < 1) {
+            throw new STValidationException(String.valueOf(floor), stringsCli.getString("StvValidationInvalidParallel"), true);
+        }
+        if (ceiling < floor) {
+            throw new STValidationException(String.valueOf(ceiling), stringsCli.getString("StvValidationInvalidParallelMax"), true);
+        }
+        if (window < 1) {
+            throw new STValidationException(String.valueOf(window), stringsCli.getString("StvValidationInvalidAdaptiveWindow"), true);
+        }
+    }
+
+    public static void validateRoutes(String routes) throws STValidationException {
+        for (String declaration : StringUtils.split(routes, ';')) {
+            try {
+                STRoute.parse(declaration, "", "");
+            } catch (IllegalArgumentException e) {
+                throw new STValidationException(declaration, stringsCli.getString("StvValidationInvalidRoute"), true);
+            }
+        }
+    }
+
+    public static void validateQuotaInterval(double quotaInterval) throws STValidationException {
+        if (quotaInterval <= 0) {
+            throw new STValidationException(String.valueOf(quotaInterval),
+                    stringsCli.getString("StvValidationInvalidQuotaInterval"), true);
+        }
+    }
+
+    public static void validateMemoryBudget(long memoryBudget) throws STValidationException {
+        if (memoryBudget < 1048576) {
+            throw new STValidationException(String.valueOf(memoryBudget),
+                    stringsCli.getString("StvValidationInvalidMemoryBudget"), true);
+        }
+    }
+
+    public static void validateSegmentSeconds(double segmentSeconds) throws STValidationException {
+        if (segmentSeconds != 0 && segmentSeconds < 5) {
+            throw new STValidationException(String.valueOf(segmentSeconds),
+                    stringsCli.getString("StvValidationInvalidSegmentSeconds"), true);
+        }
+    }
+
+    public static void validateShard(String shard) throws STValidationException {
+        if (shard.isEmpty()) return;
+        String[] parts = StringUtils.split(shard, '/');
+        try {
+            if (parts.length == 2 && Integer.parseInt(parts[0]) >= 0 && Integer.parseInt(parts[0]) < Integer.parseInt(parts[1])) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new STValidationException(shard, stringsCli.getString("StvValidationInvalidShard"), true);
+    }
+
+    public static void validateQueueLease(double leaseSeconds) throws STValidationException {
+        if (leaseSeconds < 5) {
+            throw new STValidationException(String.valueOf(leaseSeconds),
+                    stringsCli.getString("StvValidationInvalidQueueLease"), true);
+        }
+    }
+
+    public static void validateQueue(String queue, String outputSink, String index) throws STValidationException {
+        if (queue.isEmpty()) return;
+        // pack files and the index are only guarded against threads of one process, not against other processes
+        if (OutputSink.PACK.getOptionValue().equals(outputSink)) {
+            throw new STValidationException(outputSink, stringsCli.getString("StvValidationQueuePack"), true);
+        }
+        if (!index.isEmpty()) {
+            throw new STValidationException(index, stringsCli.getString("StvValidationQueueIndex"), true);
+        }
+    }
+
+    public static void validateWatch(String watch, double settleSeconds, File outputDir, String outputSink)
+            throws STValidationException {
+        if (watch.isEmpty()) return;
+        if (!new File(watch).isDirectory()) {
+            throw new STValidationException(watch, stringsCli.getString("StvValidationInvalidWatch"), true);
+        }
+        // the results written to the watched directory would be picked up as new recordings
+        if (!OutputSink.STDOUT.getOptionValue().equals(outputSink)
+                && new File(watch).getAbsoluteFile().toPath().normalize().equals(outputDir.getAbsoluteFile().toPath().normalize())) {
+            throw new STValidationException(watch, stringsCli.getString("StvValidationWatchIsOutputDir"), true);
+        }
+        if (settleSeconds < 0.05) {
+            throw new STValidationException(String.valueOf(settleSeconds),
+                    stringsCli.getString("StvValidationInvalidWatchSettle"), true);
+        }
+    }
+
+    public static void validateReplay(String replay, double speed) throws STValidationException {
+        if (replay.isEmpty()) return;
+        if (!new File(replay).isFile() || !new File(replay).canRead()) {
+            throw new STValidationException(replay, stringsCli.getString("StvValidationInvalidReplayFile"), true);
+        }
+        if (speed <= 0) {
+            throw new STValidationException(String.valueOf(speed),
+                    stringsCli.getString("StvValidationInvalidReplaySpeed"), true);
+        }
+    }
+
+    public static void validateHedge(double budget, double percentile) throws STValidationException {
+        if (budget < 0 || budget > 1) {
+            throw new STValidationException(String.valueOf(budget), stringsCli.getString("StvValidationInvalidHedgeBudget"), true);
+        }
+        if (percentile < 50 || percentile > 100) {
+            throw new STValidationException(String.valueOf(percentile),
+                    stringsCli.getString("StvValidationInvalidHedgePercentile"), true);
+        }
+    }
+
+    public static void validateMaxSilence(double maxSilence) throws STValidationException {
+        if (maxSilence < 0.1) {
+            throw new STValidationException(String.valueOf(maxSilence),
+                    stringsCli.getString("StvValidationInvalidMaxSilence"), true);
+        }
+    }
+
     // TODO: validate filename suffix for output files with [^-_.A-Za-z0-9]
 
     private static <E extends Enum<E>> void validateStringInEnum(final Class<E> enumClass, String s)
@@ -115,6 +377,27 @@ public class STValidate {
         }
     }
 
+    public static void validateOutputSink(String outputSink) throws STValidationException {
+        validateStringInEnum(OutputSink.class, outputSink);
+    }
+
+    public static void validateSchedule(String schedule) throws STValidationException {
+        validateStringInEnum(Schedule.class, schedule);
+    }
+
+    public static void validateTransport(String transport) throws STValidationException {
+        validateStringInEnum(Transport.class, transport);
+    }
+
+    public static void validateTlsSessionCache(int size, int seconds) throws STValidationException {
+        if (size < 1) {
+            throw new STValidationException(String.valueOf(size), stringsCli.getString("StvValidationInvalidTlsSessionCache"), true);
+        }
+        if (seconds < 1) {
+            throw new STValidationException(String.valueOf(seconds), stringsCli.getString("StvValidationInvalidTlsSessionTtl"), true);
+        }
+    }
+
     public static void validateFeature(String feature) throws STValidationException {
         String[] featureSplits = StringUtils.split(feature, ",");
         if (featureSplits == null || featureSplits.length == 0) return;
@@ -240,4 +523,72 @@ public class STValidate {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    enum OutputSink implements Optionable {
+        FILE ("file"),
+        STDOUT ("stdout"),
+        PACK ("pack"),
+        UNSET (null);
+
+        private final String outputSink;
+
+        OutputSink(String s) {
+            this.outputSink = s;
+        }
+
+        public String getOptionValue() {
+            return outputSink;
+        }
+
+        @Override
+        public boolean equalsUnset(String optionToTest) {
+            if (OutputSink.UNSET.outputSink == optionToTest) return true;
+            return false;
+        }
+    }
+
+    enum Transport implements Optionable {
+        JETTY ("jetty"),
+        NIO ("nio"),
+        UNSET (null);
+
+        private final String transport;
+
+        Transport(String s) {
+            this.transport = s;
+        }
+
+        public String getOptionValue() {
+            return transport;
+        }
+
+        @Override
+        public boolean equalsUnset(String optionToTest) {
+            if (Transport.UNSET.transport == optionToTest) return true;
+            return false;
+        }
+    }
+
+    enum Schedule implements Optionable {
+        INPUT ("input"),
+        LONGEST ("longest"),
+        SHORTEST ("shortest"),
+        UNSET (null);
+
+        private final String schedule;
+
+        Schedule(String s) {
+            this.schedule = s;
+        }
+
+        public String getOptionValue() {
+            return schedule;
+        }
+
+        @Override
+        public boolean equalsUnset(String optionToTest) {
+            if (Schedule.UNSET.schedule == optionToTest) return true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+/**
+ * Frame based voice activity detector using short-time energy and zero-crossing rate.
+ *
+ * A frame counts as speech when its energy is above both the configured threshold and an adaptive noise floor, or when
+ * it is only slightly quieter but has the high zero-crossing rate of unvoiced consonants. A hangover keeps the detector
+ * in the speech state for a short while after the last speech frame so word endings are not cut off.
+ */
+public class STVoiceActivityDetector {
+    public static final double FRAME_SECONDS = 0.02;
+
+    private static final double NOISE_MARGIN_DB = 9.0;
+    private static final double FRICATIVE_MARGIN_DB = 6.0;
+    private static final double FRICATIVE_ZCR = 0.25;
+    private static final double NOISE_FLOOR_RISE = 1.002;
+    private static final int HANGOVER_FRAMES = 10;
+
+    private final STAudioFormat format;
+    private final int frameSize;
+    private final double thresholdDb;
+
+    private double noiseFloor = 0;
+    private int hangover = 0;
+
+    /**
+     * @param format      format of the samples passed to isSpeech()
+     * @param thresholdDb absolute energy threshold in dBFS below which a frame is never speech
+     */
+    public STVoiceActivityDetector(STAudioFormat format, double thresholdDb) {
+        this.format = format;
+        this.frameSize = Math.max(1, (int) Math.round(format.getSampleRate() * FRAME_SECONDS)) * format.getFrameSize();
+        this.thresholdDb = thresholdDb;
+        this.noiseFloor = Math.pow(10, thresholdDb / 20);
+    }
+
+    /**
+     * @return number of bytes in one analysis frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Classifies one analysis frame. Frames have to be passed in stream order, the detector keeps state.
+     *
+     * @param b      sample data
+     * @param offset offset of the frame within b
+     * @param length length of the frame, normally getFrameSize()
+     * @return true if the frame contains speech
+     */
+    public boolean isSpeech(byte[] b, int offset, int length) {
+        int channels = format.getChannels();
+        int bytes = format.getBytesPerSample();
+        int frames = length / format.getFrameSize();
+        if (frames == 0) return hangover > 0;
+
+        double energy = 0;
+        int crossings = 0;
+        double previous = 0;
+        int p = offset;
+        for (int i = 0; i < frames; i++) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += STAudioNormalizer.sample(format, b, p);
+                p += bytes;
+            }
+            double s = sum / channels;
+            energy += s * s;
+            if (i > 0 && (s >= 0) != (previous >= 0)) crossings++;
+            previous = s;
+        }
+        double rms = Math.sqrt(energy / frames);
+        double db = 20 * Math.log10(rms + 1e-10);
+        double zcr = (double) crossings / frames;
+        double threshold = Math.max(thresholdDb, 20 * Math.log10(noiseFloor + 1e-10) + NOISE_MARGIN_DB);
+
+        boolean speech = db > threshold || (db > threshold - FRICATIVE_MARGIN_DB && zcr > FRICATIVE_ZCR);
+        if (speech) {
+            hangover = HANGOVER_FRAMES;
+        } else {
+            noiseFloor = rms < noiseFloor ? rms : noiseFloor * NOISE_FLOOR_RISE;
+            if (hangover > 0) {
+                hangover--;
+                return true;
+            }
+        }
+        return speech;
+    }
+
+    /**
+     * Scans the source audio of a pipeline until the first speech frame.
+     *
+     * @param pipeline    a freshly opened pipeline, it is consumed by this call
+     * @param thresholdDb absolute energy threshold in dBFS
+     * @return false if the whole input is silence
+     * @throws java.io.IOException if reading the input fails
+     */
+    public static boolean containsSpeech(STAudioPipeline pipeline, double thresholdDb) throws java.io.IOException {
+        STVoiceActivityDetector vad = new STVoiceActivityDetector(pipeline.getSourceFormat(), thresholdDb);
+        byte[] chunk;
+        while ((chunk = pipeline.nextRawChunk()) != null) {
+            for (int p = 0; p < chunk.length; p += vad.getFrameSize()) {
+                if (vad.isSpeech(chunk, p, Math.min(vad.getFrameSize(), chunk.length - p))) return true;
+            }
+        }
+        return false;
+    }
+}
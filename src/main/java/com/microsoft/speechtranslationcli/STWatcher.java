@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a spool directory and hands over every file once it is complete, so recordings are translated right after
+ * they land instead of on the next scheduled run.
+ *
+ * A file is complete once its size and modification time did not change for the settle time. Recorders that write
+ * under a temporary name and rename the file when done are picked up as soon as the settle time after the rename has
+ * passed: names starting with a dot or ending in .part or .tmp are ignored. Files already in the directory when
+ * watching starts are handed over as well. A file is handed over again only if it is modified afterwards.
+ */
+public class STWatcher implements Closeable {
+    private final Logger classLogger = LogManager.getLogger(STWatcher.class);
+    private final STConfiguration configInstance = STConfiguration.getInstance();
+    private final ResourceBundle stringsCli = configInstance.getStringsCli();
+
+    private final Path directory;
+    private final long settleNanos;
+    private final long pollMillis;
+    private final Consumer<File> ready;
+    private final WatchService service;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    // only touched by the watch thread
+    private final Map<Path, Candidate> candidates = new HashMap<>();
+    private final Map<Path, Long> delivered = new HashMap<>();
+
+    private static class Candidate {
+        private final long size;
+        private final long modified;
+        private final long changed = System.nanoTime();
+
+        Candidate(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * @param directory    the spool directory
+     * @param settleMillis time the size of a file must stay the same before it is considered complete
+     * @param ready        called on the watch thread with every complete file
+     * @throws IOException if the directory cannot be watched
+     */
+    public STWatcher(File directory, long settleMillis, Consumer<File> ready) throws IOException {
+        this.directory = directory.toPath();
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.pollMillis = Math.max(10, Math.min(100, settleMillis / 4));
+        this.ready = ready;
+        this.service = this.directory.getFileSystem().newWatchService();
+        this.directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        this.thread = new Thread(this::watch, "watch-folder");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Waits until watching ends, because the watcher was closed or the directory was removed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        thread.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        service.close();
+    }
+
+    /**
+     * @param sink          the sink results are written to
+     * @param doneDirectory where input files are moved once their results are written, null to leave them in place
+     * @return a sink moving every whole file aside after the given sink completed it
+     */
+    public static STOutputSink moveWhenDone(STOutputSink sink, File doneDirectory) {
+        if (doneDirectory == null) return sink;
+        return new STOutputSink() {
+            @Override
+            public void writeText(STJob job, String message) throws IOException {
+                sink.writeText(job, message);
+            }
+
+            @Override
+            public void writeAudio(STJob job, InputStream audio) throws IOException {
+                sink.writeAudio(job, audio);
+            }
+
+            @Override
+            public void complete(STJob job) throws IOException {
+                sink.complete(job);
+                if (!job.isSegment()) {
+                    Files.createDirectories(doneDirectory.toPath());
+                    Files.move(job.getFile().toPath(), doneDirectory.toPath().resolve(job.getFile().getName()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        };
+    }
+
+    static boolean isCandidate(Path path) {
+        String name = path.getFileName().toString();
+        return !name.startsWith(".") && !name.endsWith(".part") && !name.endsWith(".tmp");
+    }
+
+    private void watch() {
+        try {
+            scan();
+            while (!closed) {
+                // nothing to settle, sleep until the directory changes
+                WatchKey key = candidates.isEmpty() ? service.take() : service.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            scan();
+                            continue;
+                        }
+                        Path path = directory.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_DELETE) {
+                            candidates.remove(path);
+                            delivered.remove(path);
+                        } else {
+                            offer(path);
+                        }
+                    }
+                    if (!key.reset()) {
+                        classLogger.error(MessageFormat.format(stringsCli.getString("log4jSwError"), directory));
+                        return;
+                    }
+                }
+                settle();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            classLogger.debug(MessageFormat.format(stringsCli.getString("log4jSwError"), directory), e);
+            classLogger.error(MessageFormat.format(stringsCli.getString("log4jSwError"), directory));
+        }
+    }
+
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path path : entries) {
+                offer(path);
+            }
+        }
+    }
+
+    private void offer(Path path) {
+        if (!isCandidate(path)) return;
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return; // gone again
+        }
+        if (!attributes.isRegularFile()) return;
+        long modified = attributes.lastModifiedTime().toMillis();
+        Long done = delivered.get(path);
+        if (done != null && done == modified) return;
+        Candidate candidate = candidates.get(path);
+        if (candidate == null || candidate.size != attributes.size() || candidate.modified != modified) {
+            candidates.put(path, new Candidate(attributes.size(), modified));
+        }
+    }
+
+    // hands over the files whose size did not change for the settle time
+    private void settle() {
+        for (Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Candidate> entry = it.next();
+            Path path = entry.getKey();
+            Candidate candidate = entry.getValue();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                it.remove();
+                continue;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() != candidate.size || modified != candidate.modified) {
+                entry.setValue(new Candidate(attributes.size(), modified));
+            } else if (System.nanoTime() - candidate.changed >= settleNanos && candidate.size > 0) {
+                it.remove();
+                delivered.put(path, modified);
+                classLogger.debug(MessageFormat.format(stringsCli.getString("log4jSwDebugReady"), path));
+                ready.accept(path.toFile());
+            }
+        }
+    }
+}
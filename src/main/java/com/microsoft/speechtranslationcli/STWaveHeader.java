@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal RIFF/WAVE header parser and writer. Unlike the musicg WaveHeader it walks the chunk list instead of assuming a
+ * 44 byte header, and it understands 8, 24 and 32-bit integer PCM, IEEE float and WAVE_FORMAT_EXTENSIBLE files.
+ */
+public class STWaveHeader {
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    public static final int CANONICAL_HEADER_SIZE = 44;
+
+    private final STAudioFormat format;
+    private final long dataOffset;
+    private final long dataLength;
+
+    private STWaveHeader(STAudioFormat format, long dataOffset, long dataLength) {
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    /**
+     * Reads the header up to and including the data chunk header. The stream is left positioned at the first sample.
+     *
+     * @param in         stream positioned at the start of the file
+     * @param fileLength length of the file, used when the data chunk size is unset as written by streaming encoders
+     * @return the parsed header
+     * @throws IOException if the stream is not a WAV file or uses an unsupported format
+     */
+    public static STWaveHeader read(InputStream in, long fileLength) throws IOException {
+        byte[] riff = readFully(in, 12);
+        if (!"RIFF".equals(ascii(riff, 0)) || !"WAVE".equals(ascii(riff, 8))) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+        long offset = 12;
+        STAudioFormat format = null;
+        while (true) {
+            byte[] chunkHeader = readFully(in, 8);
+            offset += 8;
+            String id = ascii(chunkHeader, 0);
+            long size = ByteBuffer.wrap(chunkHeader, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+            if ("fmt ".equals(id)) {
+                format = parseFormat(readFully(in, (int) size));
+                offset += size;
+            } else if ("data".equals(id)) {
+                if (format == null) throw new IOException("data chunk before fmt chunk");
+                long remaining = fileLength - offset;
+                if (size == 0 || size == 0xFFFFFFFFL || size > remaining) size = remaining;
+                return new STWaveHeader(format, offset, size);
+            } else {
+                skipFully(in, size);
+                offset += size;
+            }
+            if ((size & 1) == 1) { // chunks are word aligned
+                skipFully(in, 1);
+                offset++;
+            }
+        }
+    }
+
+    /**
+     * Builds a canonical 44 byte header.
+     *
+     * @param format     format of the samples that follow
+     * @param dataLength length of the data chunk, 0 if unknown because the stream is still being produced
+     * @return the header bytes
+     */
+    public static byte[] build(STAudioFormat format, long dataLength) {
+        ByteBuffer b = ByteBuffer.allocate(CANONICAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        b.putInt(dataLength == 0 ? 0 : (int) Math.min(0xFFFFFFFFL, dataLength + 36));
+        b.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        b.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        b.putInt(16);
+        b.putShort((short) (format.getEncoding() == STAudioFormat.Encoding.PCM_FLOAT ? WAVE_FORMAT_IEEE_FLOAT : WAVE_FORMAT_PCM));
+        b.putShort((short) format.getChannels());
+        b.putInt(format.getSampleRate());
+        b.putInt(format.getBytesPerSecond());
+        b.putShort((short) format.getFrameSize());
+        b.putShort((short) format.getBitsPerSample());
+        b.put("data".getBytes(StandardCharsets.US_ASCII));
+        b.putInt((int) Math.min(0xFFFFFFFFL, dataLength));
+        return b.array();
+    }
+
+    private static STAudioFormat parseFormat(byte[] fmt) throws IOException {
+        if (fmt.length < 16) throw new IOException("fmt chunk too short");
+        ByteBuffer b = ByteBuffer.wrap(fmt).order(ByteOrder.LITTLE_ENDIAN);
+        int tag = b.getShort(0) & 0xFFFF;
+        int channels = b.getShort(2) & 0xFFFF;
+        int sampleRate = b.getInt(4);
+        int bits = b.getShort(14) & 0xFFFF;
+        if (tag == WAVE_FORMAT_EXTENSIBLE && fmt.length >= 26) {
+            tag = b.getShort(24) & 0xFFFF; // first two bytes of the sub format GUID
+        }
+        STAudioFormat.Encoding encoding;
+        if (tag == WAVE_FORMAT_IEEE_FLOAT) {
+            encoding = STAudioFormat.Encoding.PCM_FLOAT;
+        } else if (tag == WAVE_FORMAT_PCM) {
+            encoding = bits == 8 ? STAudioFormat.Encoding.PCM_UNSIGNED : STAudioFormat.Encoding.PCM_SIGNED;
+        } else {
+            throw new IOException("Unsupported WAV format tag " + tag);
+        }
+        STAudioFormat format = new STAudioFormat(encoding, sampleRate, channels, bits);
+        if (!format.isSupported()) throw new IOException("Unsupported WAV format " + format);
+        return format;
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] b = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int r = in.read(b, read, length - read);
+            if (r < 0) throw new EOFException();
+            read += r;
+        }
+        return b;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long s = in.skip(length);
+            if (s <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                s = 1;
+            }
+            length -= s;
+        }
+    }
+
+    private static String ascii(byte[] b, int offset) {
+        return new String(b, offset, 4, StandardCharsets.US_ASCII);
+    }
+
+    public STAudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return offset of the first sample within the file
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * @return number of sample bytes
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    public double getDurationSeconds() {
+        return dataLength / (double) format.getBytesPerSecond();
+    }
+}
@@ -23,131 +23,331 @@
  */
 package com.microsoft.speechtranslationcli;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
-import com.musicg.wave.WaveHeader;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.text.MessageFormat;
-import java.util.Arrays;
 import java.util.ResourceBundle;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-
-import static org.apache.commons.io.IOUtils.copy;
-
-import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.StatusCode;
-import org.eclipse.jetty.websocket.api.annotations.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /*
 General idea is to always handle a single file with a single web socket connection. If you want concurrency, open multiple
 sockets at a time with each socket handling its single file.
+
+A socket may be connected before it knows its file. Such a pre-warmed socket sits idle in the STSessionPool until
+translate() hands it a file to stream.
+
+The socket does not know how it is connected. An STTransport opens the connection and calls onConnect, onMessage,
+onError and onClose.
  */
 
-@WebSocket
 public class SpeechClientSocket {
+    // the end-of-stream silence is sent in increments until the last utterance is final, but for at most this long
+    private static final double TAIL_MAX_SECONDS = 10;
+    // the service needs some silence to tell that an utterance has ended
+    private static final double TAIL_MIN_SECONDS = 1;
+    // a full chunk of audio is followed by this delay, shorter chunks by a proportionally shorter one
+    static final long CHUNK_DELAY_MILLIS = 500;
+
     private final Logger classLogger = LogManager.getLogger(SpeechClientSocket.class);
 
+    private final CountDownLatch connectLatch;
     private final CountDownLatch closeLatch;
-    private Session session = null;
+    private volatile STConnection session = null;
+    private volatile boolean discarded = false;
+    private volatile long lastActivity;
+    private final long created = System.currentTimeMillis();
+    private volatile long handshakeMillis = -1;
+    private volatile int closeStatus = -1;
+    private final String endpoint;
+    private final AtomicReference<Object> connectEvent;
+    private final STQuota quota;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile Runnable closeListener = null;
 
     // Everything this socket needs to operate from comes from the shared configuration and the file reference
     private final STConfiguration configInstance = STConfiguration.getInstance();
-    private File inputFile;
-    int inputFileLength;
+    private volatile STJob job;
+    private volatile STOutputSink sink;
+    private volatile File inputFile;
+    private volatile STOffsetMap offsetMap = null;
+    private volatile long uploadStarted;
+    private volatile long uploadEnded;
+    private volatile long lastReceived;
+    private volatile boolean partialSeen;
+    private volatile boolean finalSeen;
+    // a partial result arrived after the last final one, so an utterance is still being recognized
+    private volatile boolean utterancePending;
+    // times the last chunk of audio went out and the last final result arrived, 0 before
+    private volatile long audioEnded;
+    private volatile long lastFinal;
+    private volatile boolean tailSent;
+    // with text-to-speech, every final result with a translation is followed by its audio
+    private final AtomicInteger spokenFinals = new AtomicInteger();
+    private final AtomicInteger audioSegments = new AtomicInteger();
+    private volatile STCapture capture = null;
+    private volatile String captureUri;
+    private volatile STCapture.SessionRecorder recorder = null;
 
     private final ResourceBundle stringsClient = configInstance.getStringsClient();
 
-    public SpeechClientSocket(File file) {
-        inputFile = file;
-        inputFileLength = (int) inputFile.length();
+    public SpeechClientSocket() {
+        this(new STQuota(0, 0, 0, 1), null);
+    }
+
+    /**
+     * @param quota    consulted before every chunk of audio is sent
+     * @param endpoint host the socket connects to, recorded with its connect event
+     */
+    public SpeechClientSocket(STQuota quota, String endpoint) {
+        this.quota = quota;
+        this.endpoint = endpoint;
+        this.connectEvent = new AtomicReference<>(STFlightRecorder.beginConnect());
+        this.connectLatch = new CountDownLatch(1);
         this.closeLatch = new CountDownLatch(1);
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    public boolean awaitConnect(long duration, TimeUnit unit) throws InterruptedException {
+        return this.connectLatch.await(duration, unit);
     }
 
     public boolean awaitClose(int duration, TimeUnit unit) throws InterruptedException {
         return this.closeLatch.await(duration, unit);
     }
 
-    @OnWebSocketClose
+    public boolean isOpen() {
+        STConnection s = this.session;
+        return s != null && s.isOpen();
+    }
+
+    public boolean isClosed() {
+        return this.closeLatch.getCount() == 0;
+    }
+
+    /**
+     * @return true once the audio of the job, end-of-stream silence included, has been sent completely
+     */
+    public boolean isUploaded() {
+        return uploadEnded != 0;
+    }
+
+    /**
+     * @return milliseconds since the upload completed or the last result arrived, whichever was later, -1 while the
+     * upload is still running
+     */
+    public long getQuietMillis() {
+        long ended = uploadEnded;
+        if (ended == 0) return -1;
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - Math.max(ended, lastReceived));
+    }
+
+    /**
+     * @return milliseconds from creating the socket until the upgrade completed, -1 while not connected
+     */
+    public long getHandshakeMillis() {
+        return handshakeMillis;
+    }
+
+    /**
+     * @return status code of the close, -1 while the connection is open or if it failed without one
+     */
+    public int getCloseStatus() {
+        return closeStatus;
+    }
+
+    /**
+     * @param listener called once when the connection is closed or fails, set before connecting
+     */
+    public void setCloseListener(Runnable listener) {
+        this.closeListener = listener;
+    }
+
+    /**
+     * @param capture records the sessions of this socket, null to not record them
+     * @param uri     the connection string the socket connects to, recorded with the subscription key redacted
+     */
+    public void setCapture(STCapture capture, String uri) {
+        this.capture = capture;
+        this.captureUri = uri;
+    }
+
+    /**
+     * @return milliseconds since the last frame was sent on this socket
+     */
+    public long getIdleMillis() {
+        return System.currentTimeMillis() - lastActivity;
+    }
+
+    /**
+     * Streams the audio of a job over this already connected socket.
+     *
+     * @param job      the file or file segment to translate
+     * @param pipeline the opened audio of the job, closed once uploaded
+     * @param sink     receives the results as they arrive
+     */
+    public void translate(STJob job, STAudioPipeline pipeline, STOutputSink sink) {
+        this.sink = sink;
+        this.job = job;
+        this.partialSeen = false;
+        this.finalSeen = false;
+        this.utterancePending = false;
+        this.audioEnded = 0;
+        this.lastFinal = 0;
+        this.tailSent = false;
+        this.spokenFinals.set(0);
+        this.audioSegments.set(0);
+        this.uploadEnded = 0;
+        inputFile = job.getFile();
+        STCapture c = this.capture;
+        if (c != null) this.recorder = c.begin(captureUri);
+        sendFileInChunks(pipeline);
+    }
+
+    /**
+     * Sends a ping so an idle pre-warmed session does not run into the idle timeout.
+     */
+    public void keepAlive() {
+        STConnection s = this.session;
+        if (s == null) return;
+        try {
+            s.sendPing();
+            lastActivity = System.currentTimeMillis();
+            classLogger.trace(stringsClient.getString("log4jSCSTraceKeepAlive"));
+        } catch (IOException e) {
+            classLogger.debug(stringsClient.getString("log4jSCSDebugKeepAliveFailed"), e);
+            close();
+        }
+    }
+
+    /**
+     * Closes a socket that is no longer needed, including one that is still in the middle of its handshake.
+     */
+    public void close() {
+        discarded = true;
+        STConnection s = this.session;
+        if (s != null) {
+            s.close(STConnection.NORMAL, stringsClient.getString("SCSSessionCloseReasonDone"));
+        }
+    }
+
     public void onClose(int statusCode, String reason) {
         classLogger.trace(MessageFormat.format(stringsClient.getString("log4jSCSTraceConnectionClose"), String.valueOf(statusCode), reason));
         this.session = null;
+        this.closeStatus = statusCode;
+        STCapture.SessionRecorder r = this.recorder;
+        if (r != null) r.close(statusCode);
+        STFlightRecorder.endConnect(connectEvent.getAndSet(null), endpoint, false);
+        STFlightRecorder.close(inputFile, statusCode, reason);
+        this.connectLatch.countDown();
         this.closeLatch.countDown(); // trigger latch
+        notifyClosed();
     }
 
-    @OnWebSocketConnect
-    public void onConnect(Session session) {
+    private void notifyClosed() {
+        Runnable listener = this.closeListener;
+        if (listener != null && closed.compareAndSet(false, true)) {
+            listener.run();
+        }
+    }
+
+    public void onConnect(STConnection session) {
         classLogger.trace(stringsClient.getString("log4jSCSTraceConnectionOpen"), session);
         this.session = session;
+        this.lastActivity = System.currentTimeMillis();
+        this.handshakeMillis = lastActivity - created;
+        STFlightRecorder.endConnect(connectEvent.getAndSet(null), endpoint, true);
 
-        session.getPolicy().setMaxBinaryMessageSize(configInstance.getConfiguration().getInt(STConfigurationDefault.WEBSOCKET_MAX_BINARY_MSG.getKey()));
-        session.getPolicy().setMaxTextMessageSize(configInstance.getConfiguration().getInt(STConfigurationDefault.WEBSOCKET_MAX_TEXT_MSG.getKey()));
-        session.getPolicy().setIdleTimeout(configInstance.getConfiguration().getInt(STConfigurationDefault.WEBSOCKET_MAX_IDLE.getKey()));
-        session.getPolicy().setInputBufferSize(configInstance.getConfiguration().getInt(STConfigurationDefault.WEBSOCKET_BUFFER.getKey()));
-
-        sendFileInChunks();
+        this.connectLatch.countDown();
+        if (discarded) {
+            close();
+        }
     }
 
-    @OnWebSocketMessage
-    public void onMessage(Session session, InputStream stream) {
+    public void onMessage(InputStream stream) {
         classLogger.trace(stringsClient.getString("log4jSCSTraceOnMessageBinary"));
+        lastReceived = System.nanoTime();
         try {
-
-            // TODO change file type extension based on format
-
-
-            //String test = STValidate.AudioFormat.WAV.getOptionValue();
-
-            File fileTranslated = new File(configInstance.getConfiguration().getString(STConfigurationDefault.CLI_OUTPUT_DIR.getKey()),
-                    FilenameUtils.getBaseName(inputFile.getName())
-                            + configInstance.getConfiguration().getString(STConfigurationDefault.CLI_POSTFIX.getKey())
-                            + "." + FilenameUtils.getExtension(inputFile.getName()));
-
-            FileOutputStream outputStream = new FileOutputStream(fileTranslated);
-            copy(stream, outputStream);
+            Object event = STFlightRecorder.beginMessage();
+            STCapture.SessionRecorder r = this.recorder;
+            ByteArrayOutputStream captured = r == null ? null : new ByteArrayOutputStream();
+            CountingInputStream counting = new CountingInputStream(r == null ? stream : new TeeInputStream(stream, captured));
+            sink.writeAudio(job, counting);
             stream.close();
-            classLogger.trace(stringsClient.getString("log4jSCSTraceReceivingFileDone") + fileTranslated.getAbsolutePath());
-            session.close(StatusCode.NORMAL, stringsClient.getString("SCSSessionCloseReasonDone"));
+            if (r != null) r.binary(captured.toByteArray());
+            STFlightRecorder.endMessage(event, job, "audio", counting.getByteCount());
+            STRunReport.getInstance().recordTtsBytes(counting.getByteCount());
+            classLogger.trace(stringsClient.getString("log4jSCSTraceReceivingFileDone") + job);
+            audioSegments.incrementAndGet();
+            // the session stays open for further utterances until the end of the stream
+            if (tailSent && isDrained() && isSpoken()) finish();
         } catch (IOException e) {
             classLogger.debug(stringsClient.getString("log4jSCSIOExceptionWrite"), e);
             classLogger.error(stringsClient.getString("log4jSCSIOExceptionWrite"));
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_WRITE_ERROR);
             System.exit(STExitCode.FILE_WRITE_ERROR.getId());
         }
     }
 
-    @OnWebSocketMessage
     public void onMessage(String msg) {
+        lastReceived = System.nanoTime();
+        STCapture.SessionRecorder r = this.recorder;
+        if (r != null) r.text(msg);
+        recordLatency(msg);
+        trackUtterance(msg);
         if (configInstance.getConfiguration().getBoolean(STConfigurationDefault.CLI_OMIT_TEXT.getKey())) {
             classLogger.trace(stringsClient.getString("log4jSCSTraceOmitMessageReceived"));
         } else {
             classLogger.trace(MessageFormat.format(stringsClient.getString("log4jSCSTraceOnMessageText"), msg));
-            File fileTranslatedJson = new File(configInstance.getConfiguration().getString(STConfigurationDefault.CLI_OUTPUT_DIR.getKey()),
-                    FilenameUtils.getBaseName(inputFile.getName())
-                            + configInstance.getConfiguration().getString(STConfigurationDefault.CLI_POSTFIX.getKey())
-                            + ".json");
             try {
-                FileUtils.writeStringToFile(fileTranslatedJson, msg, "UTF8");
+                Object event = STFlightRecorder.beginMessage();
+                sink.writeText(job, STResultMessage.mapOffsets(msg, offsetMap));
+                STFlightRecorder.endMessage(event, job, "text", msg.length());
             } catch (IOException e) {
                 classLogger.debug(stringsClient.getString("log4jSCSIOExceptionWrite"), e);
                 classLogger.error(stringsClient.getString("log4jSCSIOExceptionWrite"));
+                STRunReport.getInstance().recordFailure(STExitCode.FILE_WRITE_ERROR);
                 System.exit(STExitCode.FILE_WRITE_ERROR.getId());
             }
         }
+        // the last utterance only turned final after the whole tail was sent
+        if (tailSent && isDrained() && isSpoken()) finish();
     }
 
-    @OnWebSocketError
-    public void onError(Session s, Throwable t) {
+    public void onError(Throwable t) {
+        if (inputFile == null) {
+            // a pre-warmed socket without a file failed, the session pool simply replaces it
+            classLogger.debug(stringsClient.getString("log4jSCSDebugWarmSessionError"), t);
+            STFlightRecorder.endConnect(connectEvent.getAndSet(null), endpoint, false);
+            this.connectLatch.countDown();
+            this.closeLatch.countDown();
+            notifyClosed();
+            return;
+        }
+        if (discarded) {
+            // a session given up on, e.g. the loser of a hedged job, may fail while it is torn down
+            classLogger.debug(stringsClient.getString("log4jSCSDebugOnWebSocketError"), t);
+            this.closeLatch.countDown();
+            notifyClosed();
+            return;
+        }
         classLogger.debug(stringsClient.getString("log4jSCSDebugOnWebSocketError"), t);
         classLogger.error(stringsClient.getString("log4jSCSDebugOnWebSocketError"));
+        STRunReport.getInstance().recordFailure(STExitCode.CONNECTION_ERROR);
         System.exit(STExitCode.CONNECTION_ERROR.getId());
     }
 
@@ -158,61 +358,188 @@ public class SpeechClientSocket {
      * resource allocation, the connection will be closed by the endpoint if that happens.
      *
      * The safest way to deal with this is to chunk the audio into 0.25s chunks and upload them with a delay in between.
+     * The delay and the audio quota follow the duration of the audio actually sent, which is less than 0.25s for
+     * chunks the silence trimming shortened. Chunks it removed entirely are not sent at all.
      *
-     * This method offers an implementation for this, determining the length of the audio file by parsing the WAV header
-     * using the musicg library.
+     * This method offers an implementation for this. The STAudioPipeline parses the WAV header, streams the file chunk
+     * by chunk and, if enabled, normalizes each chunk to mono PCM at the target rate and bit depth before it is sent.
      *
-     * A buffer of 320000 bytes of silence is sent after the last chunk uploaded.
+     * After the last chunk, silence in the output format is sent in paced increments of the chunk length so the service
+     * can tell that the last utterance has ended. This stops as soon as the last utterance is final. The session is
+     * closed once that is the case and the text-to-speech audio of every final result has arrived as well.
      */
-    private void sendFileInChunks() {
-        try {
-            InputStream inputFileHeader = new FileInputStream(inputFile);
-
-            InputStream inputStream = new FileInputStream(inputFile);
-            WaveHeader fileHeader = new WaveHeader(inputFileHeader);
-            int sampleRate = fileHeader.getSampleRate();
-            double lengthInSeconds = (inputFileLength / ((sampleRate * fileHeader.getChannels() * fileHeader.getBitsPerSample()) / 8.0));
-            int numberOfChunks = (int) Math.ceil(lengthInSeconds / 0.25);
-            int chunkSize = (int) Math.ceil((double) inputFileLength / numberOfChunks);
-            inputFileHeader.close();
-
-            byte[] inputBuffer = new byte[inputFileLength];
-
-            int delta = chunkSize * numberOfChunks - inputFileLength;
-
-            int bytesRead = inputStream.read(inputBuffer);
-            classLogger.debug(bytesRead + stringsClient.getString("log4jSCSDebugBytesReadToBuffer") + inputFileLength);
-            inputStream.close();
-
-            if (bytesRead < inputFileLength) {
-                classLogger.warn(MessageFormat.format(stringsClient.getString("log4jSCSWarnPartialFileRead"), bytesRead, inputFileLength, inputFile.getAbsolutePath()));
-            }
+    private void sendFileInChunks(STAudioPipeline audio) {
+        Object uploadEvent = STFlightRecorder.beginUpload();
+        uploadStarted = System.nanoTime();
+        long bytesSent = 0;
+        try (STAudioPipeline pipeline = audio) {
+            offsetMap = pipeline.getOffsetMap();
+            int numberOfChunks = pipeline.getNumberOfChunks();
+            classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugAudioFormat"),
+                    pipeline.getSourceFormat(), pipeline.getOutputFormat()));
 
             classLogger.trace(MessageFormat.format(stringsClient.getString("log4jSCSTraceSendingFile"), inputFile.getAbsolutePath(), numberOfChunks));
+            int headerLength = pipeline.getHeader().length;
+            double bytesPerSecond = pipeline.getOutputFormat().getBytesPerSecond();
             for (int i = 0; i < numberOfChunks; i++) {
-                int from = i * chunkSize;
-                int to = i * chunkSize + chunkSize;
-                if (i == numberOfChunks - 1) {
-                    to = to - delta;
+                byte[] chunkBuffer = pipeline.nextChunk();
+                double seconds = (chunkBuffer.length - (i == 0 ? headerLength : 0)) / bytesPerSecond;
+                // chunks the silence trimming emptied are not sent, the first one still carries the header
+                if (seconds <= 0 && i != 0) continue;
+                if (seconds > 0) acquireAudio(seconds);
+                STConnection s = this.session;
+                if (discarded || s == null) {
+                    classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSendingCancelled"), inputFile.getAbsolutePath()));
+                    return;
                 }
-                byte[] chunkBuffer = Arrays.copyOfRange(inputBuffer, from, to);
-                session.getRemote().sendBytes(ByteBuffer.wrap(chunkBuffer), new STSendChunkStatus(inputFile, i, numberOfChunks));
-                if (i != numberOfChunks - 1) {
+                s.sendBinary(ByteBuffer.wrap(chunkBuffer), new STSendChunkStatus(inputFile, i, numberOfChunks, chunkBuffer.length, () -> discarded));
+                if (recorder != null) recorder.chunk(chunkBuffer.length);
+                bytesSent += chunkBuffer.length;
+                lastActivity = System.currentTimeMillis();
+                long delay = pacingMillis(seconds);
+                if (i != numberOfChunks - 1 && delay > 0) {
                     try {
-                        classLogger.debug(MessageFormat.format(stringsClient.getString("log4jDebugChunkDelay"), String.valueOf(500)));
-                        Thread.sleep(500);
+                        classLogger.debug(MessageFormat.format(stringsClient.getString("log4jDebugChunkDelay"), String.valueOf(delay)));
+                        Thread.sleep(delay);
                     } catch (InterruptedException e) {
                         classLogger.debug(stringsClient.getString("log4jSCSDebugInternalError"), e);
                     }
                 }
             }
 
-            byte[] silence = new byte[320000];
-            session.getRemote().sendBytes(ByteBuffer.wrap(silence), new STSendSilenceStatus(320000));
-        } catch (IOException e) {
+            classLogger.debug(pipeline.getBytesRead() + stringsClient.getString("log4jSCSDebugBytesReadToBuffer") + pipeline.getDataLength());
+            if (pipeline.getBytesRead() < pipeline.getDataLength()) {
+                classLogger.warn(MessageFormat.format(stringsClient.getString("log4jSCSWarnPartialFileRead"), pipeline.getBytesRead(), pipeline.getDataLength(), inputFile.getAbsolutePath()));
+            }
+
+            if (offsetMap != null) {
+                classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSilenceTrimmed"),
+                        String.valueOf(offsetMap.getRemovedTicks() / (double) STOffsetMap.TICKS_PER_SECOND), offsetMap.size()));
+            }
+
+            audioEnded = System.nanoTime();
+            if (!sendTail(pipeline.getOutputFormat())) return;
+            STFlightRecorder.endUpload(uploadEvent, inputFile, numberOfChunks, bytesSent);
+            STRunReport.getInstance().recordUpload(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - uploadStarted));
+            uploadEnded = System.nanoTime();
+            if (isDrained() && isSpoken()) finish();
+        } catch (IOException | IllegalArgumentException e) {
+            if (discarded) {
+                classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSendingCancelled"), inputFile.getAbsolutePath()), e);
+                return;
+            }
             classLogger.debug(stringsClient.getString("log4jSCSIOExceptionRead") + inputFile.getAbsolutePath(), e);
             classLogger.error(stringsClient.getString("log4jSCSIOExceptionRead") + inputFile.getAbsolutePath());
+            STRunReport.getInstance().recordFailure(STExitCode.FILE_READ_ERROR);
             System.exit(STExitCode.FILE_READ_ERROR.getId());
         }
     }
-}
\ No newline at end of file
+
+    // returns false if the session was given up on while sending the tail
+    private boolean sendTail(STAudioFormat format) {
+        byte[] silence = format.silence(STAudioPipeline.CHUNK_SECONDS);
+        double seconds = silence.length / (double) format.getBytesPerSecond();
+        int increments = (int) Math.ceil(TAIL_MAX_SECONDS / seconds);
+        double sent = 0;
+        for (int i = 0; i < increments; i++) {
+            if (sent >= TAIL_MIN_SECONDS && isDrained()) break;
+            acquireAudio(seconds);
+            STConnection s = this.session;
+            if (discarded || s == null) {
+                classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSendingCancelled"), inputFile.getAbsolutePath()));
+                return false;
+            }
+            s.sendBinary(ByteBuffer.wrap(silence), new STSendSilenceStatus(inputFile, silence.length));
+            if (recorder != null) recorder.chunk(silence.length);
+            lastActivity = System.currentTimeMillis();
+            sent += seconds;
+            try {
+                Thread.sleep((long) (seconds * 1000));
+            } catch (InterruptedException e) {
+                classLogger.debug(stringsClient.getString("log4jSCSDebugInternalError"), e);
+            }
+        }
+        classLogger.debug(MessageFormat.format(stringsClient.getString("log4jSCSDebugSilenceTail"), String.valueOf(sent), inputFile.getAbsolutePath()));
+        tailSent = true;
+        return true;
+    }
+
+    /*
+     * The last utterance is final once a final result arrived and no partial result followed it. Without partial
+     * results an utterance still being recognized cannot be told apart, so only a final result arriving after the last
+     * chunk of audio was sent counts, and the whole tail is sent if none does.
+     */
+    private boolean isDrained() {
+        if (utterancePending) return false;
+        if (expectsPartials()) return finalSeen;
+        long ended = audioEnded;
+        return ended != 0 && lastFinal - ended > 0;
+    }
+
+    private void trackUtterance(String msg) {
+        if (STResultMessage.isFinal(msg)) {
+            lastFinal = System.nanoTime();
+            utterancePending = false;
+            if (expectsAudio() && StringUtils.isNotBlank(STResultMessage.getString(msg, STResultMessage.FIELD_TRANSLATION))) {
+                spokenFinals.incrementAndGet();
+            }
+        } else if (STResultMessage.TYPE_PARTIAL.equals(STResultMessage.getString(msg, STResultMessage.FIELD_TYPE))) {
+            utterancePending = true;
+        }
+    }
+
+    private boolean isSpoken() {
+        return audioSegments.get() >= spokenFinals.get();
+    }
+
+    /**
+     * @param seconds duration of audio
+     * @return how long the upload of that much audio is paced for
+     */
+    static long pacingMillis(double seconds) {
+        return Math.round(seconds / STAudioPipeline.CHUNK_SECONDS * CHUNK_DELAY_MILLIS);
+    }
+
+    /**
+     * @return whether the configured features have the service send text-to-speech audio for final results
+     */
+    static boolean expectsAudio() {
+        return Strings.CI.contains(STConfiguration.getInstance().getString(STConfigurationDefault.API_FEATURES), "TextToSpeech");
+    }
+
+    /**
+     * @return whether the configured features have the service send partial results while an utterance is recognized
+     */
+    static boolean expectsPartials() {
+        return Strings.CI.contains(STConfiguration.getInstance().getString(STConfigurationDefault.API_FEATURES), "Partial");
+    }
+
+    private void finish() {
+        STConnection s = this.session;
+        if (s != null && s.isOpen()) {
+            s.close(STConnection.NORMAL, stringsClient.getString("SCSSessionCloseReasonDone"));
+        }
+    }
+
+    // latencies of the first partial and the first final result, counted from the first chunk sent
+    private void recordLatency(String msg) {
+        if (partialSeen && finalSeen) return;
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - uploadStarted);
+        if (!finalSeen && STResultMessage.isFinal(msg)) {
+            finalSeen = true;
+            STRunReport.getInstance().recordFinalResult(millis);
+        } else if (!partialSeen && STResultMessage.TYPE_PARTIAL.equals(STResultMessage.getString(msg, STResultMessage.FIELD_TYPE))) {
+            partialSeen = true;
+            STRunReport.getInstance().recordFirstPartial(millis);
+        }
+    }
+
+    // the service counts every second of audio received, the end-of-stream silence included
+    private void acquireAudio(double seconds) {
+        try {
+            quota.acquireAudio(seconds);
+        } catch (InterruptedException e) {
+            classLogger.debug(stringsClient.getString("log4jSCSDebugInternalError"), e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STArchiveReaderTest {
+
+    private static File tempFile(String suffix) throws IOException {
+        File file = Files.createTempFile("starchive", suffix).toFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void tarEntry(OutputStream out, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, 0, Math.min(bytes.length, 100));
+        byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 5);
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    @Test
+    void testIsArchive() {
+        assertTrue(STArchiveReader.isArchive("in/bundle.zip"));
+        assertTrue(STArchiveReader.isArchive("in/bundle.TAR.GZ"));
+        assertTrue(STArchiveReader.isArchive("in/bundle.tgz!/calls/*.wav"));
+        assertFalse(STArchiveReader.isArchive("in/call.wav"));
+        assertEquals(new File("in/bundle.zip"), STArchiveReader.archiveOf("in/bundle.zip!/calls/*.wav"));
+    }
+
+    @Test
+    void testZipSelectsWaveEntriesInOrder() throws IOException {
+        File archive = tempFile(".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("a.wav"));
+            zip.write(new byte[]{1, 2, 3});
+            zip.putNextEntry(new ZipEntry("notes.txt"));
+            zip.write(new byte[]{4});
+            zip.putNextEntry(new ZipEntry("sub/"));
+            zip.putNextEntry(new ZipEntry("sub/b.WAV"));
+            zip.write(new byte[]{5, 6});
+        }
+        try (STArchiveReader reader = new STArchiveReader(archive.getPath(), false)) {
+            STJob first = reader.next();
+            assertEquals(new File(archive.getPath() + "!/a.wav"), first.getFile());
+            assertEquals("a", first.getName());
+            assertEquals(3, first.getSize());
+            assertTrue(first.isInMemory());
+            STJob second = reader.next();
+            assertEquals(new File(archive.getPath() + "!/sub/b.WAV"), second.getFile());
+            assertArrayEquals(new byte[]{5, 6}, IOUtils.toByteArray(second.openStream()));
+            assertNull(reader.next());
+        }
+        try (STArchiveReader reader = new STArchiveReader(archive.getPath(), true)) {
+            assertEquals(new File(archive.getPath() + "!/a.wav"), reader.next().getFile());
+            assertEquals(new File(archive.getPath() + "!/notes.txt"), reader.next().getFile());
+        }
+    }
+
+    @Test
+    void testGzippedTarWithGlobAndLongNames() throws IOException {
+        File archive = tempFile(".tgz");
+        StringBuilder longName = new StringBuilder("calls/");
+        for (int i = 0; i < 120; i++) longName.append('n');
+        longName.append(".wav");
+        byte[] audio = new byte[700];
+        audio[699] = 7;
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive))) {
+            tarEntry(out, "./calls/", '5', new byte[0]);
+            tarEntry(out, "./calls/x.wav", '0', audio);
+            tarEntry(out, "other/y.wav", '0', new byte[]{1});
+            ByteArrayOutputStream name = new ByteArrayOutputStream();
+            name.write(longName.toString().getBytes(StandardCharsets.UTF_8));
+            name.write(0);
+            tarEntry(out, "././@LongLink", 'L', name.toByteArray());
+            tarEntry(out, longName.substring(0, 100), '0', new byte[]{2, 3});
+            out.write(new byte[1024]);
+        }
+        try (STArchiveReader reader = new STArchiveReader(archive.getPath() + "!/calls/*.wav", false)) {
+            STJob first = reader.next();
+            assertEquals(new File(archive.getPath() + "!/calls/x.wav"), first.getFile());
+            assertArrayEquals(audio, IOUtils.toByteArray(first.openStream()));
+            STJob second = reader.next();
+            assertEquals(new File(archive.getPath() + "!/" + longName), second.getFile());
+            assertArrayEquals(new byte[]{2, 3}, IOUtils.toByteArray(second.openStream()));
+            assertNull(reader.next());
+        }
+    }
+}
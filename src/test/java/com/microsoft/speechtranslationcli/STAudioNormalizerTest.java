@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class STAudioNormalizerTest {
+
+    @Test
+    void testWaveHeaderRoundTrip() throws IOException {
+        STAudioFormat format = STAudioFormat.pcm(16000, 16);
+        byte[] header = STWaveHeader.build(format, 32000);
+        STWaveHeader parsed = STWaveHeader.read(new ByteArrayInputStream(header), header.length + 32000);
+        assertEquals(format, parsed.getFormat());
+        assertEquals(STWaveHeader.CANONICAL_HEADER_SIZE, parsed.getDataOffset());
+        assertEquals(32000, parsed.getDataLength());
+        assertEquals(1.0, parsed.getDurationSeconds(), 1e-9);
+    }
+
+    @Test
+    void testWaveHeaderOfTestResource() throws IOException {
+        File f = new File(getClass().getResource("/speak.wav").getFile());
+        try (InputStream in = new FileInputStream(f)) {
+            STWaveHeader header = STWaveHeader.read(in, f.length());
+            assertEquals(f.length(), header.getDataOffset() + header.getDataLength());
+            assertEquals(1, header.getFormat().getChannels());
+        }
+    }
+
+    @Test
+    void testRawFormatDeclaration() {
+        assertEquals(new STAudioFormat(STAudioFormat.Encoding.PCM_FLOAT, 44100, 2, 32), STAudioFormat.parse("f32le,44100,2"));
+        assertEquals(new STAudioFormat(STAudioFormat.Encoding.PCM_UNSIGNED, 8000, 1, 8), STAudioFormat.parse("u8,8000,1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> STAudioFormat.parse("s12le,8000,1"));
+    }
+
+    @Test
+    void testSilenceFollowsFormat() {
+        assertEquals(8000, STAudioFormat.pcm(16000, 16).silence(0.25).length);
+        assertEquals(17640, STAudioFormat.parse("s16le,44100,2").silence(0.1).length);
+        byte[] unsigned = STAudioFormat.pcm(8000, 8).silence(0.25);
+        assertEquals(2000, unsigned.length);
+        assertEquals((byte) 0x80, unsigned[0]);
+        byte[] signed = STAudioFormat.parse("s24le,8000,1").silence(0.001);
+        assertEquals(24, signed.length);
+        assertEquals(0, signed[23]);
+    }
+
+    @Test
+    void testResamplerKeepsToneAndLength() {
+        STResampler resampler = new STResampler(44100, 16000);
+        float[] in = new float[44100];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (float) (0.5 * Math.sin(2 * Math.PI * 1000 * i / 44100.0));
+        }
+        float[] head = resampler.process(in, 20000);
+        float[] tail = resampler.process(Arrays.copyOfRange(in, 20000, in.length), in.length - 20000);
+        float[] rest = resampler.flush();
+        assertEquals(16000, head.length + tail.length + rest.length);
+        for (int i = 100; i < head.length; i++) {
+            assertEquals(0.5 * Math.sin(2 * Math.PI * 1000 * i / 16000.0), head[i], 1e-3);
+        }
+    }
+
+    @Test
+    void testResamplerRemovesAliasing() {
+        STResampler resampler = new STResampler(48000, 16000);
+        float[] in = new float[48000];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (float) (0.5 * Math.sin(2 * Math.PI * 12000 * i / 48000.0));
+        }
+        float[] out = resampler.process(in, in.length);
+        for (int i = 100; i < out.length - 100; i++) {
+            assertEquals(0.0, out[i], 1e-3);
+        }
+    }
+
+    @Test
+    void testNormalizerDownmixesStereoFloat() {
+        STAudioFormat input = STAudioFormat.parse("f32le,16000,2");
+        STAudioNormalizer normalizer = new STAudioNormalizer(input, STAudioFormat.pcm(16000, 16));
+        ByteBuffer b = ByteBuffer.allocate(8 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 4; i++) {
+            b.putFloat(0.5f).putFloat(-0.25f);
+        }
+        byte[] out = normalizer.process(b.array(), b.capacity());
+        assertEquals(normalizer.getOutputLength(b.capacity()), out.length);
+        assertEquals(Math.round(0.125 * 32767), ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN).getShort(0));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STCaptureTest {
+
+    @Test
+    void testRedact() {
+        assertEquals("ws://host/speech/translate?from=en&subscription-key=REDACTED&to=de",
+                STCapture.redact("ws://host/speech/translate?from=en&subscription-key=0123abcd&to=de"));
+        assertEquals("ws://host/?Subscription-Key=REDACTED", STCapture.redact("ws://host/?Subscription-Key=0123abcd"));
+    }
+
+    @Test
+    void testSessionsReadBackInOrder() throws IOException {
+        File file = Files.createTempFile("stcapture", ".cap").toFile();
+        file.deleteOnExit();
+        try (STCapture capture = new STCapture(file)) {
+            STCapture.SessionRecorder first = capture.begin("ws://host/?subscription-key=secret");
+            STCapture.SessionRecorder second = capture.begin("ws://other/");
+            first.chunk(16000);
+            second.text("{\"type\":\"final\"}");
+            first.binary(new byte[]{1, 2, 3});
+            first.close(1000);
+        }
+        List<List<STCapture.Record>> sessions = STCapture.read(file);
+        assertEquals(2, sessions.size());
+
+        List<STCapture.Record> first = sessions.get(0);
+        assertEquals(4, first.size());
+        assertEquals(STCapture.SESSION, first.get(0).getType());
+        assertEquals("ws://host/?subscription-key=REDACTED", new String(first.get(0).getPayload(), StandardCharsets.UTF_8));
+        assertEquals(STCapture.CHUNK, first.get(1).getType());
+        assertEquals(16000, STCapture.readInt(first.get(1).getPayload()));
+        assertArrayEquals(new byte[]{1, 2, 3}, first.get(2).getPayload());
+        assertEquals(1000, STCapture.readInt(first.get(3).getPayload()));
+        for (int i = 1; i < first.size(); i++) {
+            assertTrue(first.get(i).getOffsetMicros() >= first.get(i - 1).getOffsetMicros());
+        }
+
+        List<STCapture.Record> second = sessions.get(1);
+        assertEquals(STCapture.TEXT, second.get(1).getType());
+        assertEquals("{\"type\":\"final\"}", new String(second.get(1).getPayload(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STConcurrencyControllerTest {
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    /*
+     * A service that completes two 5s sessions per slot and window up to 8 sessions, each taking its paced upload of
+     * 9.5s and 1.5s after it. Beyond that it queues, sessions take longer and fewer complete, and beyond 12 a third of
+     * them is cut off.
+     */
+    private static long window(STConcurrencyController controller, long now) {
+        int limit = controller.getLimit();
+        int completed = 2 * Math.min(limit, 8) - Math.max(0, limit - 8);
+        long extra = Math.max(0, limit - 8) * 1500L;
+        for (int i = 0; i < completed; i++) {
+            controller.record(5, 11000 + extra, limit > 12 && i % 3 == 0, true);
+        }
+        controller.adjust(now + WINDOW);
+        return now + WINDOW;
+    }
+
+    @Test
+    void testSettlesAtTheKnee() {
+        STConcurrencyController controller = new STConcurrencyController(1, 1, 32, 0);
+        long now = 0;
+        for (int i = 0; i < 40; i++) {
+            now = window(controller, now);
+        }
+        int highest = 0;
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            now = window(controller, now);
+            highest = Math.max(highest, controller.getLimit());
+            lowest = Math.min(lowest, controller.getLimit());
+        }
+        assertTrue(lowest >= 6, "lowest " + lowest);
+        assertTrue(highest <= 10, "highest " + highest);
+    }
+
+    @Test
+    void testBacksOffOnFailuresWithinBounds() {
+        STConcurrencyController controller = new STConcurrencyController(40, 4, 20, 0);
+        assertEquals(20, controller.getLimit());
+        long now = 0;
+        now = window(controller, now);
+        assertEquals(15, controller.getLimit());
+        for (int i = 0; i < 10; i++) {
+            now = window(controller, now);
+        }
+        assertTrue(controller.getLimit() >= 4 && controller.getLimit() <= 12);
+    }
+
+    @Test
+    void testLatencyDoesNotGrowWithFileLength() {
+        STConcurrencyController controller = new STConcurrencyController(4, 1, 32, 0);
+        for (int i = 0; i < 4; i++) {
+            controller.record(5, 9500 + 2000, false, true);
+        }
+        assertEquals(5, controller.adjust(WINDOW));
+        // longer files at a higher goodput, with the same time after the upload
+        for (int i = 0; i < 4; i++) {
+            controller.record(60, 119500 + 2000, false, true);
+        }
+        assertEquals(6, controller.adjust(2 * WINDOW));
+    }
+
+    @Test
+    void testHoldsWithoutBacklogOrEnoughSessions() {
+        STConcurrencyController controller = new STConcurrencyController(4, 1, 16, 0);
+        controller.record(5, 5000, false, true);
+        assertEquals(4, controller.adjust(WINDOW));
+        for (int i = 0; i < 8; i++) {
+            controller.record(5, 5000, false, false);
+        }
+        assertEquals(4, controller.adjust(2 * WINDOW));
+    }
+
+    @Test
+    void testLimitsRunningSessions() throws InterruptedException {
+        STConcurrencyController controller = new STConcurrencyController(1, 1, 4, 0);
+        controller.acquire();
+        Thread second = new Thread(() -> {
+            try {
+                controller.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        second.join(200);
+        assertTrue(second.isAlive());
+        controller.release();
+        second.join(1000);
+        assertTrue(!second.isAlive());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STHedgeSinkTest {
+    private static final STJob JOB = new STJob(new File("recording.wav"));
+
+    private static class Recording implements STOutputSink {
+        final List<String> written = new ArrayList<>();
+
+        @Override
+        public void writeText(STJob job, String message) {
+            written.add(message);
+        }
+
+        @Override
+        public void writeAudio(STJob job, InputStream audio) throws IOException {
+            written.add("audio:" + audio.available());
+        }
+    }
+
+    private static String result(String type, String text, long offset, long size) {
+        return "{\"type\":\"" + type + "\",\"recognition\":\"" + text + "\",\"audioTimeOffset\":" + offset
+                + ",\"audioTimeSize\":" + size + "}";
+    }
+
+    @Test
+    void testPassesThroughUntilHedged() throws IOException {
+        Recording target = new Recording();
+        STHedgeSink gate = new STHedgeSink(target);
+        String first = result("final", "one", 0, 100);
+        gate.attempt(STHedgeSink.PRIMARY).writeText(JOB, first);
+        assertEquals(Arrays.asList(first), target.written);
+        gate.win(STHedgeSink.PRIMARY);
+        gate.attempt(STHedgeSink.PRIMARY).writeAudio(JOB, new ByteArrayInputStream(new byte[8]));
+        assertEquals(Arrays.asList(first, "audio:8"), target.written);
+    }
+
+    @Test
+    void testHedgeWinsWithoutRepeatingDeliveredResults() throws IOException {
+        Recording target = new Recording();
+        STHedgeSink gate = new STHedgeSink(target);
+        STOutputSink primary = gate.attempt(STHedgeSink.PRIMARY);
+        STOutputSink hedge = gate.attempt(STHedgeSink.HEDGE);
+        String one = result("final", "one", 0, 100);
+        primary.writeText(JOB, one);
+        gate.hedge();
+        primary.writeText(JOB, result("partial", "tw", 110, 40));
+        hedge.writeText(JOB, result("final", "one", 0, 95));
+        hedge.writeAudio(JOB, new ByteArrayInputStream(new byte[12]));
+        String two = result("final", "two", 105, 100);
+        hedge.writeText(JOB, two);
+        hedge.writeAudio(JOB, new ByteArrayInputStream(new byte[16]));
+        assertEquals(Arrays.asList(one), target.written);
+
+        gate.win(STHedgeSink.HEDGE);
+        assertEquals(Arrays.asList(one, two, "audio:16"), target.written);
+        primary.writeText(JOB, result("final", "two", 110, 90));
+        assertEquals(3, target.written.size());
+    }
+
+    @Test
+    void testPrimaryWinsAfterHedge() throws IOException {
+        Recording target = new Recording();
+        STHedgeSink gate = new STHedgeSink(target);
+        gate.hedge();
+        String one = result("final", "one", 0, 100);
+        gate.attempt(STHedgeSink.HEDGE).writeText(JOB, one);
+        gate.attempt(STHedgeSink.PRIMARY).writeText(JOB, one);
+        gate.win(STHedgeSink.PRIMARY);
+        gate.win(STHedgeSink.HEDGE);
+        assertEquals(Arrays.asList(one), target.written);
+    }
+
+    @Test
+    void testPolicyBudget() {
+        STHedgePolicy policy = new STHedgePolicy(95, 0.1);
+        assertEquals(3000, policy.getStallMillis());
+        for (int i = 0; i < 20; i++) {
+            policy.recordSession();
+            policy.recordTail(400);
+        }
+        assertTrue(policy.getStallMillis() < 3000);
+        assertTrue(policy.tryHedge());
+        assertTrue(policy.tryHedge());
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+    }
+}
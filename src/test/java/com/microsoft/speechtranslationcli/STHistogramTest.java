@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STHistogramTest {
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        STHistogram h = new STHistogram();
+        for (long v = 1; v <= 10000; v++) {
+            h.record(v);
+        }
+        assertEquals(10000, h.getCount());
+        assertEquals(10000, h.getMax());
+        assertEquals(5000.5, h.getMean(), 1e-9);
+        long[][] expected = {{50, 5000}, {90, 9000}, {99, 9900}};
+        for (long[] e : expected) {
+            long p = h.getPercentile(e[0]);
+            assertTrue(p >= e[1] && p <= e[1] * 1.0625, "p" + e[0] + " = " + p);
+        }
+        assertEquals(10000, h.getPercentile(100));
+    }
+
+    @Test
+    void testBucketBoundaries() {
+        for (long v : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = STHistogram.index(v);
+            assertTrue(STHistogram.highestEquivalent(index) >= v);
+            assertTrue(index == 0 || STHistogram.highestEquivalent(index - 1) < v);
+        }
+    }
+
+    @Test
+    void testReportJson() {
+        STRunReport report = new STRunReport();
+        report.start("en-US", "de-DE");
+        report.recordHandshake(120);
+        report.recordFinalResult(900);
+        report.recordAudio(12.5);
+        report.recordFile();
+        report.recordFailure(STExitCode.UPLOAD_ERROR);
+        String json = report.toJson();
+        assertTrue(json.contains("\"audioSeconds\":12.500"), json);
+        assertTrue(json.contains("\"files\":1"), json);
+        assertTrue(json.contains("\"failures\":{\"UPLOAD_ERROR\":1}"), json);
+        assertTrue(json.contains("\"en-US-de-DE\":{\"handshakeMillis\":{\"count\":1,\"p50\":120"), json);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class STJobOrderTest {
+    private static final STAudioFormat RAW = STAudioFormat.parse("s16le,16000,1");
+
+    private static STJob job(int bytes) throws IOException {
+        File file = Files.createTempFile("stjob", ".raw").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[bytes]);
+        return new STJob(file);
+    }
+
+    @Test
+    void testDuration() throws IOException {
+        STJob job = job(64000);
+        assertEquals(2.0, STJobOrder.durationSeconds(job, RAW), 1e-9);
+        assertEquals(0.5, STJobOrder.durationSeconds(job.segment(0, 0, 16000, 0), RAW), 1e-9);
+        assertEquals(0.0, STJobOrder.durationSeconds(job, null), 1e-9);
+    }
+
+    @Test
+    void testSchedules() throws IOException {
+        STJob a = job(32000), b = job(96000), c = job(32000), d = job(64000);
+        List<STJob> jobs = new ArrayList<>(Arrays.asList(a, b, c, d));
+
+        jobs.sort(STJobOrder.forSchedule("longest", RAW));
+        assertEquals(Arrays.asList(b, d, a, c), jobs);
+
+        jobs.sort(STJobOrder.forSchedule("shortest", RAW));
+        assertEquals(Arrays.asList(a, c, d, b), jobs);
+
+        assertNull(STJobOrder.forSchedule("input", RAW));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STLeaseQueueTest {
+    private static final long LEASE_MILLIS = 60000;
+    private static final STJob JOB = new STJob(new File("/in/call.wav"));
+
+    private File directory;
+    private final List<STLeaseQueue> queues = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("stqueue").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        queues.forEach(STLeaseQueue::close);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    // every queue stands for another process
+    private STLeaseQueue process() throws IOException {
+        STLeaseQueue queue = new STLeaseQueue(directory, LEASE_MILLIS);
+        queues.add(queue);
+        return queue;
+    }
+
+    private File lease() {
+        return new File(directory, STLeaseQueue.key(JOB) + ".lease");
+    }
+
+    private File done() {
+        return new File(directory, STLeaseQueue.key(JOB) + ".done");
+    }
+
+    private void expire(File lease) {
+        assertTrue(lease.setLastModified(System.currentTimeMillis() - 2 * LEASE_MILLIS));
+    }
+
+    @Test
+    void testClaimIsExclusive() throws IOException {
+        STLeaseQueue first = process();
+        STLeaseQueue second = process();
+        assertEquals(STLeaseQueue.Claim.CLAIMED, first.claim(JOB));
+        assertEquals(STLeaseQueue.Claim.BUSY, second.claim(JOB));
+        assertEquals(STLeaseQueue.Claim.BUSY, first.claim(JOB));
+    }
+
+    @Test
+    void testExpiredLeaseTakenOverOnce() throws Exception {
+        process().claim(JOB);
+        expire(lease());
+        int contenders = 8;
+        List<STLeaseQueue> others = new ArrayList<>();
+        for (int i = 0; i < contenders; i++) {
+            others.add(process());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(contenders);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<STLeaseQueue.Claim>> claims = new ArrayList<>();
+            for (STLeaseQueue queue : others) {
+                claims.add(pool.submit(() -> {
+                    start.await();
+                    return queue.claim(JOB);
+                }));
+            }
+            start.countDown();
+            int claimed = 0;
+            for (Future<STLeaseQueue.Claim> claim : claims) {
+                if (claim.get(10, TimeUnit.SECONDS) == STLeaseQueue.Claim.CLAIMED) claimed++;
+            }
+            assertEquals(1, claimed);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(lease().exists());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    void testFreshLeaseHandedBack() throws IOException {
+        STLeaseQueue owner = process();
+        assertEquals(STLeaseQueue.Claim.CLAIMED, owner.claim(JOB));
+        byte[] content = Files.readAllBytes(lease().toPath());
+        assertFalse(process().takeOver(lease()));
+        assertArrayEquals(content, Files.readAllBytes(lease().toPath()));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    void testCompleteWritesMarkerAndDeletesOwnLease() throws IOException {
+        STLeaseQueue queue = process();
+        assertEquals(STLeaseQueue.Claim.CLAIMED, queue.claim(JOB));
+        queue.complete(JOB);
+        assertTrue(done().exists());
+        assertFalse(lease().exists());
+        assertEquals(STLeaseQueue.Claim.DONE, process().claim(JOB));
+    }
+
+    @Test
+    void testCompleteKeepsLeaseTakenOver() throws IOException {
+        STLeaseQueue stalled = process();
+        assertEquals(STLeaseQueue.Claim.CLAIMED, stalled.claim(JOB));
+        expire(lease());
+        STLeaseQueue other = process();
+        assertEquals(STLeaseQueue.Claim.CLAIMED, other.claim(JOB));
+        byte[] content = Files.readAllBytes(lease().toPath());
+
+        stalled.complete(JOB);
+        assertTrue(done().exists());
+        assertTrue(lease().exists());
+        assertEquals(new String(content, StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(lease().toPath()), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STMemoryBudgetTest {
+
+    @Test
+    void testReserveWaitsForRelease() throws InterruptedException {
+        STMemoryBudget budget = new STMemoryBudget(100);
+        budget.reserve(60);
+        assertFalse(budget.tryReserve(60));
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                budget.reserve(60);
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+        budget.release(60);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        assertEquals(60, budget.getReserved());
+    }
+
+    @Test
+    void testOversizedReservationAdmittedAlone() throws InterruptedException {
+        STMemoryBudget budget = new STMemoryBudget(100);
+        budget.reserve(500);
+        assertFalse(budget.tryReserve(1));
+        budget.release(500);
+        assertTrue(budget.tryReserve(1));
+    }
+
+    @Test
+    void testOversizedReservationNotHeldUpByReadAhead() throws InterruptedException {
+        STMemoryBudget budget = new STMemoryBudget(100);
+        assertTrue(budget.tryReserveReadAhead(40));
+        assertFalse(budget.tryReserveReadAhead(70));
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                budget.reserve(300);
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        assertEquals(340, budget.getReserved());
+        assertFalse(budget.tryReserveReadAhead(1));
+        budget.releaseReadAhead(40);
+        budget.release(300);
+        assertEquals(0, budget.getReserved());
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STNioConnectionTest {
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private ServerSocket server;
+    private ScheduledExecutorService timer;
+    private Socket peer;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    private static class Recording extends SpeechClientSocket {
+        final CompletableFuture<STConnection> connected = new CompletableFuture<>();
+        final BlockingQueue<String> texts = new LinkedBlockingQueue<>();
+        final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile int closeCode = -1;
+        volatile String closeReason;
+
+        @Override
+        public void onConnect(STConnection session) {
+            connected.complete(session);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+            texts.add(msg);
+        }
+
+        @Override
+        public void onMessage(InputStream stream) {
+        }
+
+        @Override
+        public void onClose(int statusCode, String reason) {
+            closeCode = statusCode;
+            closeReason = reason;
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            errors.add(t);
+        }
+    }
+
+    private static class Frame {
+        final int opcode;
+        final boolean fin;
+        final byte[] payload;
+
+        Frame(int opcode, boolean fin, byte[] payload) {
+            this.opcode = opcode;
+            this.fin = fin;
+            this.payload = payload;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ServerSocket(0);
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (peer != null) peer.close();
+        server.close();
+        timer.shutdownNow();
+    }
+
+    // a frame buffer of 64 bytes has every larger payload written in several parts
+    private STConnection connect(Recording socket) throws Exception {
+        STNioConnection connection = new STNioConnection(socket, URI.create("ws://127.0.0.1:" + server.getLocalPort() + "/"),
+                new STBufferPool(64, 2), null, timer, 5000, 4096, 1 << 20, 1 << 20);
+        Thread reader = new Thread(connection::run, "nio-connection-test");
+        reader.setDaemon(true);
+        reader.start();
+        peer = server.accept();
+        peer.setSoTimeout(10000);
+        in = new DataInputStream(peer.getInputStream());
+        out = new DataOutputStream(peer.getOutputStream());
+        upgrade();
+        return socket.connected.get(10, TimeUnit.SECONDS);
+    }
+
+    private void upgrade() throws IOException {
+        BufferedReader request = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1);
+        String key = null;
+        String line;
+        while (!(line = request.readLine()).isEmpty()) {
+            if (line.startsWith("Sec-WebSocket-Key:")) key = line.substring(line.indexOf(':') + 1).trim();
+        }
+        out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n" +
+                "Sec-WebSocket-Accept: " + STReplayServer.acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    // frames from the client must be masked
+    private Frame readFrame() throws IOException {
+        int b0 = in.readUnsignedByte();
+        int b1 = in.readUnsignedByte();
+        assertTrue((b1 & 0x80) != 0, "frame not masked");
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = in.readLong();
+        }
+        byte[] mask = new byte[4];
+        in.readFully(mask);
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i & 3];
+        }
+        return new Frame(b0 & 0x0F, (b0 & 0x80) != 0, payload);
+    }
+
+    private void writeFrame(int opcode, boolean fin, byte[] payload) throws IOException {
+        out.write((fin ? 0x80 : 0) | opcode);
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else {
+            out.write(126);
+            out.writeShort(payload.length);
+        }
+        out.write(payload);
+        out.flush();
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] closePayload(int code, String reason) {
+        byte[] text = utf8(reason);
+        return ByteBuffer.allocate(2 + text.length).putShort((short) code).put(text).array();
+    }
+
+    @Test
+    void testUploadsAreMasked() throws Exception {
+        Recording socket = new Recording();
+        STConnection connection = connect(socket);
+        // lengths around the mask width, and beyond both short length encodings
+        int[] lengths = {0, 1, 2, 3, 4, 5, 7, 61, 125, 126, 1023, 70001};
+        for (int length : lengths) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (i * 31 + length);
+            }
+            CompletableFuture<Void> sent = new CompletableFuture<>();
+            new Thread(() -> connection.sendBinary(ByteBuffer.wrap(data), new STConnection.Callback() {
+                @Override
+                public void writeFailed(Throwable t) {
+                    sent.completeExceptionally(t);
+                }
+
+                @Override
+                public void writeSuccess() {
+                    sent.complete(null);
+                }
+            })).start();
+            Frame frame = readFrame();
+            sent.get(10, TimeUnit.SECONDS);
+            assertEquals(OPCODE_BINARY, frame.opcode);
+            assertTrue(frame.fin);
+            assertArrayEquals(data, frame.payload, "length " + length);
+        }
+        assertNull(socket.errors.poll());
+    }
+
+    @Test
+    void testFragmentedTextWithInterleavedPings() throws Exception {
+        Recording socket = new Recording();
+        connect(socket);
+        writeFrame(OPCODE_TEXT, false, utf8("{\"type\":"));
+        writeFrame(OPCODE_PING, true, utf8("one"));
+        writeFrame(OPCODE_CONTINUATION, false, utf8("\"final\","));
+        writeFrame(OPCODE_PING, true, utf8("two"));
+        writeFrame(OPCODE_CONTINUATION, true, utf8("\"recognition\":\"gr\u00fc\u00dfe\"}"));
+
+        Frame pong = readFrame();
+        assertEquals(OPCODE_PONG, pong.opcode);
+        assertArrayEquals(utf8("one"), pong.payload);
+        pong = readFrame();
+        assertEquals(OPCODE_PONG, pong.opcode);
+        assertArrayEquals(utf8("two"), pong.payload);
+        assertEquals("{\"type\":\"final\",\"recognition\":\"gr\u00fc\u00dfe\"}", socket.texts.poll(10, TimeUnit.SECONDS));
+        assertNull(socket.texts.poll());
+        assertNull(socket.errors.poll());
+    }
+
+    @Test
+    void testCloseFromServerIsEchoed() throws Exception {
+        Recording socket = new Recording();
+        connect(socket);
+        writeFrame(OPCODE_CLOSE, true, closePayload(1001, "going away"));
+
+        Frame echo = readFrame();
+        assertEquals(OPCODE_CLOSE, echo.opcode);
+        assertArrayEquals(closePayload(1001, ""), echo.payload);
+        assertTrue(socket.closed.await(10, TimeUnit.SECONDS));
+        assertEquals(1001, socket.closeCode);
+        assertEquals("going away", socket.closeReason);
+        assertNull(socket.errors.poll());
+    }
+
+    @Test
+    void testCloseFromClientIsAnswered() throws Exception {
+        Recording socket = new Recording();
+        STConnection connection = connect(socket);
+        connection.close(STConnection.NORMAL, "done");
+
+        Frame close = readFrame();
+        assertEquals(OPCODE_CLOSE, close.opcode);
+        assertArrayEquals(closePayload(STConnection.NORMAL, "done"), close.payload);
+        assertTrue(!connection.isOpen());
+        writeFrame(OPCODE_CLOSE, true, close.payload);
+        assertTrue(socket.closed.await(10, TimeUnit.SECONDS));
+        assertEquals(STConnection.NORMAL, socket.closeCode);
+        assertNull(socket.errors.poll());
+    }
+}
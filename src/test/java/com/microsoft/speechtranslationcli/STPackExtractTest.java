@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class STPackExtractTest {
+
+    private static File tempDirectory() throws IOException {
+        File directory = Files.createTempDirectory("stextract").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    @Test
+    void testExtractedWaveHasFinalLength() throws IOException {
+        File store = tempDirectory();
+        File output = tempDirectory();
+        STAudioFormat format = STAudioFormat.pcm(16000, 16);
+        byte[] samples = format.silence(0.5);
+        // a service response carries a header with its own length, the extracted file has to be rewritten on complete
+        byte[] header = STWaveHeader.build(format, samples.length);
+        byte[] response = new byte[header.length + samples.length];
+        System.arraycopy(header, 0, response, 0, header.length);
+        System.arraycopy(samples, 0, response, header.length, samples.length);
+        try (STPackStore pack = new STPackStore(store, 1 << 20)) {
+            pack.append("/in/a.wav", STPackStore.TYPE_TEXT, "{}".getBytes(StandardCharsets.UTF_8), false);
+            pack.append("/in/a.wav", STPackStore.TYPE_AUDIO, response, true);
+        }
+
+        CommandLine.run(new STPackExtract(), System.out, "--store", store.getAbsolutePath(),
+                "--output-dir", output.getAbsolutePath(), "--output-postfix", ".x");
+
+        File wave = new File(output, "a.x.wav");
+        assertEquals("{}", new String(Files.readAllBytes(new File(output, "a.x.json").toPath()), StandardCharsets.UTF_8));
+        assertEquals(STWaveHeader.CANONICAL_HEADER_SIZE + samples.length, wave.length());
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(wave.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(wave.length() - 8, bytes.getInt(4));
+        assertEquals(wave.length() - STWaveHeader.CANONICAL_HEADER_SIZE, bytes.getInt(40));
+    }
+}
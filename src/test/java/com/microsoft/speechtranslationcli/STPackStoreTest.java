@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STPackStoreTest {
+
+    private static File tempDirectory() throws IOException {
+        File directory = Files.createTempDirectory("stpack").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    @Test
+    void testRoundTripAndLastRecordWins() throws IOException {
+        File directory = tempDirectory();
+        try (STPackStore store = new STPackStore(directory, 1 << 20)) {
+            store.append("/in/a.wav", STPackStore.TYPE_TEXT, "{\"n\":1}".getBytes(StandardCharsets.UTF_8), false);
+            store.append("/in/b.wav", STPackStore.TYPE_AUDIO, new byte[]{1, 2, 3}, false);
+            store.append("/in/a.wav", STPackStore.TYPE_TEXT, "{\"n\":2}".getBytes(StandardCharsets.UTF_8), true);
+        }
+        STPackStore store = new STPackStore(directory, 1 << 20);
+        Map<String, STPackStore.Entry[]> index = store.readIndex();
+        assertEquals(2, index.size());
+        assertEquals("{\"n\":2}", new String(store.read(index.get("/in/a.wav")[STPackStore.TYPE_TEXT]), StandardCharsets.UTF_8));
+        assertNull(index.get("/in/a.wav")[STPackStore.TYPE_AUDIO]);
+        assertArrayEquals(new byte[]{1, 2, 3}, store.read(index.get("/in/b.wav")[STPackStore.TYPE_AUDIO]));
+    }
+
+    @Test
+    void testRollsOverAndResumes() throws IOException {
+        File directory = tempDirectory();
+        byte[] payload = new byte[400];
+        for (int run = 0; run < 2; run++) {
+            try (STPackStore store = new STPackStore(directory, 1000)) {
+                for (int i = 0; i < 3; i++) {
+                    payload[0] = (byte) (run * 3 + i);
+                    store.append("/in/" + (run * 3 + i) + ".wav", STPackStore.TYPE_AUDIO, payload, false);
+                }
+            }
+        }
+        File[] packs = directory.listFiles((d, name) -> name.endsWith(".pack"));
+        assertEquals(3, packs.length);
+        for (File pack : packs) {
+            assertTrue(pack.length() <= 1000);
+        }
+        STPackStore store = new STPackStore(directory, 1000);
+        Map<String, STPackStore.Entry[]> index = store.readIndex();
+        assertEquals(6, index.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, store.read(index.get("/in/" + i + ".wav")[STPackStore.TYPE_AUDIO])[0]);
+        }
+    }
+}
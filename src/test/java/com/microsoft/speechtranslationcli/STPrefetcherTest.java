@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STPrefetcherTest {
+    private static final int SIZE = 300;
+
+    private static STJob job() throws IOException {
+        File file = Files.createTempFile("stprefetch", ".wav").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), content());
+        return new STJob(file);
+    }
+
+    private static byte[] content() {
+        byte[] content = new byte[SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    @Test
+    void testHoldsBytesWithinBudgetUntilClosed() throws IOException {
+        STMemoryBudget memory = new STMemoryBudget(1000);
+        STPrefetcher prefetcher = new STPrefetcher(memory, 3, 250, 100);
+        STJob a = job(), b = job(), c = job(), d = job();
+        for (STJob job : new STJob[]{a, b, c, d}) {
+            prefetcher.schedule(job);
+        }
+        // a third file would exceed the prefetch budget
+        assertEquals(200, memory.getReserved());
+
+        InputStream in = prefetcher.open(a);
+        assertEquals(200, memory.getReserved());
+        assertArrayEquals(content(), read(in));
+        // the bytes of a are released and c is read ahead instead
+        assertEquals(200, memory.getReserved());
+        in.close();
+        assertEquals(200, memory.getReserved());
+
+        assertArrayEquals(content(), read(prefetcher.open(b)));
+        assertArrayEquals(content(), read(prefetcher.open(c)));
+        assertEquals(100, memory.getReserved());
+        assertArrayEquals(content(), read(prefetcher.open(d)));
+        assertEquals(0, memory.getReserved());
+    }
+
+    @Test
+    void testUsesOnlyWhatTheMemoryBudgetLeaves() throws IOException {
+        STMemoryBudget memory = new STMemoryBudget(250);
+        assertTrue(memory.tryReserve(100));
+        STPrefetcher prefetcher = new STPrefetcher(memory, 3, 1000, 100);
+        STJob a = job(), b = job();
+        prefetcher.schedule(a);
+        prefetcher.schedule(b);
+        assertEquals(200, memory.getReserved());
+        memory.release(100);
+        assertArrayEquals(content(), read(prefetcher.open(a)));
+        assertEquals(100, memory.getReserved());
+        assertArrayEquals(content(), read(prefetcher.open(b)));
+        assertEquals(0, memory.getReserved());
+    }
+
+    @Test
+    void testPeekKeepsBytesAndSkipReleasesThem() throws IOException {
+        STMemoryBudget memory = new STMemoryBudget(1000);
+        STPrefetcher prefetcher = new STPrefetcher(memory, 2, 1000, 100);
+        STJob a = job(), b = job();
+        prefetcher.schedule(a);
+        prefetcher.schedule(b);
+        assertEquals(200, memory.getReserved());
+
+        assertArrayEquals(content(), read(prefetcher.peek(a)));
+        assertEquals(200, memory.getReserved());
+        assertArrayEquals(content(), read(prefetcher.open(a)));
+        assertEquals(100, memory.getReserved());
+
+        prefetcher.skip(b);
+        assertEquals(0, memory.getReserved());
+        assertArrayEquals(content(), read(prefetcher.open(b)));
+    }
+}
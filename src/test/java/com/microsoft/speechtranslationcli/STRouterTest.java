@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STRouterTest {
+
+    @Test
+    void testParseRoute() {
+        STRoute route = STRoute.parse("key=abc, weight=2.5,connections=4,audioseconds=600", "wss://default", "defaultkey");
+        assertEquals("wss://default", route.getEndpoint());
+        assertEquals("abc", route.getKey());
+        assertEquals(2.5, route.getWeight());
+        assertThrows(IllegalArgumentException.class, () -> STRoute.parse("weight=0", "", ""));
+        assertThrows(IllegalArgumentException.class, () -> STRoute.parse("region=west", "", ""));
+        assertThrows(IllegalArgumentException.class, () -> STRoute.parse("connections=many", "", ""));
+    }
+
+    @Test
+    void testSelectionFollowsWeight() {
+        STRoute light = new STRoute("wss://a", "a", 1, 0, 0, 0);
+        STRoute heavy = new STRoute("wss://b", "b", 3, 0, 0, 0);
+        List<STRoute> routes = Arrays.asList(light, heavy);
+        int heavyPicks = 0;
+        for (int i = 0; i < 4000; i++) {
+            if (STRouter.select(routes) == heavy) heavyPicks++;
+        }
+        assertTrue(heavyPicks > 2700 && heavyPicks < 3300, "heavy picked " + heavyPicks);
+    }
+
+    @Test
+    void testFailuresShiftTraffic() {
+        STRoute failing = new STRoute("wss://a", "a", 1, 0, 0, 0);
+        STRoute healthy = new STRoute("wss://b", "b", 1, 0, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            failing.getHealth().recordFailure();
+            healthy.getHealth().recordSuccess(100);
+        }
+        List<STRoute> routes = Arrays.asList(failing, healthy);
+        int failingPicks = 0;
+        for (int i = 0; i < 4000; i++) {
+            if (STRouter.select(routes) == failing) failingPicks++;
+        }
+        assertTrue(failingPicks > 0 && failingPicks < 400, "failing picked " + failingPicks);
+    }
+
+    @Test
+    void testSlowHandshakesGetLessTraffic() {
+        STRouteHealth fast = new STRouteHealth();
+        STRouteHealth slow = new STRouteHealth();
+        fast.recordSuccess(100);
+        slow.recordSuccess(400);
+        assertEquals(1.0, fast.factor(100), 1e-9);
+        assertEquals(0.25, slow.factor(100), 1e-9);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STSchedulerTest {
+
+    @Test
+    void testWinnerSelection() {
+        // both still running
+        assertEquals(-1, STScheduler.winner(false, false, false, false));
+        assertEquals(-1, STScheduler.winner(false, false, false, true));
+        // the first session to close wins, the primary if both are
+        assertEquals(STHedgeSink.PRIMARY, STScheduler.winner(true, false, false, false));
+        assertEquals(STHedgeSink.HEDGE, STScheduler.winner(false, true, true, false));
+        assertEquals(STHedgeSink.PRIMARY, STScheduler.winner(true, true, true, false));
+        // a failed hedge leaves the primary the rest of its time, then the primary is kept
+        assertEquals(-1, STScheduler.winner(false, false, true, false));
+        assertEquals(STHedgeSink.PRIMARY, STScheduler.winner(false, false, true, true));
+    }
+
+    @Test
+    void testOnlyShortJobsAreHedged() {
+        long now = System.nanoTime();
+        long deadline = now + TimeUnit.SECONDS.toNanos(2);
+        // a quarter second chunk is paced for half a second
+        assertTrue(STScheduler.canHedge(0.5, now, deadline));
+        assertFalse(STScheduler.canHedge(1, now, deadline));
+        assertFalse(STScheduler.canHedge(600, now, deadline));
+        assertFalse(STScheduler.canHedge(0.5, deadline, deadline));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class STSegmentCollectorTest {
+    private static final STAudioFormat FORMAT = STAudioFormat.pcm(16000, 16);
+
+    private static class Recording implements STOutputSink {
+        final List<String> texts = new ArrayList<>();
+        byte[] audio;
+        int completed = 0;
+
+        @Override
+        public void writeText(STJob job, String message) {
+            texts.add(message);
+        }
+
+        @Override
+        public void writeAudio(STJob job, InputStream stream) throws IOException {
+            audio = IOUtils.toByteArray(stream);
+        }
+
+        @Override
+        public void complete(STJob job) {
+            completed++;
+        }
+    }
+
+    private static InputStream wave(byte... samples) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(STWaveHeader.build(FORMAT, samples.length));
+        out.write(samples);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Test
+    void testKeepsEveryUtteranceOfASession() throws IOException {
+        STJob job = new STJob(new File("call.wav"));
+        Recording target = new Recording();
+        STSegmentCollector collector = new STSegmentCollector(job, 1, target);
+        collector.writeText(job, "{\"type\":\"partial\",\"recognition\":\"hel\"}");
+        collector.writeText(job, "{\"type\":\"final\",\"recognition\":\"hello\"}");
+        collector.writeAudio(job, wave((byte) 1, (byte) 2));
+        collector.writeText(job, "{\"type\":\"partial\",\"recognition\":\"wor\"}");
+        collector.writeText(job, "{\"type\":\"final\",\"recognition\":\"world\"}");
+        collector.writeAudio(job, wave((byte) 3, (byte) 4, (byte) 5, (byte) 6));
+        collector.complete(job);
+
+        assertEquals(1, target.texts.size());
+        assertEquals("[{\"type\":\"final\",\"recognition\":\"hello\"},{\"type\":\"final\",\"recognition\":\"world\"}]",
+                target.texts.get(0));
+        STWaveHeader header = STWaveHeader.read(new ByteArrayInputStream(target.audio), target.audio.length);
+        assertEquals(6, header.getDataLength());
+        byte[] samples = new byte[6];
+        System.arraycopy(target.audio, (int) header.getDataOffset(), samples, 0, samples.length);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, samples);
+        assertEquals(1, target.completed);
+    }
+}
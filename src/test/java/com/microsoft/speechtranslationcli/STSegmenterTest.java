@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STSegmenterTest {
+    private static final STAudioFormat FORMAT = STAudioFormat.pcm(16000, 16);
+    private static final int BYTES_PER_SECOND = FORMAT.getBytesPerSecond();
+    private static final double THRESHOLD_DB = -40;
+
+    /*
+     * Builds a recording from alternating durations of speech and silence, starting with speech. Speech is a 440Hz
+     * tone at half of full scale, silence is digital silence.
+     */
+    private static STJob recording(double... seconds) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int part = 0; part < seconds.length; part++) {
+            int samples = (int) (seconds[part] * FORMAT.getSampleRate());
+            for (int i = 0; i < samples; i++) {
+                short s = part % 2 == 0 ? (short) (0.5 * Short.MAX_VALUE * Math.sin(2 * Math.PI * 440 * i / FORMAT.getSampleRate())) : 0;
+                data.write(s & 0xFF);
+                data.write((s >> 8) & 0xFF);
+            }
+        }
+        File file = Files.createTempFile("stsegment", ".wav").toFile();
+        file.deleteOnExit();
+        ByteArrayOutputStream wave = new ByteArrayOutputStream();
+        wave.write(STWaveHeader.build(FORMAT, data.size()));
+        data.writeTo(wave);
+        Files.write(file.toPath(), wave.toByteArray());
+        return new STJob(file);
+    }
+
+    private static double seconds(long bytes) {
+        return bytes / (double) BYTES_PER_SECOND;
+    }
+
+    // segments follow each other without gaps and cover the whole recording
+    private static void assertContiguous(List<STJob> segments, double totalSeconds) {
+        long position = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            STJob segment = segments.get(i);
+            assertTrue(segment.isSegment());
+            assertEquals(i, segment.getIndex());
+            assertEquals(position, segment.getOffset());
+            assertEquals(seconds(segment.getOffset()) * STOffsetMap.TICKS_PER_SECOND, segment.getStartTicks(), 1);
+            position += segment.getLength();
+        }
+        assertEquals(totalSeconds, seconds(position), 1e-9);
+    }
+
+    @Test
+    void testShortRecordingIsNotSplit() throws IOException {
+        STJob job = recording(14);
+        List<STJob> segments = new STSegmenter(10, THRESHOLD_DB).split(job);
+        assertEquals(1, segments.size());
+        assertSame(job, segments.get(0));
+        assertFalse(segments.get(0).isSegment());
+    }
+
+    @Test
+    void testCutsInThePauses() throws IOException {
+        STJob job = recording(8, 1, 8, 1, 8);
+        List<STJob> segments = new STSegmenter(10, THRESHOLD_DB).split(job);
+        assertEquals(3, segments.size());
+        assertContiguous(segments, 26);
+        // the cuts fall into the silence from 8s to 9s and from 17s to 18s
+        double first = seconds(segments.get(1).getOffset());
+        double second = seconds(segments.get(2).getOffset());
+        assertTrue(first > 8 && first < 9, "first cut at " + first);
+        assertTrue(second > 17 && second < 18, "second cut at " + second);
+    }
+
+    @Test
+    void testCutsHardAtOneAndAHalfTargets() throws IOException {
+        STJob job = recording(40);
+        List<STJob> segments = new STSegmenter(10, THRESHOLD_DB).split(job);
+        assertEquals(3, segments.size());
+        assertContiguous(segments, 40);
+        assertEquals(15, seconds(segments.get(0).getLength()), 0.02);
+        assertEquals(15, seconds(segments.get(1).getLength()), 0.02);
+    }
+
+    @Test
+    void testIgnoresPausesBeforeHalfTheTarget() throws IOException {
+        STJob job = recording(3, 1, 20);
+        List<STJob> segments = new STSegmenter(10, THRESHOLD_DB).split(job);
+        assertEquals(2, segments.size());
+        assertContiguous(segments, 24);
+        assertEquals(15, seconds(segments.get(0).getLength()), 0.02);
+    }
+
+    @Test
+    void testShortRestJoinsTheLastSegment() throws IOException {
+        STJob job = recording(30.5);
+        List<STJob> segments = new STSegmenter(10, THRESHOLD_DB).split(job);
+        assertEquals(2, segments.size());
+        assertContiguous(segments, 30.5);
+        assertEquals(15.5, seconds(segments.get(1).getLength()), 0.02);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STSilenceCompactorTest {
+    static final STAudioFormat format = STAudioFormat.pcm(16000, 16);
+
+    // 1s tone, 3s silence, 1s tone
+    private static byte[] speechPauseSpeech() {
+        ByteBuffer b = ByteBuffer.allocate(5 * 16000 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 5 * 16000; i++) {
+            boolean tone = i < 16000 || i >= 4 * 16000;
+            b.putShort(tone ? (short) (8000 * Math.sin(2 * Math.PI * 300 * i / 16000.0)) : 0);
+        }
+        return b.array();
+    }
+
+    @Test
+    void testLongPauseIsShortened() {
+        STSilenceCompactor compactor = new STSilenceCompactor(format, 0.5, -45);
+        byte[] in = speechPauseSpeech();
+        int out = 0;
+        for (int p = 0; p < in.length; p += 4000) {
+            out += compactor.process(Arrays.copyOfRange(in, p, p + 4000), 4000).length;
+        }
+        out += compactor.flush().length;
+        double seconds = out / (double) format.getBytesPerSecond();
+        assertTrue(seconds > 2.4 && seconds < 2.8, "compacted length " + seconds);
+        assertEquals(1, compactor.getOffsetMap().size());
+    }
+
+    @Test
+    void testOffsetsMapBackToOriginal() {
+        STSilenceCompactor compactor = new STSilenceCompactor(format, 0.5, -45);
+        byte[] in = speechPauseSpeech();
+        compactor.process(in, in.length);
+        compactor.flush();
+        STOffsetMap map = compactor.getOffsetMap();
+        assertEquals(5 * STOffsetMap.TICKS_PER_SECOND / 10, map.toOriginal(5 * STOffsetMap.TICKS_PER_SECOND / 10));
+        long removed = map.getRemovedTicks();
+        assertEquals(4 * STOffsetMap.TICKS_PER_SECOND + 1000, map.toOriginal(4 * STOffsetMap.TICKS_PER_SECOND - removed + 1000));
+
+        String msg = "{\"type\":\"final\",\"recognition\":\"a \\\"b\\\"\",\"audioTimeOffset\":" + (4 * STOffsetMap.TICKS_PER_SECOND - removed)
+                + ",\"audioTimeSize\":5000000}";
+        String mapped = STResultMessage.mapOffsets(msg, map);
+        assertEquals(4 * STOffsetMap.TICKS_PER_SECOND, STResultMessage.getLong(mapped, STResultMessage.FIELD_AUDIO_TIME_OFFSET));
+        assertEquals(5000000, STResultMessage.getLong(mapped, STResultMessage.FIELD_AUDIO_TIME_SIZE));
+        assertEquals("a \"b\"", STResultMessage.getString(mapped, STResultMessage.FIELD_RECOGNITION));
+    }
+
+    @Test
+    void testSilenceIsNotSpeech() {
+        STVoiceActivityDetector vad = new STVoiceActivityDetector(format, -45);
+        byte[] silence = new byte[vad.getFrameSize()];
+        for (int i = 0; i < 20; i++) {
+            assertFalse(vad.isSpeech(silence, 0, silence.length));
+        }
+    }
+}
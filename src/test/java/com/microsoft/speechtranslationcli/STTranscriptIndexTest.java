@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class STTranscriptIndexTest {
+
+    private static File tempDirectory() throws IOException {
+        File directory = Files.createTempDirectory("stindex").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    @Test
+    void testTokenize() {
+        assertEquals(Arrays.asList("hello", "world", "42"), STTranscriptIndex.tokenize("Hello, World! 42"));
+        assertEquals(Arrays.asList("\u00fcber", "stra\u00dfe"), STTranscriptIndex.tokenize("\u00dcber Stra\u00dfe."));
+        assertEquals(Arrays.asList("\u4f60", "\u597d", "ok"), STTranscriptIndex.tokenize("\u4f60\u597dok"));
+    }
+
+    @Test
+    void testPhraseAndFieldQueries() throws IOException {
+        File directory = tempDirectory();
+        try (STTranscriptIndex index = new STTranscriptIndex(directory)) {
+            index.add("/in/a.wav", 10000000, 5000000, "the quick brown fox", "der schnelle braune Fuchs");
+            index.add("/in/a.wav", 20000000, 5000000, "brown quick dog", "brauner schneller Hund");
+            index.add("/in/b.wav", 0, 5000000, "a quick brown dog", "ein schneller brauner Hund");
+        }
+        STTranscriptIndex index = new STTranscriptIndex(directory);
+
+        List<STTranscriptIndex.Hit> hits = index.search(Collections.singletonList("quick brown"), STTranscriptIndex.FIELD_ANY, 10);
+        assertEquals(2, hits.size());
+        assertEquals("/in/a.wav", hits.get(0).getFile());
+        assertEquals(10000000, hits.get(0).getOffsetTicks());
+        assertEquals("der schnelle braune Fuchs", hits.get(0).getTarget());
+        assertEquals("/in/b.wav", hits.get(1).getFile());
+
+        assertEquals(2, index.search(Arrays.asList("quick", "dog"), STTranscriptIndex.FIELD_ANY, 10).size());
+        assertEquals(0, index.search(Collections.singletonList("hund"), STTranscriptIndex.FIELD_SOURCE, 10).size());
+        assertEquals(2, index.search(Collections.singletonList("Hund"), STTranscriptIndex.FIELD_TARGET, 10).size());
+        assertEquals(1, index.search(Collections.singletonList("quick"), STTranscriptIndex.FIELD_ANY, 1).size());
+        assertTrue(index.search(Collections.singletonList("cat"), STTranscriptIndex.FIELD_ANY, 10).isEmpty());
+    }
+
+    @Test
+    void testAppendAcrossRunsAndMerge() throws IOException {
+        File directory = tempDirectory();
+        for (int run = 0; run < 20; run++) {
+            try (STTranscriptIndex index = new STTranscriptIndex(directory)) {
+                index.add("/in/" + run + ".wav", run, 1, "utterance number " + run, "\u00c4u\u00dferung " + run);
+            }
+        }
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".seg"));
+        assertTrue(segments.length <= 16);
+        STTranscriptIndex index = new STTranscriptIndex(directory);
+        assertEquals(20, index.search(Collections.singletonList("utterance number"), STTranscriptIndex.FIELD_SOURCE, 100).size());
+        List<STTranscriptIndex.Hit> hits = index.search(Collections.singletonList("number 17"), STTranscriptIndex.FIELD_ANY, 100);
+        assertEquals(1, hits.size());
+        assertEquals("/in/17.wav", hits.get(0).getFile());
+    }
+
+    @Test
+    void testSplitStitchedResults() {
+        assertEquals(Collections.singletonList("{\"a\":1}"), STResultMessage.split("{\"a\":1}"));
+        assertEquals(Arrays.asList("{\"a\":\"}{\"}", "{\"b\":2}"), STResultMessage.split("[{\"a\":\"}{\"},{\"b\":2}]"));
+    }
+}
@@ -25,9 +25,20 @@ package com.microsoft.speechtranslationcli;
 
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.Assumptions.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ResourceBundle;
+
 /**
  *
  * @author Tobias Weisserth <tobias.weisserth@microsoft.com>
@@ -36,6 +47,22 @@ public class STValidateTest {
 
     static final String validAudioExample = "audio/wav";
     static final String invalidAudioExample = "audio/fake";
+    static final STAudioFormat FORMAT = STAudioFormat.pcm(16000, 16);
+    static final ResourceBundle stringsCli = STConfiguration.getInstance().getStringsCli();
+
+    static File file(byte[] content) throws IOException {
+        File file = Files.createTempFile("stvalidate", ".wav").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    static byte[] wave(byte[] header, int dataLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header);
+        out.write(new byte[dataLength]);
+        return out.toByteArray();
+    }
 
     @BeforeAll
     public static void setUpClass() {
@@ -53,6 +80,63 @@ public class STValidateTest {
     public void tearDown() {
     }
 
+    @Test
+    void testValidFilesReturnHeaders() throws IOException {
+        File a = file(wave(STWaveHeader.build(FORMAT, 3200), 3200));
+        File b = file(new byte[6400]);
+        STWaveHeader[] headers = STValidate.validateFiles(new File[]{a}, true);
+        assertEquals(3200, headers[0].getDataLength());
+        // raw input is not probed
+        headers = STValidate.validateFiles(new File[]{a, b}, false);
+        assertNull(headers[0]);
+        assertNull(headers[1]);
+    }
+
+    @Test
+    void testValidateFilesReportsAllFailures() throws IOException {
+        File valid = file(wave(STWaveHeader.build(FORMAT, 3200), 3200));
+        File missing = new File(valid.getParentFile(), "stvalidate-missing-" + System.nanoTime() + ".wav");
+        File empty = file(new byte[0]);
+        STValidationException e = assertThrows(STValidationException.class,
+                () -> STValidate.validateFiles(new File[]{missing, valid, empty}, true));
+        assertTrue(e.getMessage().startsWith("2 of 3 "), e.getMessage());
+        String failures = e.getOptionOrParameter();
+        assertTrue(failures.contains(missing.getAbsolutePath() + ": " + stringsCli.getString("StvValidationFileDoesNotExist").trim()), failures);
+        assertTrue(failures.contains(empty.getAbsolutePath() + ": " + stringsCli.getString("StvValidationFileLengthZero").trim()), failures);
+        assertFalse(failures.contains(valid.getAbsolutePath()), failures);
+    }
+
+    @Test
+    void testNonPcmFileRejected() throws IOException {
+        byte[] header = STWaveHeader.build(FORMAT, 3200);
+        // WAVE_FORMAT_MPEGLAYER3
+        header[20] = 0x55;
+        File file = file(wave(header, 3200));
+        STValidationException e = assertThrows(STValidationException.class, () -> STValidate.validateFile(file, true));
+        assertEquals(file.getAbsolutePath(), e.getOptionOrParameter());
+        assertTrue(e.getMessage().startsWith(stringsCli.getString("StvValidationFileNotWave")), e.getMessage());
+        // without probing, the header is not looked at
+        assertNull(STValidate.validateFile(file, false));
+    }
+
+    @Test
+    void testEmptyDataChunkRejected() throws IOException {
+        File file = file(STWaveHeader.build(FORMAT, 0));
+        STValidationException e = assertThrows(STValidationException.class, () -> STValidate.validateFile(file, true));
+        assertEquals(stringsCli.getString("StvValidationFileNoAudio"), e.getMessage());
+    }
+
+    @Test
+    void testQueueRejectsSingleProcessOutputs() throws STValidationException {
+        STValidationException e = assertThrows(STValidationException.class,
+                () -> STValidate.validateQueue("/tmp/queue", "pack", ""));
+        assertEquals("pack", e.getOptionOrParameter());
+        e = assertThrows(STValidationException.class, () -> STValidate.validateQueue("/tmp/queue", "file", "/tmp/index"));
+        assertEquals("/tmp/index", e.getOptionOrParameter());
+        STValidate.validateQueue("/tmp/queue", "file", "");
+        STValidate.validateQueue("", "pack", "/tmp/index");
+    }
+
     @Disabled
     @Test
     void testAudioFormatValidation() {
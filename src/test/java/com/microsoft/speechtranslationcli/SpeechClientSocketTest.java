@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Microsoft.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.speechtranslationcli;
+
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpeechClientSocketTest {
+    private static final STAudioFormat FORMAT = STAudioFormat.pcm(16000, 16);
+    private static final String FINAL = "{\"type\":\"final\",\"recognition\":\"hello\"}";
+
+    private static class Discarding implements STOutputSink {
+        @Override
+        public void writeText(STJob job, String message) {
+        }
+
+        @Override
+        public void writeAudio(STJob job, InputStream audio) {
+        }
+    }
+
+    /*
+     * Takes every message as written. The first message is the single chunk of audio, the final result of an earlier
+     * utterance arrives while it is sent, and the final result of the last utterance only after some of the tail.
+     */
+    private static class Scripted implements STConnection {
+        final SpeechClientSocket socket;
+        final int finalAfterTail;
+        final AtomicInteger messages = new AtomicInteger();
+        volatile boolean open = true;
+
+        Scripted(SpeechClientSocket socket, int finalAfterTail) {
+            this.socket = socket;
+            this.finalAfterTail = finalAfterTail;
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer data, Callback callback) {
+            int sent = messages.incrementAndGet();
+            callback.writeSuccess();
+            if (sent == 1 || sent == 1 + finalAfterTail) socket.onMessage(FINAL);
+        }
+
+        @Override
+        public void sendPing() {
+        }
+
+        @Override
+        public void close(int statusCode, String reason) {
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        // set from the command line in a regular run
+        STConfiguration.getInstance().getConfiguration().setProperty(STConfigurationDefault.CLI_OMIT_TEXT.getKey(), false);
+        STConfiguration.getInstance().getConfiguration().setProperty(STConfigurationDefault.API_FEATURES.getKey(), "TextToSpeech");
+    }
+
+    @Test
+    void testTailNotCutShortByEarlierFinalWithoutPartials() throws Exception {
+        assertFalse(SpeechClientSocket.expectsPartials());
+        File file = Files.createTempFile("stsocket", ".wav").toFile();
+        file.deleteOnExit();
+        int dataLength = FORMAT.getBytesPerSecond() / 4;
+        ByteBuffer wave = ByteBuffer.allocate(STWaveHeader.CANONICAL_HEADER_SIZE + dataLength);
+        wave.put(STWaveHeader.build(FORMAT, dataLength));
+        Files.write(file.toPath(), wave.array());
+        STJob job = new STJob(file);
+
+        SpeechClientSocket socket = new SpeechClientSocket();
+        // the tail is sent in quarter seconds, the one second minimum would be reached after four of them
+        Scripted connection = new Scripted(socket, 6);
+        socket.onConnect(connection);
+        socket.translate(job, STAudioPipeline.open(job), new Discarding());
+
+        assertEquals(1 + 6, connection.messages.get());
+        assertTrue(socket.isUploaded());
+        assertFalse(connection.open);
+    }
+}